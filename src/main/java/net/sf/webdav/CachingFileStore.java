@@ -0,0 +1,38 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav;
+
+/**
+ * CachingStore in front of a store with all the optional capabilities, like
+ * LocalFileSystemStore. It passes them on for resources which aren't cached,
+ * see CachingStore.wrap().
+ */
+public class CachingFileStore extends CachingStore implements
+        IRandomAccessStore, IFileStore, IPrecompressedStore,
+        IAtomicContentStore, IResumableStore, IDigestStore {
+
+    /**
+     * @param store
+     *      the store holding the resources, implementing all the
+     *      capabilities of this class
+     * @param maxSize
+     *      bytes of content the cache may hold
+     * @param maxEntrySize
+     *      only resources up to this length are cached
+     */
+    public CachingFileStore(IWebdavStore store, long maxSize, int maxEntrySize) {
+        super(store, maxSize, maxEntrySize);
+    }
+}
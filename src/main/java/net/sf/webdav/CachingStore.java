@@ -0,0 +1,503 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
+import java.security.Principal;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+
+import net.sf.webdav.exceptions.WebdavException;
+
+/**
+ * IWebdavStore which keeps the content of small resources in memory in front
+ * of another store. The cache is bounded by the sum of the content lengths
+ * and evicts the least recently used resources first.
+ * <p/>
+ * Entries are dropped when the resource is written, removed or moved through
+ * this store, and when getStoredObject() finds that its length or last
+ * modification differs from the cached copy, so changes made behind the back
+ * of the servlet are noticed on the next request too.
+ * <p/>
+ * The optional capabilities of the wrapped store are passed on for resources
+ * which aren't cached, so big files are still sent with sendfile or a
+ * FileChannel. This class implements none of them, use wrap() to get a
+ * CachingFileStore for stores which have them all.
+ */
+public class CachingStore implements IWebdavStore {
+
+    private static org.slf4j.Logger LOG = org.slf4j.LoggerFactory
+            .getLogger(CachingStore.class);
+
+    private final IWebdavStore _store;
+
+    private final long _maxSize;
+
+    private final int _maxEntrySize;
+
+    /**
+     * in access order, guarded by itself
+     */
+    private final LinkedHashMap<String, Entry> _entries = new LinkedHashMap<String, Entry>(
+            16, 0.75f, true);
+
+    private long _size = 0;
+
+    private final AtomicLong _hits = new AtomicLong();
+
+    private final AtomicLong _misses = new AtomicLong();
+
+    private final AtomicLong _evictions = new AtomicLong();
+
+    /**
+     * @param store
+     *      the store holding the resources
+     * @param maxSize
+     *      bytes of content the cache may hold
+     * @param maxEntrySize
+     *      only resources up to this length are cached
+     */
+    public CachingStore(IWebdavStore store, long maxSize, int maxEntrySize) {
+        _store = store;
+        _maxSize = maxSize;
+        _maxEntrySize = (int) Math.min(maxEntrySize, maxSize);
+    }
+
+    /**
+     * @param store
+     *      the store holding the resources
+     * @param maxSize
+     *      bytes of content the cache may hold
+     * @param maxEntrySize
+     *      only resources up to this length are cached
+     * @return a CachingFileStore if store implements all of its optional
+     *  capabilities, otherwise a CachingStore, which implements none. a
+     *  capability missing in front of store only costs speed, one the store
+     *  lacks would break the methods looking for it
+     */
+    public static IWebdavStore wrap(IWebdavStore store, long maxSize,
+            int maxEntrySize) {
+        if (store instanceof IRandomAccessStore && store instanceof IFileStore
+                && store instanceof IPrecompressedStore
+                && store instanceof IAtomicContentStore
+                && store instanceof IResumableStore
+                && store instanceof IDigestStore) {
+            return new CachingFileStore(store, maxSize, maxEntrySize);
+        }
+        return new CachingStore(store, maxSize, maxEntrySize);
+    }
+
+    public IWebdavStore getStore() {
+        return _store;
+    }
+
+    public void destroy() {
+        LOG.info("content cache: " + _hits.get() + " hits, " + _misses.get()
+                + " misses, " + _evictions.get() + " evictions");
+        clear();
+        _store.destroy();
+    }
+
+    public ITransaction begin(Principal principal) {
+        return _store.begin(principal);
+    }
+
+    public void checkAuthentication(ITransaction transaction) {
+        _store.checkAuthentication(transaction);
+    }
+
+    public void commit(ITransaction transaction) {
+        _store.commit(transaction);
+    }
+
+    public void rollback(ITransaction transaction) {
+        _store.rollback(transaction);
+    }
+
+    public void createFolder(ITransaction transaction, String folderUri) {
+        _store.createFolder(transaction, folderUri);
+    }
+
+    public void createResource(ITransaction transaction, String resourceUri) {
+        invalidate(resourceUri);
+        _store.createResource(transaction, resourceUri);
+    }
+
+    public InputStream getResourceContent(ITransaction transaction,
+            String resourceUri) {
+        Entry entry = get(resourceUri);
+        if (entry != null) {
+            _hits.incrementAndGet();
+            return new ByteArrayInputStream(entry._content);
+        }
+        _misses.incrementAndGet();
+
+        // taken before reading, a change while reading makes it outdated
+        StoredObject so = _store.getStoredObject(transaction, resourceUri);
+        InputStream in = _store.getResourceContent(transaction, resourceUri);
+        if (in == null || so == null || so.isFolder()
+                || so.getResourceLength() > _maxEntrySize) {
+            return in;
+        }
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(
+                    (int) Math.max(so.getResourceLength(), 32));
+            byte[] copyBuffer = new byte[Math.min(_maxEntrySize + 1, 8192)];
+            int read;
+            while ((read = in.read(copyBuffer)) != -1) {
+                buffer.write(copyBuffer, 0, read);
+                if (buffer.size() > _maxEntrySize) {
+                    // grew since the lookup, don't cache it
+                    return new SequenceInputStream(new ByteArrayInputStream(
+                            buffer.toByteArray()), in);
+                }
+            }
+            in.close();
+            byte[] content = buffer.toByteArray();
+            put(resourceUri, new Entry(content, so.getLastModified()));
+            return new ByteArrayInputStream(content);
+        } catch (IOException e) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // reported below
+            }
+            throw new WebdavException(e);
+        }
+    }
+
+    public InputStream getResourceContent(ITransaction transaction,
+            String resourceUri, long offset) {
+        Entry entry = get(resourceUri);
+        if (entry != null) {
+            _hits.incrementAndGet();
+            int start = (int) Math.min(offset, entry._content.length);
+            return new ByteArrayInputStream(entry._content, start,
+                    entry._content.length - start);
+        }
+        if (_store instanceof IRandomAccessStore) {
+            return ((IRandomAccessStore) _store).getResourceContent(
+                    transaction, resourceUri, offset);
+        }
+        InputStream in = _store.getResourceContent(transaction, resourceUri);
+        try {
+            while (offset > 0) {
+                long skipped = in.skip(offset);
+                if (skipped <= 0) {
+                    break;
+                }
+                offset -= skipped;
+            }
+        } catch (IOException e) {
+            throw new WebdavException(e);
+        }
+        return in;
+    }
+
+    /**
+     * @return null for cached and cacheable resources, so they are read from
+     *  memory
+     */
+    public FileChannel getResourceChannel(ITransaction transaction,
+            String resourceUri) {
+        if (!(_store instanceof IRandomAccessStore)
+                || isCacheable(transaction, resourceUri)) {
+            return null;
+        }
+        return ((IRandomAccessStore) _store).getResourceChannel(transaction,
+                resourceUri);
+    }
+
+    /**
+     * @return null for cached and cacheable resources, so they are read from
+     *  memory
+     */
+    public File getResourceFile(ITransaction transaction, String resourceUri) {
+        if (!(_store instanceof IFileStore)
+                || isCacheable(transaction, resourceUri)) {
+            return null;
+        }
+        return ((IFileStore) _store).getResourceFile(transaction, resourceUri);
+    }
+
+    public long getEncodedLength(ITransaction transaction, String resourceUri,
+            String encoding) {
+        if (!(_store instanceof IPrecompressedStore)) {
+            return -1;
+        }
+        return ((IPrecompressedStore) _store).getEncodedLength(transaction,
+                resourceUri, encoding);
+    }
+
+    public InputStream getEncodedContent(ITransaction transaction,
+            String resourceUri, String encoding) {
+        return ((IPrecompressedStore) _store).getEncodedContent(transaction,
+                resourceUri, encoding);
+    }
+
+    public long setResourceContent(ITransaction transaction,
+            String resourceUri, InputStream content, String contentType,
+            String characterEncoding) {
+        invalidate(resourceUri);
+        try {
+            return _store.setResourceContent(transaction, resourceUri, content,
+                    contentType, characterEncoding);
+        } finally {
+            // a request may have cached the old content meanwhile
+            invalidate(resourceUri);
+        }
+    }
+
+    public long getUploadOffset(ITransaction transaction, String resourceUri,
+            String uploadId) {
+        if (!(_store instanceof IResumableStore)) {
+            return -1;
+        }
+        return ((IResumableStore) _store).getUploadOffset(transaction,
+                resourceUri, uploadId);
+    }
+
+    public long writeUpload(ITransaction transaction, String resourceUri,
+            String uploadId, InputStream content, long offset) {
+        return resumableStore().writeUpload(transaction, resourceUri,
+                uploadId, content, offset);
+    }
+
+    public InputStream getUploadContent(ITransaction transaction,
+            String resourceUri, String uploadId) {
+        return resumableStore().getUploadContent(transaction, resourceUri,
+                uploadId);
+    }
+
+    public long commitUpload(ITransaction transaction, String resourceUri,
+            String uploadId) {
+        invalidate(resourceUri);
+        try {
+            return resumableStore().commitUpload(transaction, resourceUri,
+                    uploadId);
+        } finally {
+            invalidate(resourceUri);
+        }
+    }
+
+    public void cancelUpload(ITransaction transaction, String resourceUri,
+            String uploadId) {
+        resumableStore().cancelUpload(transaction, resourceUri, uploadId);
+    }
+
+    public void setContentDigest(ITransaction transaction,
+            String resourceUri, String algorithm, byte[] digest) {
+        if (_store instanceof IDigestStore) {
+            ((IDigestStore) _store).setContentDigest(transaction,
+                    resourceUri, algorithm, digest);
+        }
+    }
+
+    public String[] getChildrenNames(ITransaction transaction, String folderUri) {
+        return _store.getChildrenNames(transaction, folderUri);
+    }
+
+    public long getResourceLength(ITransaction transaction, String path) {
+        Entry entry = get(path);
+        if (entry != null) {
+            return entry._content.length;
+        }
+        return _store.getResourceLength(transaction, path);
+    }
+
+    public void removeObject(ITransaction transaction, String uri) {
+        _store.removeObject(transaction, uri);
+        invalidateTree(uri);
+    }
+
+    public StoredObject getStoredObject(ITransaction transaction, String uri) {
+        StoredObject so = _store.getStoredObject(transaction, uri);
+        Entry entry;
+        synchronized (_entries) {
+            entry = _entries.get(uri);
+        }
+        if (entry != null && !entry.isCurrent(so)) {
+            invalidate(uri);
+        }
+        return so;
+    }
+
+    public Principal createPrincipal(HttpServletRequest request) {
+        return _store.createPrincipal(request);
+    }
+
+    public boolean supportsMoveOperation() {
+        return _store.supportsMoveOperation();
+    }
+
+    public void moveResource(ITransaction transaction, String sourceUri,
+            String destinationUri) {
+        _store.moveResource(transaction, sourceUri, destinationUri);
+        invalidateTree(sourceUri);
+        invalidateTree(destinationUri);
+    }
+
+    /**
+     * @return how many reads were answered from the cache
+     */
+    public long getHitCount() {
+        return _hits.get();
+    }
+
+    /**
+     * @return how many reads went to the wrapped store
+     */
+    public long getMissCount() {
+        return _misses.get();
+    }
+
+    public long getEvictionCount() {
+        return _evictions.get();
+    }
+
+    /**
+     * @return hits / (hits + misses), 0 if nothing was read yet
+     */
+    public double getHitRate() {
+        long hits = _hits.get();
+        long total = hits + _misses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the bytes of content in the cache
+     */
+    public long getSize() {
+        synchronized (_entries) {
+            return _size;
+        }
+    }
+
+    public int getEntryCount() {
+        synchronized (_entries) {
+            return _entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (_entries) {
+            _entries.clear();
+            _size = 0;
+        }
+    }
+
+    private IResumableStore resumableStore() {
+        if (!(_store instanceof IResumableStore)) {
+            throw new WebdavException("store doesn't support resumable uploads");
+        }
+        return (IResumableStore) _store;
+    }
+
+    private boolean isCacheable(ITransaction transaction, String resourceUri) {
+        synchronized (_entries) {
+            if (_entries.containsKey(resourceUri)) {
+                return true;
+            }
+        }
+        return _store.getResourceLength(transaction, resourceUri) <= _maxEntrySize;
+    }
+
+    private Entry get(String uri) {
+        synchronized (_entries) {
+            return _entries.get(uri);
+        }
+    }
+
+    private void put(String uri, Entry entry) {
+        synchronized (_entries) {
+            Entry old = _entries.put(uri, entry);
+            if (old != null) {
+                _size -= old._content.length;
+            }
+            _size += entry._content.length;
+            Iterator<Entry> it = _entries.values().iterator();
+            while (_size > _maxSize && it.hasNext()) {
+                Entry eldest = it.next();
+                it.remove();
+                _size -= eldest._content.length;
+                _evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void invalidate(String uri) {
+        synchronized (_entries) {
+            Entry old = _entries.remove(uri);
+            if (old != null) {
+                _size -= old._content.length;
+            }
+        }
+    }
+
+    /**
+     * drops the entry of the uri and of everything below it
+     */
+    private void invalidateTree(String uri) {
+        String prefix = uri.endsWith("/") ? uri : uri + "/";
+        synchronized (_entries) {
+            invalidate(uri);
+            Iterator<Map.Entry<String, Entry>> it = _entries.entrySet()
+                    .iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Entry> e = it.next();
+                if (e.getKey().startsWith(prefix)) {
+                    it.remove();
+                    _size -= e.getValue()._content.length;
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final byte[] _content;
+
+        /**
+         * last modification of the cached content in ms, -1 if unknown
+         */
+        private final long _lastModified;
+
+        private Entry(byte[] content, Date lastModified) {
+            _content = content;
+            _lastModified = lastModified == null ? -1 : lastModified.getTime();
+        }
+
+        private boolean isCurrent(StoredObject so) {
+            if (so == null || so.isFolder() || so.isNullResource()
+                    || so.getResourceLength() != _content.length) {
+                return false;
+            }
+            long lastModified = so.getLastModified() == null ? -1 : so
+                    .getLastModified().getTime();
+            return lastModified == _lastModified;
+        }
+    }
+}
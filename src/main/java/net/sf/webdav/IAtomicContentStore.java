@@ -0,0 +1,24 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav;
+
+/**
+ * Marks an IWebdavStore whose setResourceContent() replaces the content of a
+ * resource at once: a reader sees either the old or the new content, never a
+ * part of it, and a failed write leaves the old content. GET and HEAD then
+ * don't wait for a running PUT.
+ */
+public interface IAtomicContentStore {
+}
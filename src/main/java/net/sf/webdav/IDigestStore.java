@@ -0,0 +1,45 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav;
+
+import net.sf.webdav.exceptions.WebdavException;
+
+/**
+ * Optional capability of an IWebdavStore: keeping the digest PUT computed
+ * while the content was written. The store then tags the resource with it
+ * (StoredObject.setETag()), so the strong ETag costs no second read.
+ */
+public interface IDigestStore {
+
+    /**
+     * Remembers the digest of the content just written with
+     * setResourceContent(). It has to be forgotten once the content changes
+     * in another way.
+     *
+     * @param transaction
+     *      indicates that the method is within the scope of a WebDAV
+     *      transaction
+     * @param resourceUri
+     *      URI of the resource
+     * @param algorithm
+     *      name of the MessageDigest algorithm, e.g. "SHA-256"
+     * @param digest
+     *      the digest of the content
+     * @throws WebdavException
+     *      if something goes wrong on the store level
+     */
+    void setContentDigest(ITransaction transaction, String resourceUri,
+            String algorithm, byte[] digest);
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav;
+
+import java.io.File;
+
+/**
+ * Optional capability of an IWebdavStore which keeps resources in plain
+ * files. If the container supports it, GET hands such a file to the
+ * container to send it with sendfile instead of copying it through the
+ * servlet.
+ */
+public interface IFileStore {
+
+    /**
+     * Gets the file holding the content of the resource specified by
+     * <code>resourceUri</code>. The file is only read.
+     *
+     * @param transaction
+     *      indicates that the method is within the scope of a WebDAV
+     *      transaction
+     * @param resourceUri
+     *      URI of the content resource
+     * @return the file, or <code>null</code> if the content isn't kept in a
+     *  file as is
+     * @throws WebdavException
+     *      if something goes wrong on the store level
+     */
+    File getResourceFile(ITransaction transaction, String resourceUri);
+}
@@ -10,4 +10,16 @@ public interface IMimeTyper {
      * @return 
      */
     String getMimeType(ITransaction transaction, String path);
+
+    /**
+     * Detect the mime type of an object which was already looked up, without
+     * asking the store again
+     * 
+     * @param transaction
+     * @param path
+     * @param so
+     *      the object at path, may be null
+     * @return 
+     */
+    String getMimeType(ITransaction transaction, String path, StoredObject so);
 }
@@ -0,0 +1,57 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav;
+
+import java.io.InputStream;
+
+/**
+ * Optional capability of an IWebdavStore which keeps compressed copies of
+ * resources, e.g. "file.txt.gz" next to "file.txt". GET sends them to
+ * clients accepting the encoding instead of compressing on the fly.
+ */
+public interface IPrecompressedStore {
+
+    /**
+     * @param transaction
+     *      indicates that the method is within the scope of a WebDAV
+     *      transaction
+     * @param resourceUri
+     *      URI of the content resource
+     * @param encoding
+     *      content coding, e.g. "gzip"
+     * @return length of the encoded content, or <code>-1</code> if there is
+     *  no encoded copy or it is older than the resource
+     */
+    long getEncodedLength(ITransaction transaction, String resourceUri,
+            String encoding);
+
+    /**
+     * Gets the encoded copy of the resource specified by
+     * <code>resourceUri</code>.
+     *
+     * @param transaction
+     *      indicates that the method is within the scope of a WebDAV
+     *      transaction
+     * @param resourceUri
+     *      URI of the content resource
+     * @param encoding
+     *      content coding, e.g. "gzip"
+     * @return input stream you can read the encoded content from
+     * @throws WebdavException
+     *      if something goes wrong on the store level
+     */
+    InputStream getEncodedContent(ITransaction transaction,
+            String resourceUri, String encoding);
+}
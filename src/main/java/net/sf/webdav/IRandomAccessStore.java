@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav;
+
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * Optional capability of an IWebdavStore which can read the content of a
+ * resource from any position. GET uses it to answer Range requests without
+ * reading the bytes before the range; for other stores it skips them.
+ */
+public interface IRandomAccessStore {
+
+    /**
+     * Gets the content of the resource specified by <code>resourceUri</code>,
+     * starting at <code>offset</code>.
+     *
+     * @param transaction
+     *      indicates that the method is within the scope of a WebDAV
+     *      transaction
+     * @param resourceUri
+     *      URI of the content resource
+     * @param offset
+     *      position of the first byte to read
+     * @return input stream you can read the content of the resource from
+     * @throws WebdavException
+     *      if something goes wrong on the store level
+     */
+    InputStream getResourceContent(ITransaction transaction,
+            String resourceUri, long offset);
+
+    /**
+     * Opens the content of the resource specified by <code>resourceUri</code>
+     * as a read-only channel, so ranges can be sent with
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+     * The caller closes it.
+     *
+     * @param transaction
+     *      indicates that the method is within the scope of a WebDAV
+     *      transaction
+     * @param resourceUri
+     *      URI of the content resource
+     * @return the channel, or <code>null</code> if the resource isn't kept in
+     *  a file
+     * @throws WebdavException
+     *      if something goes wrong on the store level
+     */
+    FileChannel getResourceChannel(ITransaction transaction, String resourceUri);
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav;
+
+import java.io.InputStream;
+
+/**
+ * Optional capability of an IWebdavStore which can take the content of a
+ * resource in several parts. PUT uses it for requests with a Content-Range
+ * header, so an interrupted upload can go on where it stopped. The parts are
+ * staged apart from the resource, which only changes when the upload is
+ * committed. Each client stages its own upload of a resource, told apart by
+ * an upload id; an upload left behind is dropped after a while.
+ */
+public interface IResumableStore {
+
+    /**
+     * @param transaction
+     *      indicates that the method is within the scope of a WebDAV
+     *      transaction
+     * @param resourceUri
+     *      URI of the content resource
+     * @param uploadId
+     *      tells the upload apart from those of other clients to the same
+     *      resource, e.g. the lock token of the client. null for uploads
+     *      without one
+     * @return the number of bytes staged for the resource, -1 if no upload
+     *  was started
+     * @throws WebdavException
+     *      if something goes wrong on the store level
+     */
+    long getUploadOffset(ITransaction transaction, String resourceUri,
+            String uploadId);
+
+    /**
+     * Stages content for the resource at <code>offset</code>, staged bytes
+     * behind it are dropped. The bytes read before the stream fails stay
+     * staged.
+     *
+     * @param transaction
+     *      indicates that the method is within the scope of a WebDAV
+     *      transaction
+     * @param resourceUri
+     *      URI of the content resource
+     * @param uploadId
+     *      tells the upload apart from those of other clients to the same
+     *      resource, e.g. the lock token of the client. null for uploads
+     *      without one
+     * @param content
+     *      the part, closed afterwards
+     * @param offset
+     *      position of the part in the content, 0 starts a new upload
+     * @return the number of bytes staged now
+     * @throws WebdavException
+     *      if something goes wrong on the store level
+     */
+    long writeUpload(ITransaction transaction, String resourceUri,
+            String uploadId, InputStream content, long offset);
+
+    /**
+     * @param transaction
+     *      indicates that the method is within the scope of a WebDAV
+     *      transaction
+     * @param resourceUri
+     *      URI of the content resource
+     * @param uploadId
+     *      tells the upload apart from those of other clients to the same
+     *      resource, e.g. the lock token of the client. null for uploads
+     *      without one
+     * @return the staged content, to check it before it is committed
+     * @throws WebdavException
+     *      if no upload was started or something goes wrong on the store
+     *      level
+     */
+    InputStream getUploadContent(ITransaction transaction, String resourceUri,
+            String uploadId);
+
+    /**
+     * Replaces the content of the resource with the staged content, creating
+     * the resource if needed.
+     *
+     * @param transaction
+     *      indicates that the method is within the scope of a WebDAV
+     *      transaction
+     * @param resourceUri
+     *      URI of the content resource
+     * @param uploadId
+     *      tells the upload apart from those of other clients to the same
+     *      resource, e.g. the lock token of the client. null for uploads
+     *      without one
+     * @return the length of the resource
+     * @throws WebdavException
+     *      if something goes wrong on the store level
+     */
+    long commitUpload(ITransaction transaction, String resourceUri,
+            String uploadId);
+
+    /**
+     * Drops the staged content of the resource, if there is any.
+     *
+     * @param transaction
+     *      indicates that the method is within the scope of a WebDAV
+     *      transaction
+     * @param resourceUri
+     *      URI of the content resource
+     * @param uploadId
+     *      tells the upload apart from those of other clients to the same
+     *      resource, e.g. the lock token of the client. null for uploads
+     *      without one
+     * @throws WebdavException
+     *      if something goes wrong on the store level
+     */
+    void cancelUpload(ITransaction transaction, String resourceUri,
+            String uploadId);
+}
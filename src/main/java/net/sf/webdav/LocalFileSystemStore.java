@@ -15,21 +15,35 @@
  */
 package net.sf.webdav;
 
+import net.sf.webdav.exceptions.AccessDeniedException;
 import net.sf.webdav.exceptions.WebdavException;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.zip.CRC32;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Reference Implementation of WebdavStore
@@ -37,17 +51,106 @@ import java.util.List;
  * @author joa
  * @author re
  */
-public class LocalFileSystemStore implements IWebdavStore {
+public class LocalFileSystemStore implements IWebdavStore,
+        IRandomAccessStore, IFileStore, IPrecompressedStore,
+        IAtomicContentStore, IResumableStore, IDigestStore {
 
     private static org.slf4j.Logger LOG = org.slf4j.LoggerFactory
             .getLogger(LocalFileSystemStore.class);
 
     private static int BUF_SIZE = 65536;
 
+    /**
+     * direct buffers for uploads, the file channel writes them without
+     * copying. at most MAX_POOLED_BUFFERS are kept
+     */
+    private static final Queue<ByteBuffer> BUFFERS = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    private static final AtomicInteger POOLED_BUFFERS = new AtomicInteger();
+
+    /**
+     * directory below the root keeping the files of the store itself: the
+     * uploads in progress ("tmp"), the staged parts of resumable uploads
+     * ("staged") and the digests of resources ("digest"). it is hidden from
+     * the listing of the root and can't be accessed as a resource, so it
+     * can't collide with the files of the users
+     */
+    static final String WORK_DIR = ".webdav";
+
+    /**
+     * ".gz" sidecars checked against their file, at most MAX_SIDECAR_CHECKS
+     * are kept
+     */
+    private final ConcurrentMap<String, SidecarCheck> _sidecarChecks = new ConcurrentHashMap<String, SidecarCheck>();
+
+    private static final int MAX_SIDECAR_CHECKS = 1024;
+
+    /**
+     * seconds a staged upload is kept without a new part
+     */
+    public static final int DEFAULT_STAGED_UPLOAD_TIMEOUT = 24 * 60 * 60;
+
+    /**
+     * staged uploads are looked through for expired ones at most this often
+     * (ms)
+     */
+    private static final long STAGED_SWEEP_INTERVAL = 60 * 1000L;
+
+    private final AtomicLong _nextStagedSweep = new AtomicLong();
+
     private File _root = null;
 
+    private File _workDir;
+
+    private boolean _syncOnWrite = false;
+
+    private boolean _precompressedSidecars = false;
+
+    private long _stagedUploadTimeout = DEFAULT_STAGED_UPLOAD_TIMEOUT * 1000L;
+
+    /**
+     * true once a digest is kept, getStoredObject() doesn't look for one
+     * before
+     */
+    private volatile boolean _digests;
+
     public LocalFileSystemStore(File root) {
         _root = root;
+        _workDir = new File(root, WORK_DIR);
+        // digests kept before a restart
+        _digests = new File(_workDir, "digest").isDirectory();
+    }
+
+    /**
+     * @param syncOnWrite
+     *      force written content to the disk before it replaces the old
+     *      content, so a crash can't leave an empty or partial file. where
+     *      rename can't replace a file (Windows) a crash right between
+     *      moving the old file aside and the new one into place leaves the
+     *      old content in the "tmp" directory of the work directory
+     */
+    public void setSyncOnWrite(boolean syncOnWrite) {
+        _syncOnWrite = syncOnWrite;
+    }
+
+    /**
+     * @param precompressedSidecars
+     *      serve "file.gz" as the gzip encoding of "file", if its gzip
+     *      trailer matches the length and CRC of the file
+     */
+    public void setPrecompressedSidecars(boolean precompressedSidecars) {
+        _precompressedSidecars = precompressedSidecars;
+    }
+
+    /**
+     * @param seconds
+     *      time an upload stays staged without a new part, it's dropped
+     *      afterwards
+     */
+    public void setStagedUploadTimeout(int seconds) {
+        _stagedUploadTimeout = seconds * 1000L;
     }
 
     public void destroy() {
@@ -87,7 +190,7 @@ public class LocalFileSystemStore implements IWebdavStore {
     public void createFolder(ITransaction transaction, String uri)
             throws WebdavException {
         LOG.trace("LocalFileSystemStore.createFolder(" + uri + ")");
-        File file = new File(_root, uri);
+        File file = getFile(uri);
         if (!file.mkdir())
             throw new WebdavException("cannot create folder: " + uri);
     }
@@ -95,7 +198,7 @@ public class LocalFileSystemStore implements IWebdavStore {
     public void createResource(ITransaction transaction, String uri)
             throws WebdavException {
         LOG.trace("LocalFileSystemStore.createResource(" + uri + ")");
-        File file = new File(_root, uri);
+        File file = getFile(uri);
         try {
             if (!file.createNewFile())
                 throw new WebdavException("cannot create file: " + uri);
@@ -112,28 +215,34 @@ public class LocalFileSystemStore implements IWebdavStore {
             throws WebdavException {
 
         LOG.trace("LocalFileSystemStore.setResourceContent(" + uri + ")");
-        File file = new File(_root, uri);
+        File file = getFile(uri);
+        File temp = null;
         try {
-            OutputStream os = new BufferedOutputStream(new FileOutputStream(
-                    file), BUF_SIZE);
+            // written on the same file system, so it can be renamed into place
+            temp = File.createTempFile("put", null, getWorkDir("tmp"));
+            FileChannel out = new FileOutputStream(temp).getChannel();
             try {
-                int read;
-                byte[] copyBuffer = new byte[BUF_SIZE];
-
-                while ((read = is.read(copyBuffer, 0, copyBuffer.length)) != -1) {
-                    os.write(copyBuffer, 0, read);
+                copy(is, out);
+                if (_syncOnWrite) {
+                    out.force(true);
                 }
             } finally {
                 try {
                     is.close();
                 } finally {
-                    os.close();
+                    out.close();
                 }
             }
+            replace(temp, file);
+            temp = null;
         } catch (IOException e) {
             LOG.error("LocalFileSystemStore.setResourceContent(" + uri
                     + ") failed");
             throw new WebdavException(e);
+        } finally {
+            if (temp != null && !temp.delete()) {
+                LOG.warn("can't delete " + temp);
+            }
         }
         long length = -1;
 
@@ -147,10 +256,364 @@ public class LocalFileSystemStore implements IWebdavStore {
         return length;
     }
 
+    public long getUploadOffset(ITransaction transaction, String uri,
+            String uploadId) {
+        File staged = getStagedFile(uri, uploadId);
+        return staged.isFile() && !isExpired(staged) ? staged.length() : -1;
+    }
+
+    public long writeUpload(ITransaction transaction, String uri,
+            String uploadId, InputStream is, long offset)
+            throws WebdavException {
+        LOG.trace("LocalFileSystemStore.writeUpload(" + uri + ", " + offset
+                + ")");
+        getFile(uri);
+        sweepStagedUploads();
+        File staged = getStagedFile(uri, uploadId);
+        if (isExpired(staged)) {
+            // too late to go on with it
+            staged.delete();
+        }
+        try {
+            getWorkDir("staged");
+            FileChannel out = new RandomAccessFile(staged, "rw").getChannel();
+            try {
+                if (offset > out.size()) {
+                    throw new WebdavException("cannot write " + uri + " at "
+                            + offset + ", only " + out.size()
+                            + " bytes are staged");
+                }
+                out.truncate(offset);
+                out.position(offset);
+                copy(is, out);
+                return out.size();
+            } finally {
+                try {
+                    is.close();
+                } finally {
+                    out.close();
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("LocalFileSystemStore.writeUpload(" + uri + ") failed");
+            throw new WebdavException(e);
+        }
+    }
+
+    public InputStream getUploadContent(ITransaction transaction, String uri,
+            String uploadId) throws WebdavException {
+        getFile(uri);
+        File staged = getStagedFile(uri, uploadId);
+        if (!staged.isFile() || isExpired(staged)) {
+            throw new WebdavException("no upload of " + uri + " is staged");
+        }
+        try {
+            return new BufferedInputStream(new FileInputStream(staged),
+                    BUF_SIZE);
+        } catch (IOException e) {
+            throw new WebdavException(e);
+        }
+    }
+
+    public long commitUpload(ITransaction transaction, String uri,
+            String uploadId) throws WebdavException {
+        LOG.trace("LocalFileSystemStore.commitUpload(" + uri + ")");
+        File file = getFile(uri);
+        File staged = getStagedFile(uri, uploadId);
+        if (!staged.isFile() || isExpired(staged)) {
+            throw new WebdavException("no upload of " + uri + " is staged");
+        }
+        try {
+            if (_syncOnWrite) {
+                FileChannel channel = new RandomAccessFile(staged, "rw")
+                        .getChannel();
+                try {
+                    channel.force(true);
+                } finally {
+                    channel.close();
+                }
+            }
+            replace(staged, file);
+        } catch (IOException e) {
+            LOG.error("LocalFileSystemStore.commitUpload(" + uri + ") failed");
+            throw new WebdavException(e);
+        }
+        return file.length();
+    }
+
+    public void cancelUpload(ITransaction transaction, String uri,
+            String uploadId) {
+        File staged = getStagedFile(uri, uploadId);
+        if (staged.exists() && !staged.delete()) {
+            throw new WebdavException("cannot delete staged upload of " + uri);
+        }
+    }
+
+    /**
+     * Keeps the digest in the work directory, together with the length and
+     * modification time it belongs to. A change of the file outside of PUT
+     * makes it outdated, getStoredObject() ignores it then.
+     */
+    public void setContentDigest(ITransaction transaction, String uri,
+            String algorithm, byte[] digest) throws WebdavException {
+        File file = getFile(uri);
+        String line = algorithm + " " + file.length() + " "
+                + file.lastModified() + " " + toHex(digest);
+        try {
+            getWorkDir("digest");
+            _digests = true;
+            FileOutputStream out = new FileOutputStream(getDigestFile(uri));
+            try {
+                out.write(line.getBytes("US-ASCII"));
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new WebdavException(e);
+        }
+    }
+
+    /**
+     * @return the hex digest of the file, null if none is kept or it is
+     *  outdated
+     */
+    private String readDigest(File file, String uri) {
+        if (!_digests) {
+            return null;
+        }
+        File digestFile = getDigestFile(uri);
+        if (!digestFile.isFile()) {
+            return null;
+        }
+        try {
+            byte[] line = new byte[(int) Math.min(digestFile.length(), 512)];
+            FileInputStream in = new FileInputStream(digestFile);
+            int length = 0;
+            try {
+                int read;
+                while (length < line.length
+                        && (read = in.read(line, length, line.length
+                                - length)) != -1) {
+                    length += read;
+                }
+            } finally {
+                in.close();
+            }
+            String[] fields = new String(line, 0, length, "US-ASCII").split(" ");
+            if (fields.length == 4
+                    && fields[1].equals(String.valueOf(file.length()))
+                    && fields[2].equals(String.valueOf(file.lastModified()))) {
+                return fields[3];
+            }
+        } catch (IOException e) {
+            LOG.warn("cannot read " + digestFile + ": " + e);
+        }
+        return null;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private File getDigestFile(String uri) {
+        return new File(new File(_workDir, "digest"), toKey(uri));
+    }
+
+    /**
+     * @return where the parts of a resumable upload of uri are collected
+     */
+    private File getStagedFile(String uri, String uploadId) {
+        String key = uploadId == null ? toKey(uri) : toKey(uri) + "-"
+                + md5Hex(uploadId);
+        return new File(new File(_workDir, "staged"), key);
+    }
+
+    /**
+     * @return true if the staged upload got no part for longer than the
+     *  timeout
+     */
+    private boolean isExpired(File staged) {
+        return staged.isFile()
+                && System.currentTimeMillis() - staged.lastModified() > _stagedUploadTimeout;
+    }
+
+    /**
+     * deletes the staged uploads left behind by their clients, at most once
+     * every STAGED_SWEEP_INTERVAL
+     */
+    private void sweepStagedUploads() {
+        long now = System.currentTimeMillis();
+        long next = _nextStagedSweep.get();
+        if (now < next
+                || !_nextStagedSweep.compareAndSet(next, now
+                        + STAGED_SWEEP_INTERVAL)) {
+            return;
+        }
+        File[] files = new File(_workDir, "staged").listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File staged : files) {
+            if (isExpired(staged) && !staged.delete()) {
+                LOG.warn("cannot delete expired upload " + staged);
+            }
+        }
+    }
+
+    /**
+     * @return the file of uri
+     * @throws AccessDeniedException
+     *      if uri is in the work directory
+     */
+    private File getFile(String uri) {
+        if (isReserved(uri)) {
+            throw new AccessDeniedException(uri + " is reserved");
+        }
+        return new File(_root, uri);
+    }
+
+    /**
+     * @return true if uri is the work directory or below it
+     */
+    private static boolean isReserved(String uri) {
+        String path = normalize(uri);
+        int end = path.indexOf('/', 1);
+        return (end == -1 ? path.substring(1) : path.substring(1, end))
+                .equalsIgnoreCase(WORK_DIR);
+    }
+
+    /**
+     * @return uri with '/' separators, starting with one and without empty
+     *  segments
+     */
+    private static String normalize(String uri) {
+        StringBuilder path = new StringBuilder(uri.length() + 1);
+        for (String segment : uri.split("[/\\\\]")) {
+            if (segment.length() > 0 && !segment.equals(".")) {
+                path.append('/').append(segment);
+            }
+        }
+        return path.length() == 0 ? "/" : path.toString();
+    }
+
+    /**
+     * @return the directory of the work directory, created if it's missing
+     */
+    private File getWorkDir(String name) throws IOException {
+        File dir = new File(_workDir, name);
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("cannot create " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * @return a file name in the work directory standing for uri, the hex
+     *  MD5 of its normalized path
+     */
+    private static String toKey(String uri) {
+        return md5Hex(normalize(uri));
+    }
+
+    private static String md5Hex(String value) {
+        try {
+            return toHex(MessageDigest.getInstance("MD5").digest(
+                    value.getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * copies the stream to the channel through a pooled buffer. the bytes
+     * read before the stream fails are written too
+     */
+    private static void copy(InputStream is, FileChannel out)
+            throws IOException {
+        ByteBuffer buffer = takeBuffer();
+        try {
+            ReadableByteChannel in = Channels.newChannel(is);
+            boolean eof = false;
+            while (!eof) {
+                try {
+                    // fill the buffer, so the file is written in large blocks
+                    while (buffer.hasRemaining()) {
+                        if (in.read(buffer) == -1) {
+                            eof = true;
+                            break;
+                        }
+                    }
+                } finally {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+        } finally {
+            returnBuffer(buffer);
+        }
+    }
+
+    private static ByteBuffer takeBuffer() {
+        ByteBuffer buffer = BUFFERS.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUF_SIZE);
+        }
+        POOLED_BUFFERS.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    private static void returnBuffer(ByteBuffer buffer) {
+        if (POOLED_BUFFERS.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            BUFFERS.offer(buffer);
+        } else {
+            POOLED_BUFFERS.decrementAndGet();
+        }
+    }
+
+    /**
+     * moves the new content into place. rename replaces the file atomically
+     * on POSIX systems. where it can't replace a file (Windows, or a busy
+     * target) the old file is moved to a backup in the work directory first
+     * and put back if the new one can't take its place
+     */
+    private void replace(File temp, File file) throws IOException {
+        if (temp.renameTo(file)) {
+            return;
+        }
+        if (!file.exists()) {
+            throw new IOException("cannot move " + temp + " to " + file);
+        }
+        File backup = File.createTempFile("old", null, getWorkDir("tmp"));
+        if (!backup.delete() || !file.renameTo(backup)) {
+            backup.delete();
+            throw new IOException("cannot move " + file + " aside");
+        }
+        if (!temp.renameTo(file)) {
+            if (!backup.renameTo(file)) {
+                LOG.error("cannot restore " + file + " from " + backup);
+            }
+            throw new IOException("cannot move " + temp + " to " + file);
+        }
+        if (!backup.delete()) {
+            LOG.warn("cannot delete " + backup);
+        }
+    }
+
     public String[] getChildrenNames(ITransaction transaction, String uri)
             throws WebdavException {
         LOG.trace("LocalFileSystemStore.getChildrenNames(" + uri + ")");
-        File file = new File(_root, uri);
+        File file = getFile(uri);
         String[] childrenNames = null;
         if (file.isDirectory()) {
             File[] children = file.listFiles();
@@ -158,6 +621,9 @@ public class LocalFileSystemStore implements IWebdavStore {
             String name = null;
             for (int i = 0; i < children.length; i++) {
                 name = children[i].getName();
+                if (isReserved(uri + "/" + name)) {
+                    continue;
+                }
                 childList.add(name);
                 LOG.trace("Child " + i + ": " + name);
             }
@@ -169,9 +635,12 @@ public class LocalFileSystemStore implements IWebdavStore {
 
     public void removeObject(ITransaction transaction, String uri)
             throws WebdavException {
-        File file = new File(_root, uri);
+        File file = getFile(uri);
         boolean success = file.delete();
         LOG.trace("LocalFileSystemStore.removeObject(" + uri + ")=" + success);
+        if (success) {
+            getDigestFile(uri).delete();
+        }
         if (!success) {
             throw new WebdavException("cannot delete object: " + uri);
         }
@@ -181,7 +650,7 @@ public class LocalFileSystemStore implements IWebdavStore {
     public InputStream getResourceContent(ITransaction transaction, String uri)
             throws WebdavException {
         LOG.trace("LocalFileSystemStore.getResourceContent(" + uri + ")");
-        File file = new File(_root, uri);
+        File file = getFile(uri);
 
         InputStream in;
         try {
@@ -194,6 +663,160 @@ public class LocalFileSystemStore implements IWebdavStore {
         return in;
     }
 
+    public InputStream getResourceContent(ITransaction transaction,
+            String uri, long offset) throws WebdavException {
+        LOG.trace("LocalFileSystemStore.getResourceContent(" + uri + ", "
+                + offset + ")");
+        File file = getFile(uri);
+
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            in.getChannel().position(offset);
+            return new BufferedInputStream(in);
+        } catch (IOException e) {
+            LOG.error("LocalFileSystemStore.getResourceContent(" + uri
+                    + ") failed");
+            closeQuietly(in);
+            throw new WebdavException(e);
+        }
+    }
+
+    public FileChannel getResourceChannel(ITransaction transaction, String uri)
+            throws WebdavException {
+        LOG.trace("LocalFileSystemStore.getResourceChannel(" + uri + ")");
+        File file = getFile(uri);
+        try {
+            return new RandomAccessFile(file, "r").getChannel();
+        } catch (IOException e) {
+            LOG.error("LocalFileSystemStore.getResourceChannel(" + uri
+                    + ") failed");
+            throw new WebdavException(e);
+        }
+    }
+
+    public File getResourceFile(ITransaction transaction, String uri) {
+        File file = new File(_root, uri);
+        return file.isFile() ? file : null;
+    }
+
+    public long getEncodedLength(ITransaction transaction, String uri,
+            String encoding) {
+        File encoded = getEncodedFile(uri, encoding);
+        return encoded != null ? encoded.length() : -1;
+    }
+
+    public InputStream getEncodedContent(ITransaction transaction,
+            String uri, String encoding) throws WebdavException {
+        LOG.trace("LocalFileSystemStore.getEncodedContent(" + uri + ", "
+                + encoding + ")");
+        File encoded = getEncodedFile(uri, encoding);
+        if (encoded == null) {
+            throw new WebdavException("no " + encoding + " copy of " + uri);
+        }
+        try {
+            return new BufferedInputStream(new FileInputStream(encoded));
+        } catch (IOException e) {
+            LOG.error("LocalFileSystemStore.getEncodedContent(" + uri
+                    + ") failed");
+            throw new WebdavException(e);
+        }
+    }
+
+    /**
+     * @return the ".gz" sidecar of the file, null if sidecars aren't served
+     *  or there is none which holds the content of the file
+     */
+    private File getEncodedFile(String uri, String encoding) {
+        if (!_precompressedSidecars || !"gzip".equals(encoding)) {
+            return null;
+        }
+        File file = new File(_root, uri);
+        File encoded = new File(_root, uri + ".gz");
+        if (!encoded.isFile() || !file.isFile()
+                || encoded.lastModified() < file.lastModified()) {
+            return null;
+        }
+        return isSidecarOf(encoded, file) ? encoded : null;
+    }
+
+    /**
+     * compares the gzip trailer of the sidecar, CRC32 and length of the
+     * uncompressed data, with the file. the result is kept until one of
+     * them changes
+     */
+    private boolean isSidecarOf(File encoded, File file) {
+        SidecarCheck check = new SidecarCheck(encoded, file);
+        SidecarCheck known = _sidecarChecks.get(encoded.getPath());
+        if (known != null && known.isSameAs(check)) {
+            return known._matches;
+        }
+        try {
+            check._matches = trailerMatches(encoded, file);
+        } catch (IOException e) {
+            LOG.warn("can't check " + encoded + ": " + e);
+            return false;
+        }
+        if (_sidecarChecks.size() >= MAX_SIDECAR_CHECKS) {
+            _sidecarChecks.clear();
+        }
+        _sidecarChecks.put(encoded.getPath(), check);
+        return check._matches;
+    }
+
+    private static boolean trailerMatches(File encoded, File file)
+            throws IOException {
+        if (encoded.length() < 18) {
+            return false;
+        }
+        long crc;
+        long size;
+        RandomAccessFile raf = new RandomAccessFile(encoded, "r");
+        try {
+            if (raf.readUnsignedByte() != 0x1f || raf.readUnsignedByte() != 0x8b) {
+                return false;
+            }
+            raf.seek(encoded.length() - 8);
+            byte[] trailer = new byte[8];
+            raf.readFully(trailer);
+            crc = readIntLE(trailer, 0);
+            size = readIntLE(trailer, 4);
+        } finally {
+            raf.close();
+        }
+        if (size != (file.length() & 0xffffffffL)) {
+            return false;
+        }
+        CRC32 crc32 = new CRC32();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUF_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc32.update(buffer, 0, read);
+            }
+        } finally {
+            closeQuietly(in);
+        }
+        return crc32.getValue() == crc;
+    }
+
+    private static long readIntLE(byte[] b, int off) {
+        return (b[off] & 0xffL) | (b[off + 1] & 0xffL) << 8
+                | (b[off + 2] & 0xffL) << 16 | (b[off + 3] & 0xffL) << 24;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                LOG.warn("Closing InputStream causes Exception!\n"
+                        + e.toString());
+            }
+        }
+    }
+
     public long getResourceLength(ITransaction transaction, String uri)
             throws WebdavException {
         LOG.trace("LocalFileSystemStore.getResourceLength(" + uri + ")");
@@ -206,12 +829,24 @@ public class LocalFileSystemStore implements IWebdavStore {
         StoredObject so = null;
 
         File file = new File(_root, uri);
-        if (file.exists()) {
+        if (file.exists() && !isReserved(uri)) {
             so = new StoredObject();
             so.setFolder(file.isDirectory());
             so.setLastModified(new Date(file.lastModified()));
             so.setCreationDate(new Date(file.lastModified()));
             so.setResourceLength(getResourceLength(transaction, uri));
+            if (!so.isFolder()) {
+                String digest = readDigest(file, uri);
+                if (digest != null) {
+                    so.setETag("\"" + digest + "\"");
+                } else {
+                    // strong: a write changes the length or the modification
+                    // time, the same way common web servers tag files
+                    so.setETag("\"" + Long.toHexString(so.getResourceLength())
+                            + "-" + Long.toHexString(file.lastModified())
+                            + "\"");
+                }
+            }
         }
 
         return so;
@@ -231,4 +866,35 @@ public class LocalFileSystemStore implements IWebdavStore {
     public void moveResource(ITransaction transaction, String sourceUri, String destinationUri) {
         throw new UnsupportedOperationException("Move operation is not supported in the LocalFileSystemStore");
     }
+
+    /**
+     * result of comparing a ".gz" sidecar with its file, valid while both
+     * keep their length and modification time
+     */
+    private static class SidecarCheck {
+
+        private final long _encodedModified;
+
+        private final long _encodedLength;
+
+        private final long _fileModified;
+
+        private final long _fileLength;
+
+        private boolean _matches;
+
+        private SidecarCheck(File encoded, File file) {
+            _encodedModified = encoded.lastModified();
+            _encodedLength = encoded.length();
+            _fileModified = file.lastModified();
+            _fileLength = file.length();
+        }
+
+        private boolean isSameAs(SidecarCheck other) {
+            return _encodedModified == other._encodedModified
+                    && _encodedLength == other._encodedLength
+                    && _fileModified == other._fileModified
+                    && _fileLength == other._fileLength;
+        }
+    }
 }
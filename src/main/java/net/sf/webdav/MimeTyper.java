@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+/**
+ * The default IMimeTyper: the mime type stored with the object, else the one
+ * the servlet context maps the extension to.
+ * <p/>
+ * The mappings of the common extensions are read from the servlet context
+ * once, so the container and the mime-mappings of the web.xml still decide,
+ * but most lookups are a get() on an immutable map. Other extensions are
+ * passed to the servlet context.
+ */
+public class MimeTyper implements IMimeTyper {
+
+    /**
+     * the extensions which are looked up at construction
+     */
+    private static final String[] COMMON_EXTENSIONS = { "html", "htm",
+            "xhtml", "css", "js", "json", "xml", "txt", "csv", "md", "pdf",
+            "png", "jpg", "jpeg", "gif", "svg", "ico", "webp", "bmp", "tif",
+            "tiff", "zip", "gz", "tgz", "tar", "jar", "war", "mp3", "mp4",
+            "wav", "ogg", "webm", "avi", "mov", "doc", "docx", "xls", "xlsx",
+            "ppt", "pptx", "odt", "ods", "odp", "rtf", "woff", "woff2", "ttf",
+            "eot", "java", "properties" };
+
+    private final IWebdavStore _store;
+
+    private final ServletContext _servletContext;
+
+    /**
+     * lower case extension to mime type, immutable
+     */
+    private final Map<String, String> _types;
+
+    /**
+     * @param store
+     * @param servletContext
+     *      the context mapping extensions to mime types, may be null
+     */
+    public MimeTyper(IWebdavStore store, ServletContext servletContext) {
+        _store = store;
+        _servletContext = servletContext;
+        Map<String, String> types = new HashMap<String, String>();
+        if (servletContext != null) {
+            for (String extension : COMMON_EXTENSIONS) {
+                String type = servletContext.getMimeType("file." + extension);
+                if (type != null) {
+                    types.put(extension, type);
+                }
+            }
+        }
+        _types = Collections.unmodifiableMap(types);
+    }
+
+    public String getMimeType(ITransaction transaction, String path) {
+        return getMimeType(transaction, path, _store.getStoredObject(
+                transaction, path));
+    }
+
+    public String getMimeType(ITransaction transaction, String path,
+            StoredObject so) {
+        if (so != null && so.getMimeType() != null) {
+            return so.getMimeType();
+        }
+        String extension = getExtension(path);
+        if (extension == null) {
+            return null;
+        }
+        String type = _types.get(extension);
+        if (type == null && _servletContext != null) {
+            type = _servletContext.getMimeType(path);
+        }
+        return type;
+    }
+
+    /**
+     * @return the lower case extension of the last segment, null if it has
+     *  none
+     */
+    private static String getExtension(String path) {
+        int dot = path.lastIndexOf('.');
+        if (dot == -1 || dot < path.lastIndexOf('/')) {
+            return null;
+        }
+        return path.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -28,6 +28,7 @@ public class StoredObject {
     private Date creationDate;
     private long contentLength;
     private String  mimeType;
+    private String eTag;
 
     private boolean isNullRessource;
 
@@ -139,6 +140,7 @@ public class StoredObject {
         // this.content = null;
         this.contentLength = 0;
         this.mimeType= null;
+        this.eTag = null;
     }
 
     /**
@@ -162,4 +164,25 @@ public class StoredObject {
         this.mimeType = mimeType;
     }
 
+    /**
+     * Retrieve the entity tag set by the store. Can return NULL, then the
+     * servlet uses a weak tag made of length and last modification.
+     *
+     * @return the entity tag including its quotes, e.g. "\"abc\"" or
+     *  "W/\"abc\""
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * Set the entity tag of this object. A strong tag (without W/) must
+     * change whenever the content changes, e.g. a hash of it.
+     *
+     * @param eTag the entity tag including its quotes
+     */
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
 }
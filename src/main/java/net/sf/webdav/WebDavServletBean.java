@@ -5,6 +5,8 @@ import net.sf.webdav.exceptions.UnauthenticatedException;
 import net.sf.webdav.exceptions.WebdavException;
 import net.sf.webdav.fromcatalina.MD5Encoder;
 import net.sf.webdav.locking.ResourceLocks;
+import net.sf.webdav.locking.ResourceLocksMonitor;
+import net.sf.webdav.methods.AsyncSender;
 import net.sf.webdav.methods.DoCopy;
 import net.sf.webdav.methods.DoDelete;
 import net.sf.webdav.methods.DoGet;
@@ -18,28 +20,28 @@ import net.sf.webdav.methods.DoPropfind;
 import net.sf.webdav.methods.DoProppatch;
 import net.sf.webdav.methods.DoPut;
 import net.sf.webdav.methods.DoUnlock;
+import net.sf.webdav.methods.UploadScheduler;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.security.Principal;
 import java.util.Enumeration;
 import java.util.HashMap;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 public class WebDavServletBean extends HttpServlet {
 
     private static org.slf4j.Logger LOG = org.slf4j.LoggerFactory
             .getLogger(WebDavServletBean.class);
 
-    /**
-     * MD5 message digest provider.
-     */
-    protected static MessageDigest MD5_HELPER;
-
     /**
      * The MD5 helper object for this class.
      */
@@ -50,14 +52,10 @@ public class WebDavServletBean extends HttpServlet {
 	protected IWebdavStore _store;
 	protected ILockingListener _lockingListener;
     private final HashMap<String, IMethodExecutor> _methodMap = new HashMap<String, IMethodExecutor>();
-
-    public WebDavServletBean() {
-        try {
-            MD5_HELPER = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException();
-        }
-    }
+    private ResourceLocksMonitor _lockMonitor;
+    private ObjectName _lockMonitorName;
+    private String _lockMonitorPath;
+    private AsyncSender _asyncSender;
 
     public void init(IWebdavStore store, ILockingListener lockingListener,
             String dftIndexFile, String insteadOf404,
@@ -69,16 +67,8 @@ public class WebDavServletBean extends HttpServlet {
         _resLocks = createResourceLocks(_lockingListener);
 
 
-        IMimeTyper mimeTyper = new IMimeTyper() {
-            @Override
-			public String getMimeType(ITransaction transaction, String path) {
-                String retVal= _store.getStoredObject(transaction, path).getMimeType();
-                if ( retVal== null) {
-                    retVal= getServletContext().getMimeType( path);
-                }
-                return retVal;
-            }
-        };
+        IMimeTyper mimeTyper = new MimeTyper(store,
+                getServletConfig() != null ? getServletContext() : null);
 
         register("GET", new DoGet(store, dftIndexFile, insteadOf404, _resLocks,
                 mimeTyper, nocontentLenghHeaders));
@@ -109,8 +99,109 @@ public class WebDavServletBean extends HttpServlet {
         return new ResourceLocks(lockingListener);
     }
 
+    /**
+     * Makes the statistics of the resource locks available, call after init.
+     * The page is plain text and served to anyone the store authenticates,
+     * though it lists every locked path with its owner: restrict access to
+     * it in the container, or prefer the MBean. A resource of the store at
+     * the path hides the page.
+     *
+     * @param mbeanName
+     *      JMX name to register a ResourceLocksMonitorMBean with, null for no
+     *      MBean
+     * @param path
+     *      path (relative to the servlet) where GET shows the statistics,
+     *      null for no page
+     */
+    protected void enableLockMonitor(String mbeanName, String path)
+            throws ServletException {
+        _lockMonitor = new ResourceLocksMonitor(_resLocks);
+        _lockMonitorPath = path;
+        if (mbeanName != null) {
+            try {
+                ObjectName name = new ObjectName(mbeanName);
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        _lockMonitor, name);
+                _lockMonitorName = name;
+            } catch (JMException e) {
+                throw new ServletException("can't register lock monitor "
+                        + mbeanName, e);
+            }
+        }
+    }
+
+    /**
+     * Sends GET responses of large resources on threads of their own, call
+     * after init. The servlet has to be declared async-supported and the
+     * store has to implement IAtomicContentStore and IRandomAccessStore,
+     * otherwise all responses are sent on the request thread.
+     *
+     * @param threads
+     *      number of threads sending content
+     * @param minLength
+     *      resources shorter than this are sent on the request thread
+     */
+    protected void enableAsync(int threads, long minLength) {
+        _asyncSender = new AsyncSender(threads, minLength);
+        IMethodExecutor get = _methodMap.get("GET");
+        if (get instanceof DoGet) {
+            ((DoGet) get).setAsyncSender(_asyncSender);
+        }
+    }
+
+    /**
+     * Lets PUT compute a digest of the uploaded content while it is written,
+     * call after init. Stores implementing IDigestStore use it as the ETag.
+     *
+     * @param algorithm
+     *      a MessageDigest algorithm, e.g. "SHA-256"
+     */
+    protected void enableContentDigest(String algorithm) {
+        IMethodExecutor put = _methodMap.get("PUT");
+        if (put instanceof DoPut) {
+            ((DoPut) put).setDigestAlgorithm(algorithm);
+        }
+    }
+
+    /**
+     * Bounds the PUT requests writing at the same time and the upload rate
+     * of each user, call after init.
+     *
+     * @param maxUploads
+     *      uploads writing at the same time, 0 for no limit
+     * @param maxQueued
+     *      uploads waiting for a free slot, more get 503
+     * @param queueTimeout
+     *      ms an upload waits for a free slot before it gets 503
+     * @param bytesPerSecond
+     *      upload rate of each principal, 0 for no limit
+     */
+    protected void enableUploadScheduler(int maxUploads, int maxQueued,
+            long queueTimeout, long bytesPerSecond) {
+        IMethodExecutor put = _methodMap.get("PUT");
+        if (put instanceof DoPut) {
+            ((DoPut) put).setUploadScheduler(new UploadScheduler(maxUploads,
+                    maxQueued, queueTimeout, bytesPerSecond));
+        }
+    }
+
     @Override
     public void destroy() {
+        if (_asyncSender != null) {
+            _asyncSender.destroy();
+            _asyncSender = null;
+        }
+        if (_lockMonitorName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(_lockMonitorName);
+            } catch (JMException e) {
+                LOG.warn("can't unregister lock monitor " + _lockMonitorName, e);
+            }
+            _lockMonitorName = null;
+        }
+        if(_resLocks != null)
+            _resLocks.destroy();
         if(_store != null)
             _store.destroy();
         super.destroy();
@@ -142,6 +233,17 @@ public class WebDavServletBean extends HttpServlet {
             _store.checkAuthentication(transaction);
             resp.setStatus(WebdavStatus.SC_OK);
 
+            if (isLockMonitorRequest(transaction, req)) {
+                resp.setContentType("text/plain");
+                resp.setHeader("Cache-Control", "no-cache");
+                PrintWriter writer = resp.getWriter();
+                _lockMonitor.print(writer);
+                writer.flush();
+                _store.commit(transaction);
+                needRollback = false;
+                return;
+            }
+
             try {
                 IMethodExecutor methodExecutor = _methodMap
                         .get(methodName);
@@ -199,6 +301,17 @@ public class WebDavServletBean extends HttpServlet {
 
     }
 
+    /**
+     * @return true for a GET of the lock statistics page, unless the store
+     *  has a resource there
+     */
+    private boolean isLockMonitorRequest(ITransaction transaction,
+            HttpServletRequest req) {
+        return _lockMonitorPath != null && "GET".equals(req.getMethod())
+                && _lockMonitorPath.equals(req.getPathInfo())
+                && _store.getStoredObject(transaction, _lockMonitorPath) == null;
+    }
+
     private void debugRequest(String methodName, HttpServletRequest req) {
         LOG.trace("-----------");
         LOG.trace("WebdavServlet\n request: methodName = " + methodName);
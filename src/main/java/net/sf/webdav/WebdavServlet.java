@@ -22,6 +22,10 @@ import java.lang.reflect.Constructor;
 import javax.servlet.ServletException;
 
 import net.sf.webdav.exceptions.WebdavException;
+import net.sf.webdav.locking.FileLockStore;
+import net.sf.webdav.locking.PersistentResourceLocks;
+import net.sf.webdav.locking.ResourceLocks;
+import net.sf.webdav.locking.SharedResourceLocks;
 
 /**
  * Servlet which provides support for WebDAV level 2.
@@ -36,6 +40,20 @@ public class WebdavServlet extends WebDavServletBean {
 
 	private static final String ROOTPATH_PARAMETER = "rootpath";
 
+	private static final int DEFAULT_CACHE_ENTRY_SIZE = 65536;
+
+	private static final int DEFAULT_ASYNC_MIN_LENGTH = 1048576;
+
+	private static final int DEFAULT_UPLOAD_QUEUE_LENGTH = 16;
+
+	private static final int DEFAULT_UPLOAD_QUEUE_TIMEOUT = 30000;
+
+	private String _resourceLocksClazzName;
+
+	private String _lockJournal;
+
+	private String _sharedLockFile;
+
 	@Override
 	public void init() throws ServletException {
 
@@ -50,6 +68,31 @@ public class WebdavServlet extends WebDavServletBean {
 
 		IWebdavStore webdavStore = constructStore(clazzName, root);
 
+		if (webdavStore instanceof LocalFileSystemStore
+				&& "1".equals(getInitParameter("syncOnWrite"))) {
+			((LocalFileSystemStore) webdavStore).setSyncOnWrite(true);
+		}
+		if (webdavStore instanceof LocalFileSystemStore
+				&& "1".equals(getInitParameter("precompressedSidecars"))) {
+			((LocalFileSystemStore) webdavStore).setPrecompressedSidecars(true);
+		}
+		if (webdavStore instanceof LocalFileSystemStore) {
+			// drop resumable uploads their clients left behind
+			int stagedUploadTimeout = getIntInitParameter("stagedUploadTimeout");
+			if (stagedUploadTimeout > 0) {
+				((LocalFileSystemStore) webdavStore)
+						.setStagedUploadTimeout(stagedUploadTimeout);
+			}
+		}
+
+		// keep small resources in memory
+		int contentCacheSize = getIntInitParameter("contentCacheSize");
+		if (contentCacheSize > 0) {
+			int maxEntrySize = getIntInitParameter("contentCacheMaxEntrySize");
+			webdavStore = CachingStore.wrap(webdavStore, contentCacheSize,
+					maxEntrySize > 0 ? maxEntrySize : DEFAULT_CACHE_ENTRY_SIZE);
+		}
+
 		boolean lazyFolderCreationOnPut = getInitParameter("lazyFolderCreationOnPut") != null
 				&& getInitParameter("lazyFolderCreationOnPut").equals("1");
 
@@ -58,11 +101,63 @@ public class WebdavServlet extends WebDavServletBean {
 
 		int noContentLengthHeader = getIntInitParameter("no-content-length-headers");
 
+		_resourceLocksClazzName = getInitParameter("ResourceLocksImplementation");
+		_lockJournal = getInitParameter("lockJournal");
+		_sharedLockFile = getInitParameter("sharedLockFile");
+
 		// Lock notifications
 		ILockingListener listener = constructLockingListener(getInitParameter("LockingListener"));
 
 		super.init(webdavStore, listener, dftIndexFile, insteadOf404,
 				noContentLengthHeader, lazyFolderCreationOnPut);
+
+		// remove expired locks in the background instead of on every unlock
+		int lockTimeoutSweepInterval = getIntInitParameter("lockTimeoutSweepInterval");
+		if (lockTimeoutSweepInterval > 0) {
+			_resLocks.startTimeoutSweeper(lockTimeoutSweepInterval);
+		}
+
+		// send large files without holding the request thread
+		int asyncThreads = getIntInitParameter("asyncThreads");
+		if (asyncThreads > 0) {
+			int asyncMinLength = getIntInitParameter("asyncMinLength");
+			enableAsync(asyncThreads, asyncMinLength >= 0 ? asyncMinLength
+					: DEFAULT_ASYNC_MIN_LENGTH);
+		}
+
+		// keep uploads from taking all the disk bandwidth
+		int maxUploads = getIntInitParameter("maxUploads");
+		int uploadRate = getIntInitParameter("uploadRate");
+		if (maxUploads > 0 || uploadRate > 0) {
+			int queueLength = getIntInitParameter("uploadQueueLength");
+			int queueTimeout = getIntInitParameter("uploadQueueTimeout");
+			enableUploadScheduler(Math.max(maxUploads, 0),
+					queueLength >= 0 ? queueLength : DEFAULT_UPLOAD_QUEUE_LENGTH,
+					queueTimeout >= 0 ? queueTimeout : DEFAULT_UPLOAD_QUEUE_TIMEOUT,
+					Math.max(uploadRate, 0));
+		}
+
+		// strong ETags from a digest of the uploaded content
+		String contentDigest = getInitParameter("contentDigest");
+		if (isSet(contentDigest)) {
+			try {
+				enableContentDigest(contentDigest.trim());
+			} catch (IllegalArgumentException e) {
+				throw new ServletException(e.getMessage(), e);
+			}
+		}
+
+		String lockMonitorMBeanName = getInitParameter("lockMonitorMBeanName");
+		String lockMonitorPath = getInitParameter("lockMonitorPath");
+		if (isSet(lockMonitorMBeanName) || isSet(lockMonitorPath)) {
+			enableLockMonitor(isSet(lockMonitorMBeanName) ? lockMonitorMBeanName
+					.trim() : null, isSet(lockMonitorPath) ? lockMonitorPath
+					.trim() : null);
+		}
+	}
+
+	private static boolean isSet(String value) {
+		return value != null && !value.trim().equals("");
 	}
 
 	private int getIntInitParameter(String key) {
@@ -89,6 +184,41 @@ public class WebdavServlet extends WebDavServletBean {
 		return webdavStore;
 	}
 
+	/**
+	 * Uses the class given in the "ResourceLocksImplementation" init
+	 * parameter, e.g. net.sf.webdav.locking.ConcurrentResourceLocks. The class
+	 * needs a constructor taking an ILockingListener.
+	 */
+	@Override
+	protected ResourceLocks createResourceLocks(
+			ILockingListener lockingListener) {
+		if (_sharedLockFile != null && !_sharedLockFile.trim().equals("")) {
+			// ms lookups may trust the local copy of the shared locks
+			int maxStaleness = getIntInitParameter("sharedLockMaxStaleness");
+			return new SharedResourceLocks(lockingListener, new FileLockStore(
+					new File(_sharedLockFile.trim())), Math.max(maxStaleness, 0));
+		}
+		if (_lockJournal != null && !_lockJournal.trim().equals("")) {
+			return new PersistentResourceLocks(lockingListener, new File(
+					_lockJournal.trim()));
+		}
+		String clazzName = _resourceLocksClazzName;
+		if (clazzName == null || clazzName.trim().equals("")) {
+			return super.createResourceLocks(lockingListener);
+		}
+		try {
+			Class<?> clazz = WebdavServlet.class.getClassLoader().loadClass(
+					clazzName.trim());
+
+			Constructor<?> ctor = clazz.getConstructor(ILockingListener.class);
+
+			return (ResourceLocks) ctor.newInstance(lockingListener);
+		} catch (Exception e) {
+			throw new RuntimeException(
+					"Could not instantiate resource locks", e);
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	protected ILockingListener constructLockingListener(String clazzName) {
 		ILockingListener listener = null;
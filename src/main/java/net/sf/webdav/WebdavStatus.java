@@ -47,6 +47,12 @@ public class WebdavStatus {
      */
     public static final int SC_NO_CONTENT = HttpServletResponse.SC_NO_CONTENT;
 
+    /**
+     * Status code (206) indicating that the server has fulfilled the partial
+     * GET request for the resource.
+     */
+    public static final int SC_PARTIAL_CONTENT = HttpServletResponse.SC_PARTIAL_CONTENT;
+
     /**
      * Status code (301) indicating that the resource has permanently moved to a
      * new location, and that future references should use a new URI with their
@@ -91,6 +97,12 @@ public class WebdavStatus {
      */
     public static final int SC_NOT_FOUND = HttpServletResponse.SC_NOT_FOUND;
 
+    /**
+     * Status code (416) indicating that none of the ranges requested with the
+     * Range header overlaps the resource.
+     */
+    public static final int SC_REQUESTED_RANGE_NOT_SATISFIABLE = HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+
     /**
      * Status code (500) indicating an error inside the HTTP service which
      * prevented it from fulfilling the request.
@@ -208,6 +220,7 @@ public class WebdavStatus {
         addStatusCodeMap(SC_CREATED, "Created");
         addStatusCodeMap(SC_ACCEPTED, "Accepted");
         addStatusCodeMap(SC_NO_CONTENT, "No Content");
+        addStatusCodeMap(SC_PARTIAL_CONTENT, "Partial Content");
         addStatusCodeMap(SC_MOVED_PERMANENTLY, "Moved Permanently");
         addStatusCodeMap(SC_MOVED_TEMPORARILY, "Moved Temporarily");
         addStatusCodeMap(SC_NOT_MODIFIED, "Not Modified");
@@ -215,6 +228,8 @@ public class WebdavStatus {
         addStatusCodeMap(SC_UNAUTHORIZED, "Unauthorized");
         addStatusCodeMap(SC_FORBIDDEN, "Forbidden");
         addStatusCodeMap(SC_NOT_FOUND, "Not Found");
+        addStatusCodeMap(SC_REQUESTED_RANGE_NOT_SATISFIABLE,
+                "Requested Range Not Satisfiable");
         addStatusCodeMap(SC_INTERNAL_SERVER_ERROR, "Internal Server Error");
         addStatusCodeMap(SC_NOT_IMPLEMENTED, "Not Implemented");
         addStatusCodeMap(SC_BAD_GATEWAY, "Bad Gateway");
@@ -0,0 +1,241 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.locking;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.sf.webdav.ILockingListener;
+import net.sf.webdav.ITransaction;
+import net.sf.webdav.exceptions.LockFailedException;
+
+/**
+ * ResourceLocks which does not serialize all requests through one monitor.
+ * <p/>
+ * The lock tree is striped by the first segment of the path: everything below
+ * "/a" is guarded by the stripe of "a", so requests on different top level
+ * collections do not block each other. Operations on the root itself acquire
+ * all stripes (in ascending order, so they cannot deadlock with each other).
+ * The root LockedObject is the only node shared between stripes; its children
+ * are kept in a concurrent map.
+ * <p/>
+ * Real and temporary locks live in separate trees and therefore use separate
+ * stripes.
+ */
+public class ConcurrentResourceLocks extends ResourceLocks {
+
+    private static org.slf4j.Logger LOG = org.slf4j.LoggerFactory
+            .getLogger(ConcurrentResourceLocks.class);
+
+    /**
+     * default number of stripes, must be a power of two
+     */
+    public static final int DEFAULT_STRIPES = 64;
+
+    /**
+     * marks an operation that needs all stripes
+     */
+    private static final int ALL_STRIPES = -1;
+
+    private final ReentrantLock[] _stripes;
+
+    private final ReentrantLock[] _tempStripes;
+
+    public ConcurrentResourceLocks(ILockingListener lockingListener,
+            int stripes) {
+        super(lockingListener);
+        if (stripes < 1 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException(
+                    "number of stripes must be a power of two: " + stripes);
+        }
+        _stripes = newStripes(stripes);
+        _tempStripes = newStripes(stripes);
+    }
+
+    public ConcurrentResourceLocks(ILockingListener lockingListener) {
+        this(lockingListener, DEFAULT_STRIPES);
+    }
+
+    public ConcurrentResourceLocks() {
+        this(null);
+    }
+
+    @Override
+    public boolean lock(ITransaction transaction, String path, String owner,
+            boolean exclusive, int depth, int timeout, boolean temporary)
+            throws LockFailedException {
+        long start = System.nanoTime();
+        ReentrantLock[] stripes = temporary ? _tempStripes : _stripes;
+        int stripe = acquire(stripes, path);
+        boolean locked;
+        try {
+            locked = lockLockedObject(transaction, path, owner, exclusive,
+                    depth, timeout, temporary);
+        } finally {
+            release(stripes, stripe);
+        }
+        _metrics.lockRequested(temporary, locked, System.nanoTime() - start);
+        return locked;
+    }
+
+    @Override
+    public boolean unlock(ITransaction transaction, String id, String owner) {
+        LockedObject byId = _locksByID.get(id);
+        if (byId != null) {
+            int stripe = acquire(_stripes, byId.getPath());
+            try {
+                if (!unlockLockedObject(transaction, id, owner)) {
+                    return false;
+                }
+            } finally {
+                release(_stripes, stripe);
+            }
+
+            if (_cleanupCounter > _cleanupLimit) {
+                cleanup(transaction, !_temporary);
+            }
+        }
+        if (!isTimeoutSweeperRunning()) {
+            // not holding a stripe here, checkTimeouts acquires them one by one
+            checkTimeouts(transaction, !_temporary);
+        }
+
+        return true;
+    }
+
+    @Override
+    public void unlockTemporaryLockedObjects(ITransaction transaction,
+            String path, String owner) {
+        int stripe = acquire(_tempStripes, path);
+        try {
+            unlockTempLockedObject(path, owner);
+        } finally {
+            release(_tempStripes, stripe);
+        }
+
+        if (_cleanupCounter > _cleanupLimit) {
+            cleanup(transaction, _temporary);
+        }
+
+        if (!isTimeoutSweeperRunning()) {
+            checkTimeouts(transaction, _temporary);
+        }
+    }
+
+    @Override
+    public void checkTimeouts(ITransaction transaction, boolean temporary) {
+        DelayQueue<LockTimeout> timeouts = temporary ? _tempTimeouts
+                : _timeouts;
+        ReentrantLock[] stripes = temporary ? _tempStripes : _stripes;
+
+        LockTimeout timeout;
+        while ((timeout = timeouts.poll()) != null) {
+            LockedObject lo = timeout._lockedObject;
+            // the root is never removed, don't grab all stripes for nothing
+            if (lo._parent == null) {
+                continue;
+            }
+            int stripe = acquire(stripes, lo.getPath());
+            try {
+                expireLockedObject(transaction, lo);
+            } finally {
+                release(stripes, stripe);
+            }
+        }
+    }
+
+    /**
+     * deletes unused LockedObjects of the whole tree while holding all
+     * stripes
+     */
+    private void cleanup(ITransaction transaction, boolean temporary) {
+        ReentrantLock[] stripes = temporary ? _tempStripes : _stripes;
+        acquire(stripes, ALL_STRIPES);
+        try {
+            // another thread may have cleaned up while we were waiting
+            if (_cleanupCounter > _cleanupLimit) {
+                _cleanupCounter = 0;
+                LOG.trace("cleaning up " + (temporary ? "temporary" : "real")
+                        + " LockedObjects");
+                cleanLockedObjects(transaction, temporary ? _tempRoot : _root,
+                        temporary);
+            }
+        } finally {
+            release(stripes, ALL_STRIPES);
+        }
+    }
+
+    /**
+     * acquires the stripe(s) needed to modify the lock tree at path
+     *
+     * @return the acquired stripe, to be passed to release()
+     */
+    private int acquire(ReentrantLock[] stripes, String path) {
+        int stripe = stripeFor(path, stripes.length);
+        acquire(stripes, stripe);
+        return stripe;
+    }
+
+    private void acquire(ReentrantLock[] stripes, int stripe) {
+        if (stripe == ALL_STRIPES) {
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i].lock();
+            }
+        } else {
+            stripes[stripe].lock();
+        }
+    }
+
+    private void release(ReentrantLock[] stripes, int stripe) {
+        if (stripe == ALL_STRIPES) {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        } else {
+            stripes[stripe].unlock();
+        }
+    }
+
+    /**
+     * hashes the first segment of the path without creating a substring
+     *
+     * @return the index of the stripe or ALL_STRIPES for the root
+     */
+    static int stripeFor(String path, int stripes) {
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = path.indexOf('/', start);
+        if (end == -1) {
+            end = path.length();
+        }
+        if (end == start) {
+            return ALL_STRIPES;
+        }
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + path.charAt(i);
+        }
+        h ^= (h >>> 16);
+        return h & (stripes - 1);
+    }
+
+    private static ReentrantLock[] newStripes(int stripes) {
+        ReentrantLock[] locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.locking;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.sf.webdav.exceptions.WebdavException;
+
+/**
+ * ILockStore keeping the locks in a file, which can be shared by servlets in
+ * the same or in different JVMs on one machine (or on a file system with
+ * working file locks). Meant for testing SharedResourceLocks without a
+ * cluster; a real cluster would rather implement ILockStore on top of its
+ * coordination service.
+ * <p/>
+ * The first line of the file holds the version, every other line one
+ * LockRecord. The file is replaced by renaming a temporary file, so readers
+ * don't need to lock it. Updates are serialized by a lock on "file.lock".
+ */
+public class FileLockStore implements ILockStore {
+
+    private static org.slf4j.Logger LOG = org.slf4j.LoggerFactory
+            .getLogger(FileLockStore.class);
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final String VERSION = "V";
+
+    /**
+     * ms below which file systems may not tell two modifications apart. the
+     * version of a file modified more recently is always read
+     */
+    private static final long MTIME_RESOLUTION = 2000;
+
+    /**
+     * a FileLock is held by the whole JVM, so servlets of the same JVM also
+     * need a lock of their own. by canonical path of the file
+     */
+    private static final ConcurrentMap<String, ReentrantLock> JVM_LOCKS = new ConcurrentHashMap<String, ReentrantLock>();
+
+    private final File _file;
+
+    private final File _lockFile;
+
+    private final ReentrantLock _jvmLock;
+
+    /**
+     * the version read at the last getVersion(), null if none was read
+     */
+    private volatile VersionStamp _stamp = null;
+
+    private RandomAccessFile _lockAccess = null;
+
+    private FileLock _fileLock = null;
+
+    public FileLockStore(File file) {
+        _file = file;
+        _lockFile = new File(file.getPath() + ".lock");
+        String key;
+        try {
+            key = file.getCanonicalPath();
+        } catch (IOException e) {
+            key = file.getAbsolutePath();
+        }
+        ReentrantLock jvmLock = new ReentrantLock();
+        ReentrantLock existing = JVM_LOCKS.putIfAbsent(key, jvmLock);
+        _jvmLock = existing != null ? existing : jvmLock;
+    }
+
+    /**
+     * only reads the file if its modification time or length changed since
+     * the last read, or if it was modified too recently to tell
+     */
+    public long getVersion() throws WebdavException {
+        long modified = _file.lastModified();
+        long length = _file.length();
+        VersionStamp stamp = _stamp;
+        if (stamp != null && stamp._modified == modified
+                && stamp._length == length
+                && System.currentTimeMillis() - modified > MTIME_RESOLUTION) {
+            return stamp._version;
+        }
+        try {
+            BufferedReader reader = open();
+            if (reader == null) {
+                _stamp = null;
+                return 0;
+            }
+            try {
+                long version = parseVersion(reader.readLine());
+                _stamp = new VersionStamp(modified, length, version);
+                return version;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new WebdavException(e);
+        }
+    }
+
+    public List<LockRecord> read() throws WebdavException {
+        List<LockRecord> records = new ArrayList<LockRecord>();
+        try {
+            BufferedReader reader = open();
+            if (reader == null) {
+                return records;
+            }
+            try {
+                // skip the version
+                reader.readLine();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() == 0) {
+                        continue;
+                    }
+                    try {
+                        String[] fields = LockJournal.parseRecord(line);
+                        records.add(new LockRecord(fields[0], fields[1],
+                                fields[2], "1".equals(fields[3]), Integer
+                                        .parseInt(fields[4]), Long
+                                        .parseLong(fields[5])));
+                    } catch (RuntimeException e) {
+                        LOG.warn("Skipping unreadable lock record: " + line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new WebdavException(e);
+        }
+        return records;
+    }
+
+    public void beginUpdate() throws WebdavException {
+        _jvmLock.lock();
+        try {
+            _lockAccess = new RandomAccessFile(_lockFile, "rw");
+            _fileLock = _lockAccess.getChannel().lock();
+        } catch (IOException e) {
+            releaseFileLock();
+            _jvmLock.unlock();
+            throw new WebdavException(e);
+        }
+    }
+
+    public long write(List<LockRecord> records) throws WebdavException {
+        // not just +1, so a deleted file doesn't bring back old versions
+        long version = Math.max(getVersion() + 1, System.currentTimeMillis());
+        File tmp = new File(_file.getPath() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(
+                        out, ENCODING));
+                LockJournal.writeRecord(writer, new String[] { VERSION,
+                        String.valueOf(version) });
+                for (LockRecord record : records) {
+                    LockJournal.writeRecord(writer, new String[] {
+                            record.getID(), record.getPath(),
+                            record.getOwner(),
+                            record.isExclusive() ? "1" : "0",
+                            String.valueOf(record.getDepth()),
+                            String.valueOf(record.getExpiresAt()) });
+                }
+                writer.flush();
+                out.getChannel().force(false);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(_file)) {
+                // not atomic, but some platforms can't rename onto an
+                // existing file
+                if (!_file.delete() || !tmp.renameTo(_file)) {
+                    throw new IOException("could not replace lock file "
+                            + _file);
+                }
+            }
+        } catch (IOException e) {
+            throw new WebdavException(e);
+        }
+        return version;
+    }
+
+    public void endUpdate() {
+        releaseFileLock();
+        _jvmLock.unlock();
+    }
+
+    public void close() {
+    }
+
+    /**
+     * @return a reader of the lock file, or null if there are no locks yet
+     */
+    private BufferedReader open() throws IOException {
+        try {
+            return new BufferedReader(new InputStreamReader(
+                    new FileInputStream(_file), ENCODING));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    private long parseVersion(String line) throws IOException {
+        if (line == null) {
+            return 0;
+        }
+        String[] fields = LockJournal.parseRecord(line);
+        if (fields.length != 2 || !VERSION.equals(fields[0])) {
+            throw new IOException("no version in lock file " + _file);
+        }
+        return Long.parseLong(fields[1]);
+    }
+
+    private void releaseFileLock() {
+        try {
+            if (_fileLock != null) {
+                _fileLock.release();
+            }
+            if (_lockAccess != null) {
+                _lockAccess.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Releasing lock file causes Exception!\n" + e.toString());
+        } finally {
+            _fileLock = null;
+            _lockAccess = null;
+        }
+    }
+
+    private static class VersionStamp {
+
+        private final long _modified;
+
+        private final long _length;
+
+        private final long _version;
+
+        private VersionStamp(long modified, long length, long version) {
+            _modified = modified;
+            _length = length;
+            _version = version;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.locking;
+
+import java.util.List;
+
+import net.sf.webdav.exceptions.WebdavException;
+
+/**
+ * Storage of the real locks which is shared by several servlets, e.g. the
+ * nodes of a cluster. Used by SharedResourceLocks, which keeps a copy of the
+ * stored locks and only reads them again when the version has changed.
+ * <p/>
+ * Temporary locks are never stored, they only guard the requests of one
+ * servlet.
+ */
+public interface ILockStore {
+
+    /**
+     * Called before every lookup of a lock, so it should be cheap.
+     *
+     * @return version of the stored locks. changes with every write()
+     * @throws WebdavException
+     *      if the store can't be reached
+     */
+    long getVersion() throws WebdavException;
+
+    /**
+     * @return the stored locks, may include expired ones
+     * @throws WebdavException
+     *      if the store can't be reached
+     */
+    List<LockRecord> read() throws WebdavException;
+
+    /**
+     * Blocks until no other servlet is changing the locks, and keeps them
+     * from doing so until endUpdate() is called.
+     *
+     * @throws WebdavException
+     *      if the store can't be reached
+     */
+    void beginUpdate() throws WebdavException;
+
+    /**
+     * Replaces the stored locks. Only called between beginUpdate() and
+     * endUpdate().
+     *
+     * @param records
+     *      all locks
+     * @return the new version
+     * @throws WebdavException
+     *      if the locks could not be written
+     */
+    long write(List<LockRecord> records) throws WebdavException;
+
+    /**
+     * Lets other servlets change the locks again. Called once for every
+     * beginUpdate(), even if write() failed.
+     */
+    void endUpdate();
+
+    /**
+     * Releases the resources of the store.
+     */
+    void close();
+}
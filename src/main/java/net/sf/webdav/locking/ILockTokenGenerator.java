@@ -0,0 +1,30 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.locking;
+
+/**
+ * Creates the ids of real locks, which are sent to the clients as
+ * "opaquelocktoken:id". Tokens must be unique and must not be guessable,
+ * since knowing the token is all it takes to modify a locked resource.
+ * Called concurrently.
+ */
+public interface ILockTokenGenerator {
+
+    /**
+     * @return a new lock id, a UUID for opaquelocktoken URIs (RFC 4918,
+     *  appendix C)
+     */
+    String generateToken();
+}
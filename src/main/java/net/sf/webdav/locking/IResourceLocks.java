@@ -27,6 +27,23 @@ public interface IResourceLocks {
             boolean exclusive, int depth, int timeout, boolean temporary)
             throws LockFailedException;
 
+    /**
+     * Checks if a shared temporary lock could be placed on the resource at
+     * "path", without placing it. Used by read-only methods instead of
+     * lock() and unlockTemporaryLockedObjects(), so reads don't modify the
+     * lock tree.
+     * 
+     * @param transaction
+     * @param path
+     *      what resource to check
+     * @param depth
+     *      depth
+     * @return true if no exclusive temporary lock on the resource, its parents
+     *  or its children up to depth prevents reading
+     */
+    boolean checkTemporaryLocks(ITransaction transaction, String path,
+            int depth);
+
     /**
      * Unlocks all resources at "path" (and all subfolders if existing)<p/> that
      * have the same owner.
@@ -0,0 +1,246 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.locking;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * append-only file of lock events, one record per line. the fields of a
+ * record are url encoded and separated by blanks.
+ * <p/>
+ * append() only writes the record, sync() makes it durable. a thread calling
+ * sync() while another one forces the file to disk waits for it and usually
+ * finds its record already written by then, so concurrent records share one
+ * fsync.
+ */
+class LockJournal {
+
+    private static org.slf4j.Logger LOG = org.slf4j.LoggerFactory
+            .getLogger(LockJournal.class);
+
+    private static final String ENCODING = "UTF-8";
+
+    private final File _file;
+
+    private FileOutputStream _out;
+
+    private Writer _writer;
+
+    /**
+     * sequence number of the last appended record
+     */
+    private long _written = 0;
+
+    /**
+     * sequence number of the last record forced to disk, guarded by _syncLock
+     */
+    private long _synced = 0;
+
+    /**
+     * records appended since the journal was last rewritten
+     */
+    private int _records = 0;
+
+    private final Object _syncLock = new Object();
+
+    LockJournal(File file) {
+        _file = file;
+    }
+
+    /**
+     * reads all complete records. lines which can't be decoded, e.g. a last
+     * line torn by a crash, are skipped
+     *
+     * @return the records in the order they were written
+     */
+    List<String[]> read() throws IOException {
+        List<String[]> records = new ArrayList<String[]>();
+        if (!_file.exists()) {
+            return records;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(_file), ENCODING));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                try {
+                    records.add(parseRecord(line));
+                } catch (IllegalArgumentException e) {
+                    LOG.warn("Skipping unreadable lock journal record: "
+                            + line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return records;
+    }
+
+    /**
+     * writes the record, without forcing it to disk
+     *
+     * @return the sequence number to pass to sync()
+     */
+    synchronized long append(String... fields) throws IOException {
+        if (_writer == null) {
+            open();
+        }
+        writeRecord(_writer, fields);
+        _records++;
+        return ++_written;
+    }
+
+    /**
+     * forces the journal to disk, at least up to the given record
+     *
+     * @param seq
+     *      sequence number returned by append()
+     */
+    void sync(long seq) throws IOException {
+        synchronized (_syncLock) {
+            if (_synced >= seq) {
+                // someone else synced our record while we were waiting
+                return;
+            }
+            long target;
+            FileOutputStream out;
+            synchronized (this) {
+                _writer.flush();
+                target = _written;
+                out = _out;
+            }
+            out.getChannel().force(false);
+            _synced = target;
+        }
+    }
+
+    /**
+     * @return number of records appended since the last rewrite()
+     */
+    synchronized int getRecordCount() {
+        return _records;
+    }
+
+    /**
+     * replaces the journal with the given records. they are written to a
+     * temporary file which is renamed to the journal, so a crash leaves either
+     * the old or the new journal
+     *
+     * @param records
+     *      the records describing the current state
+     */
+    void rewrite(List<String[]> records) throws IOException {
+        synchronized (_syncLock) {
+            synchronized (this) {
+                File tmp = new File(_file.getPath() + ".tmp");
+                FileOutputStream tmpOut = new FileOutputStream(tmp);
+                try {
+                    Writer tmpWriter = new BufferedWriter(new OutputStreamWriter(
+                            tmpOut, ENCODING));
+                    for (String[] fields : records) {
+                        writeRecord(tmpWriter, fields);
+                    }
+                    tmpWriter.flush();
+                    tmpOut.getChannel().force(false);
+                } finally {
+                    tmpOut.close();
+                }
+
+                closeQuietly();
+                if (!tmp.renameTo(_file)) {
+                    // not atomic, but some platforms can't rename onto an
+                    // existing file
+                    if (!_file.delete() || !tmp.renameTo(_file)) {
+                        throw new IOException("could not replace lock journal "
+                                + _file);
+                    }
+                }
+                open();
+                _records = 0;
+                // everything appended so far is in the rewritten journal
+                _synced = _written;
+            }
+        }
+    }
+
+    synchronized void close() {
+        closeQuietly();
+    }
+
+    private void open() throws IOException {
+        _out = new FileOutputStream(_file, true);
+        _writer = new BufferedWriter(new OutputStreamWriter(_out, ENCODING));
+    }
+
+    private void closeQuietly() {
+        if (_writer != null) {
+            try {
+                _writer.close();
+            } catch (IOException e) {
+                LOG.warn("Closing lock journal causes Exception!\n"
+                        + e.toString());
+            }
+            _writer = null;
+            _out = null;
+        }
+    }
+
+    /**
+     * @param line
+     *      one line of the journal, without the line break
+     * @return the decoded fields
+     * @throws IllegalArgumentException
+     *      if the line is not a valid record
+     */
+    static String[] parseRecord(String line) throws IOException {
+        String[] fields = line.split(" ", -1);
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = URLDecoder.decode(fields[i], ENCODING);
+        }
+        return fields;
+    }
+
+    static void writeRecord(Writer writer, String[] fields)
+            throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(' ');
+            }
+            writer.write(encode(fields[i]));
+        }
+        writer.write('\n');
+    }
+
+    private static String encode(String field)
+            throws UnsupportedEncodingException {
+        return URLEncoder.encode(field == null ? "" : field, ENCODING);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.locking;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * counters of a ResourceLocks: granted and refused locks, expired locks and
+ * how long lock() took, including the wait for the monitor (or stripe).
+ * updated without locking, so the values read together may be off by the
+ * requests running at that moment
+ */
+public class LockMetrics {
+
+    /**
+     * the histogram bucket i counts the durations below 2^i microseconds,
+     * the last one everything longer
+     */
+    public static final int HISTOGRAM_BUCKETS = 24;
+
+    private final AtomicLong _granted = new AtomicLong();
+
+    private final AtomicLong _tempGranted = new AtomicLong();
+
+    private final AtomicLong _conflicts = new AtomicLong();
+
+    private final AtomicLong _tempConflicts = new AtomicLong();
+
+    private final AtomicLong _expired = new AtomicLong();
+
+    private final AtomicLong _tempExpired = new AtomicLong();
+
+    private final AtomicLong _waitNanos = new AtomicLong();
+
+    private final AtomicLong _tempWaitNanos = new AtomicLong();
+
+    private final AtomicLongArray _waitHistogram = new AtomicLongArray(
+            HISTOGRAM_BUCKETS);
+
+    private final AtomicLongArray _tempWaitHistogram = new AtomicLongArray(
+            HISTOGRAM_BUCKETS);
+
+    /**
+     * records a call of lock()
+     *
+     * @param temporary
+     *      if a temporary lock was requested
+     * @param granted
+     *      if the lock was placed
+     * @param nanos
+     *      how long the call took
+     */
+    public void lockRequested(boolean temporary, boolean granted, long nanos) {
+        if (granted) {
+            (temporary ? _tempGranted : _granted).incrementAndGet();
+        } else {
+            (temporary ? _tempConflicts : _conflicts).incrementAndGet();
+        }
+        (temporary ? _tempWaitNanos : _waitNanos).addAndGet(nanos);
+        (temporary ? _tempWaitHistogram : _waitHistogram)
+                .incrementAndGet(bucket(nanos));
+    }
+
+    /**
+     * records a lock which still had owners when it timed out. for
+     * temporary locks that means a request didn't release its lock
+     */
+    public void lockExpired(boolean temporary) {
+        (temporary ? _tempExpired : _expired).incrementAndGet();
+    }
+
+    public long getGrantedCount(boolean temporary) {
+        return (temporary ? _tempGranted : _granted).get();
+    }
+
+    public long getConflictCount(boolean temporary) {
+        return (temporary ? _tempConflicts : _conflicts).get();
+    }
+
+    public long getExpiredCount(boolean temporary) {
+        return (temporary ? _tempExpired : _expired).get();
+    }
+
+    /**
+     * @return average duration of lock() in microseconds
+     */
+    public long getAverageWaitMicros(boolean temporary) {
+        long count = getGrantedCount(temporary) + getConflictCount(temporary);
+        if (count == 0) {
+            return 0;
+        }
+        return (temporary ? _tempWaitNanos : _waitNanos).get() / count / 1000;
+    }
+
+    /**
+     * @return the number of lock() calls per bucket, see HISTOGRAM_BUCKETS
+     */
+    public long[] getWaitHistogram(boolean temporary) {
+        AtomicLongArray histogram = temporary ? _tempWaitHistogram
+                : _waitHistogram;
+        long[] counts = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    private static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.locking;
+
+/**
+ * one owner of a real lock, as it is stored outside of the lock tree. a shared
+ * lock with several owners is described by several records with the same id
+ */
+public class LockRecord {
+
+    private final String _id;
+
+    private final String _path;
+
+    private final String _owner;
+
+    private final boolean _exclusive;
+
+    private final int _depth;
+
+    private final long _expiresAt;
+
+    /**
+     * @param id
+     *      lock token of the lock
+     * @param path
+     *      locked resource
+     * @param owner
+     *      owner of the lock
+     * @param exclusive
+     *      if the lock is exclusive (or shared)
+     * @param depth
+     *      depth of the lock
+     * @param expiresAt
+     *      when the lock times out (ms)
+     */
+    public LockRecord(String id, String path, String owner, boolean exclusive,
+            int depth, long expiresAt) {
+        _id = id;
+        _path = path;
+        _owner = owner;
+        _exclusive = exclusive;
+        _depth = depth;
+        _expiresAt = expiresAt;
+    }
+
+    public String getID() {
+        return _id;
+    }
+
+    public String getPath() {
+        return _path;
+    }
+
+    public String getOwner() {
+        return _owner;
+    }
+
+    public boolean isExclusive() {
+        return _exclusive;
+    }
+
+    public int getDepth() {
+        return _depth;
+    }
+
+    public long getExpiresAt() {
+        return _expiresAt;
+    }
+
+    @Override
+    public String toString() {
+        return _path + " " + _id + " " + _owner;
+    }
+}
@@ -1,6 +1,11 @@
 package net.sf.webdav.locking;
 
-import java.util.UUID;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import net.sf.webdav.ILockingListener;
 import net.sf.webdav.ITransaction;
@@ -20,6 +25,11 @@ public class LockedObject {
 
     private String _id;
 
+    /**
+     * weather this is a temporary lock (for method locks) or a real one
+     */
+    final boolean _temporary;
+
     /**
      * Describing the depth of a locked collection. If the locked resource is
      * not a collection, depth is 0 / doesn't matter.
@@ -32,16 +42,16 @@ public class LockedObject {
     protected volatile long _expiresAt;
 
     /**
-     * owner of the lock. shared locks can have multiple owners. is null if no
-     * owner is present
+     * owners of the lock. shared locks can have multiple owners. is null until
+     * the first owner is added, use hasOwner() to check for owners
      */
-    // protected String[] _owner = null;
-    protected String[] _owner = null;
+    protected volatile Set<String> _owner = null;
 
     /**
-     * children of that lock
+     * children of that lock by their path. is null until the first child is
+     * added, use hasChildren() to check for children
      */
-    protected LockedObject[] _children = null;
+    protected volatile ConcurrentMap<String, LockedObject> _children = null;
 
     protected LockedObject _parent = null;
 
@@ -56,6 +66,40 @@ public class LockedObject {
      */
     protected String _type = null;
 
+    /**
+     * depth of a depth-infinity lock, see AbstractMethod.INFINITY
+     */
+    static final int DEPTH_INFINITY = 3;
+
+    private static final int NOT_LOCKED = 0;
+
+    private static final int SHARED = 1;
+
+    private static final int EXCLUSIVE = 2;
+
+    private static final AtomicIntegerFieldUpdater<LockedObject> EXCLUSIVE_BELOW = AtomicIntegerFieldUpdater
+            .newUpdater(LockedObject.class, "_exclusiveBelow");
+
+    private static final AtomicIntegerFieldUpdater<LockedObject> SHARED_BELOW = AtomicIntegerFieldUpdater
+            .newUpdater(LockedObject.class, "_sharedBelow");
+
+    /**
+     * how this lock is counted by its parents: NOT_LOCKED, SHARED or
+     * EXCLUSIVE. changed under the lock guarding this LockedObject
+     */
+    private int _countedAs = NOT_LOCKED;
+
+    /**
+     * number of exclusive locks in the subtree below this lock. atomic, the
+     * root is shared between the stripes of a ConcurrentResourceLocks
+     */
+    private volatile int _exclusiveBelow = 0;
+
+    /**
+     * number of shared locks in the subtree below this lock
+     */
+    private volatile int _sharedBelow = 0;
+
     /**
      * @param path
      *      the path to the locked object
@@ -64,16 +108,17 @@ public class LockedObject {
      */
     public LockedObject(ResourceLocks resLocks, String path, boolean temporary, ILockingListener lockingListener) {
         _path = path;
-        _id = UUID.randomUUID().toString();
         _resourceLocks = resLocks;
         _lockingListener = lockingListener;
+        _temporary = temporary;
 
         if (!temporary) {
+            _id = _resourceLocks.generateLockToken();
             _resourceLocks._locks.put(path, this);
             _resourceLocks._locksByID.put(_id, this);
         } else {
+            // the ids of temporary locks are never sent to clients
             _resourceLocks._tempLocks.put(path, this);
-            _resourceLocks._tempLocksByID.put(_id, this);
         }
         _resourceLocks._cleanupCounter++;
     }
@@ -86,28 +131,21 @@ public class LockedObject {
      * @return true if the owner was added, false otherwise
      */
     public boolean addLockedObjectOwner(String owner) {
-
-        if (_owner == null) {
-            _owner = new String[1];
-        } else {
-
-            int size = _owner.length;
-            String[] newLockObjectOwner = new String[size + 1];
-
-            // check if the owner is already here (that should actually not
-            // happen)
-            for (int i = 0; i < size; i++) {
-                if (_owner[i].equals(owner)) {
-                    return false;
+        Set<String> owners = _owner;
+        if (owners == null) {
+            synchronized (this) {
+                if (_owner == null) {
+                    _owner = Collections
+                            .newSetFromMap(new ConcurrentHashMap<String, Boolean>(
+                                    4));
                 }
+                owners = _owner;
             }
-
-            System.arraycopy(_owner, 0, newLockObjectOwner, 0, size);
-            _owner = newLockObjectOwner;
         }
-
-        _owner[_owner.length - 1] = owner;
-        return true;
+        // the owner should actually not be here already
+        boolean added = owners.add(owner);
+        updateSubtreeCounters();
+        return added;
     }
 
     /**
@@ -117,37 +155,32 @@ public class LockedObject {
      *      string that represents the owner
      */
     public void removeLockedObjectOwner(String owner) {
+        Set<String> owners = _owner;
+        if (owners != null) {
+            owners.remove(owner);
+            updateSubtreeCounters();
+        }
+    }
 
-        try {
-            if (_owner != null) {
-                int size = _owner.length;
-                for (int i = 0; i < size; i++) {
-                    // check every owner if it is the requested one
-                    if (_owner[i].equals(owner)) {
-                        // remove the owner
-                    	size -= 1;
-                        String[] newLockedObjectOwner = new String[size];
-                        for (int j = 0; j < size; j++) {
-                            if (j < i) {
-                                newLockedObjectOwner[j] = _owner[j];
-                            } else {
-                                newLockedObjectOwner[j] = _owner[j + 1];
-                            }
-                        }
-                        _owner = newLockedObjectOwner;
-
-                    }
-                }
-                if (_owner.length == 0) {
-                    _owner = null;
-                }
-            }
-        } catch (ArrayIndexOutOfBoundsException e) {
-            System.out.println("LockedObject.removeLockedObjectOwner()");
-            System.out.println(e.toString());
+    /**
+     * removes all owners, the LockedObject stays in the tree
+     */
+    void removeLockedObjectOwners() {
+        Set<String> owners = _owner;
+        if (owners != null) {
+            owners.clear();
+            updateSubtreeCounters();
         }
     }
 
+    /**
+     * @return true if the lock has at least one owner
+     */
+    boolean hasOwner() {
+        Set<String> owners = _owner;
+        return owners != null && !owners.isEmpty();
+    }
+
     /**
      * adds a new child lock to this lock
      * 
@@ -155,44 +188,46 @@ public class LockedObject {
      *      new child
      */
     public void addChild(LockedObject newChild) {
-        if (_children == null) {
-            _children = new LockedObject[0];
+        ConcurrentMap<String, LockedObject> children = _children;
+        if (children == null) {
+            // the root of the lock tree is shared between all stripes of a
+            // ConcurrentResourceLocks
+            synchronized (this) {
+                if (_children == null) {
+                    _children = new ConcurrentHashMap<String, LockedObject>(4);
+                }
+                children = _children;
+            }
         }
-        int size = _children.length;
-        LockedObject[] newChildren = new LockedObject[size + 1];
-        System.arraycopy(_children, 0, newChildren, 0, size);
-        newChildren[size] = newChild;
-        _children = newChildren;
+        children.put(newChild.getPath(), newChild);
     }
 
     /**
-     * deletes this Lock object. assumes that it has no children and no owners
-     * (does not check this itself)
+     * @return true if the lock has at least one child
+     */
+    boolean hasChildren() {
+        ConcurrentMap<String, LockedObject> children = _children;
+        return children != null && !children.isEmpty();
+    }
+
+    /**
+     * deletes this Lock object. assumes that it has no owners (does not check
+     * this itself). its children are deleted with it, so the counters of the
+     * parents don't keep their locks
      *
      * @param transaction
      */
     public void removeLockedObject(ITransaction transaction) {
         if (this != _resourceLocks._root && !this.getPath().equals("/")) {
 
-            int size = _parent._children.length;
-            for (int i = 0; i < size; i++) {
-                if (_parent._children[i].equals(this)) {
-                    LockedObject[] newChildren = new LockedObject[size - 1];
-                    for (int i2 = 0; i2 < (size - 1); i2++) {
-                        if (i2 < i) {
-                            newChildren[i2] = _parent._children[i2];
-                        } else {
-                            newChildren[i2] = _parent._children[i2 + 1];
-                        }
-                    }
-                    if (newChildren.length != 0) {
-                        _parent._children = newChildren;
-                    } else {
-                        _parent._children = null;
-                    }
-                    break;
+            ConcurrentMap<String, LockedObject> children = _children;
+            if (children != null) {
+                for (LockedObject child : children.values()) {
+                    child.removeLockedObject(transaction);
                 }
             }
+            countAs(NOT_LOCKED);
+            _parent._children.remove(getPath(), this);
 
             // removing from hashtable
             _resourceLocks._locksByID.remove(getID());
@@ -206,36 +241,27 @@ public class LockedObject {
     }
 
     /**
-     * deletes this Lock object. assumes that it has no children and no owners
-     * (does not check this itself)
+     * deletes this Lock object. assumes that it has no owners (does not check
+     * this itself). its children are deleted with it
      * 
      */
     public void removeTempLockedObject() {
         if (this != _resourceLocks._tempRoot) {
             // removing from tree
             if (_parent != null && _parent._children != null) {
-                int size = _parent._children.length;
-                for (int i = 0; i < size; i++) {
-                    if (_parent._children[i].equals(this)) {
-                        LockedObject[] newChildren = new LockedObject[size - 1];
-                        for (int i2 = 0; i2 < (size - 1); i2++) {
-                            if (i2 < i) {
-                                newChildren[i2] = _parent._children[i2];
-                            } else {
-                                newChildren[i2] = _parent._children[i2 + 1];
-                            }
-                        }
-                        if (newChildren.length != 0) {
-                            _parent._children = newChildren;
-                        } else {
-                            _parent._children = null;
-                        }
-                        break;
+                ConcurrentMap<String, LockedObject> children = _children;
+                if (children != null) {
+                    for (LockedObject child : children.values()) {
+                        child.removeTempLockedObject();
                     }
                 }
+                countAs(NOT_LOCKED);
+                _parent._children.remove(getPath(), this);
 
                 // removing from hashtable
-                _resourceLocks._tempLocksByID.remove(getID());
+                if (_id != null) {
+                    _resourceLocks._tempLocksByID.remove(_id);
+                }
                 _resourceLocks._tempLocks.remove(getPath());
 
                 // now the garbage collector has some work to do
@@ -267,11 +293,11 @@ public class LockedObject {
      *      wheather the new lock should be exclusive
      * @return true if no locks at the parent path are forbidding a new lock
      */
-    private boolean checkParents(boolean exclusive) {
+    boolean checkParents(boolean exclusive) {
         if (_path.equals("/")) {
             return true;
         } else {
-            if (_owner == null) {
+            if (!hasOwner()) {
                 // no owner, checking parents
                 return _parent != null && _parent.checkParents(exclusive);
             } else {
@@ -283,7 +309,8 @@ public class LockedObject {
     }
 
     /**
-     * helper of checkLocks(). looks if the children are locked
+     * helper of checkLocks(). looks if the children are locked. for a depth
+     * infinity lock only the counters of the subtree are looked at
      * 
      * @param exclusive
      *      wheather the new lock should be exclusive
@@ -292,35 +319,69 @@ public class LockedObject {
      *      depth
      */
     private boolean checkChildren(boolean exclusive, int depth) {
-        if (_children == null) {
-            // a file
+        if (hasOwner()) {
+            // there already is a owner
+            return !(_exclusive || exclusive);
+        }
+        if (depth == 0 || !hasChildren()) {
+            // depth == 0 -> we don't care for children
+            return true;
+        }
+        if (depth >= DEPTH_INFINITY) {
+            return exclusive ? _exclusiveBelow == 0 && _sharedBelow == 0
+                    : _exclusiveBelow == 0;
+        }
+        for (LockedObject child : _children.values()) {
+            if (!child.checkChildren(exclusive, depth - 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of exclusive locks in the subtree below this lock
+     */
+    int getExclusiveLocksBelow() {
+        return _exclusiveBelow;
+    }
+
+    /**
+     * @return number of shared locks in the subtree below this lock
+     */
+    int getSharedLocksBelow() {
+        return _sharedBelow;
+    }
 
-            return _owner == null || !(_exclusive || exclusive);
+    /**
+     * adjusts the counters of the parents after the owners changed
+     */
+    private void updateSubtreeCounters() {
+        if (!hasOwner()) {
+            countAs(NOT_LOCKED);
         } else {
-            // a folder
-
-            if (_owner == null) {
-                // no owner, checking children
-
-                if (depth != 0) {
-                    boolean canLock = true;
-                    int limit = _children.length;
-                    for (int i = 0; i < limit; i++) {
-                        if (!_children[i].checkChildren(exclusive, depth - 1)) {
-                            canLock = false;
-                        }
-                    }
-                    return canLock;
-                } else {
-                    // depth == 0 -> we don't care for children
-                    return true;
-                }
-            } else {
-                // there already is a owner
-                return !(_exclusive || exclusive);
-            }
+            countAs(_exclusive ? EXCLUSIVE : SHARED);
         }
+    }
 
+    private void countAs(int state) {
+        int previous = _countedAs;
+        if (previous == state) {
+            return;
+        }
+        _countedAs = state;
+        for (LockedObject parent = _parent; parent != null; parent = parent._parent) {
+            if (previous == EXCLUSIVE) {
+                EXCLUSIVE_BELOW.decrementAndGet(parent);
+            } else if (previous == SHARED) {
+                SHARED_BELOW.decrementAndGet(parent);
+            }
+            if (state == EXCLUSIVE) {
+                EXCLUSIVE_BELOW.incrementAndGet(parent);
+            } else if (state == SHARED) {
+                SHARED_BELOW.incrementAndGet(parent);
+            }
+        }
     }
 
     /**
@@ -330,6 +391,7 @@ public class LockedObject {
      */
     public void refreshTimeout(int timeout) {
         _expiresAt = System.currentTimeMillis() + (timeout * 1000);
+        _resourceLocks.timeoutRefreshed(this);
     }
 
     /**
@@ -357,19 +419,39 @@ public class LockedObject {
     /**
      * Gets the LockID (locktoken) for the LockedObject
      * 
-     * @return locktoken
+     * @return locktoken, null for a temporary lock
      */
     public String getID() {
         return _id;
     }
 
+    /**
+     * Replaces the LockID, used when locks are restored
+     * 
+     * @param id
+     *      locktoken
+     */
+    void setID(String id) {
+        Map<String, LockedObject> locksByID = _temporary ? _resourceLocks._tempLocksByID
+                : _resourceLocks._locksByID;
+        if (_id != null) {
+            locksByID.remove(_id);
+        }
+        _id = id;
+        locksByID.put(id, this);
+    }
+
     /**
      * Gets the owners for the LockedObject
      * 
      * @return owners
      */
     public String[] getOwner() {
-        return _owner;
+        Set<String> owners = _owner;
+        if (owners == null || owners.isEmpty()) {
+            return null;
+        }
+        return owners.toArray(new String[owners.size()]);
     }
 
     /**
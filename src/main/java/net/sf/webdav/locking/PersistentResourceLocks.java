@@ -0,0 +1,267 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.locking;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.webdav.ILockingListener;
+import net.sf.webdav.ITransaction;
+import net.sf.webdav.exceptions.LockFailedException;
+import net.sf.webdav.exceptions.WebdavException;
+
+/**
+ * ResourceLocks which keeps the real (webdav) locks across restarts. Every
+ * lock, refresh and unlock is appended to a journal file, which is replayed on
+ * startup. Expired locks are dropped while replaying. Temporary locks are not
+ * persisted.
+ * <p/>
+ * The journal is rewritten with the current locks on startup and whenever
+ * compactionThreshold records have been appended. lock() and unlock() return
+ * after their record is on disk; the fsync happens after leaving the monitor,
+ * so requests locking at the same time share one fsync.
+ */
+public class PersistentResourceLocks extends ResourceLocks {
+
+    private static org.slf4j.Logger LOG = org.slf4j.LoggerFactory
+            .getLogger(PersistentResourceLocks.class);
+
+    /**
+     * default number of records after which the journal is rewritten
+     */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 10000;
+
+    // record types: L id path owner exclusive depth expiresAt, R id expiresAt,
+    // U id owner
+    private static final String LOCK = "L";
+
+    private static final String REFRESH = "R";
+
+    private static final String UNLOCK = "U";
+
+    private final LockJournal _journal;
+
+    private final int _compactionThreshold;
+
+    /**
+     * last record appended by the current thread which is not yet on disk
+     */
+    private final ThreadLocal<Long> _pendingSync = new ThreadLocal<Long>();
+
+    public PersistentResourceLocks(ILockingListener lockingListener,
+            File journal, int compactionThreshold) {
+        super(lockingListener);
+        _journal = new LockJournal(journal);
+        _compactionThreshold = compactionThreshold;
+        try {
+            restore();
+        } catch (IOException e) {
+            throw new WebdavException("could not read lock journal "
+                    + journal, e);
+        }
+    }
+
+    public PersistentResourceLocks(ILockingListener lockingListener,
+            File journal) {
+        this(lockingListener, journal, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    @Override
+    public boolean lock(ITransaction transaction, String path, String owner,
+            boolean exclusive, int depth, int timeout, boolean temporary)
+            throws LockFailedException {
+        try {
+            return super.lock(transaction, path, owner, exclusive, depth,
+                    timeout, temporary);
+        } finally {
+            syncJournal();
+        }
+    }
+
+    @Override
+    public boolean unlock(ITransaction transaction, String id, String owner) {
+        try {
+            return super.unlock(transaction, id, owner);
+        } finally {
+            syncJournal();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        _journal.close();
+    }
+
+    @Override
+    protected boolean lockLockedObject(ITransaction transaction, String path,
+            String owner, boolean exclusive, int depth, int timeout,
+            boolean temporary) {
+        boolean locked = super.lockLockedObject(transaction, path, owner,
+                exclusive, depth, timeout, temporary);
+        if (locked && !temporary && !_restoring) {
+            LockedObject lo = _locks.get(path);
+            append(LOCK, lo.getID(), path, owner, exclusive ? "1" : "0",
+                    String.valueOf(depth), String.valueOf(lo._expiresAt));
+        }
+        return locked;
+    }
+
+    @Override
+    protected boolean unlockLockedObject(ITransaction transaction, String id,
+            String owner) {
+        boolean known = _locksByID.containsKey(id);
+        boolean unlocked = super.unlockLockedObject(transaction, id, owner);
+        if (known && unlocked) {
+            append(UNLOCK, id, owner);
+        }
+        return unlocked;
+    }
+
+    @Override
+    protected void timeoutRefreshed(LockedObject lo) {
+        super.timeoutRefreshed(lo);
+        if (!lo._temporary) {
+            // refreshes don't come through lock(), keep them in order with
+            // the compaction
+            synchronized (this) {
+                append(REFRESH, lo.getID(), String.valueOf(lo._expiresAt));
+            }
+            syncJournal();
+        }
+    }
+
+    /**
+     * appends the record and rewrites the journal if it has grown too much.
+     * called while holding the monitor
+     */
+    private void append(String... fields) {
+        try {
+            _pendingSync.set(_journal.append(fields));
+            if (_journal.getRecordCount() >= _compactionThreshold) {
+                _journal.rewrite(currentRecords());
+            }
+        } catch (IOException e) {
+            // the lock itself is in place, only a restart would lose it
+            LOG.error("Writing lock journal failed", e);
+        }
+    }
+
+    /**
+     * waits until the last record appended by this thread is on disk
+     */
+    private void syncJournal() {
+        Long seq = _pendingSync.get();
+        if (seq != null) {
+            _pendingSync.remove();
+            try {
+                _journal.sync(seq);
+            } catch (IOException e) {
+                LOG.error("Syncing lock journal failed", e);
+            }
+        }
+    }
+
+    /**
+     * @return the journal records describing the current locks
+     */
+    private List<String[]> currentRecords() {
+        List<String[]> records = new ArrayList<String[]>();
+        for (LockRecord record : getLockRecords()) {
+            records.add(new String[] { LOCK, record.getID(),
+                    record.getPath(), record.getOwner(),
+                    record.isExclusive() ? "1" : "0",
+                    String.valueOf(record.getDepth()),
+                    String.valueOf(record.getExpiresAt()) });
+        }
+        return records;
+    }
+
+    /**
+     * replays the journal and rewrites it with the locks still valid
+     */
+    private synchronized void restore() throws IOException {
+        Map<String, RestoredLock> restored = new LinkedHashMap<String, RestoredLock>();
+        for (String[] fields : _journal.read()) {
+            try {
+                String type = fields[0];
+                if (LOCK.equals(type)) {
+                    RestoredLock lock = restored.get(fields[1]);
+                    if (lock == null) {
+                        lock = new RestoredLock(fields[1], fields[2]);
+                        restored.put(lock._id, lock);
+                    }
+                    lock._owners.add(fields[3]);
+                    lock._exclusive = "1".equals(fields[4]);
+                    lock._depth = Integer.parseInt(fields[5]);
+                    lock._expiresAt = Long.parseLong(fields[6]);
+                } else if (REFRESH.equals(type)) {
+                    RestoredLock lock = restored.get(fields[1]);
+                    if (lock != null) {
+                        lock._expiresAt = Long.parseLong(fields[2]);
+                    }
+                } else if (UNLOCK.equals(type)) {
+                    RestoredLock lock = restored.get(fields[1]);
+                    if (lock != null) {
+                        lock._owners.remove(fields[2]);
+                        if (lock._owners.isEmpty()) {
+                            restored.remove(lock._id);
+                        }
+                    }
+                } else {
+                    LOG.warn("Skipping unknown lock journal record " + type);
+                }
+            } catch (RuntimeException e) {
+                // most likely the last record, torn by a crash
+                LOG.warn("Skipping incomplete lock journal record", e);
+            }
+        }
+
+        // restored locks are not journaled again, see lockLockedObject()
+        for (RestoredLock lock : restored.values()) {
+            for (String owner : lock._owners) {
+                restoreLock(new LockRecord(lock._id, lock._path, owner,
+                        lock._exclusive, lock._depth, lock._expiresAt));
+            }
+        }
+        _journal.rewrite(currentRecords());
+    }
+
+    private static class RestoredLock {
+
+        final String _id;
+
+        final String _path;
+
+        final Set<String> _owners = new LinkedHashSet<String>();
+
+        boolean _exclusive;
+
+        int _depth;
+
+        long _expiresAt;
+
+        RestoredLock(String id, String path) {
+            _id = id;
+            _path = path;
+        }
+    }
+}
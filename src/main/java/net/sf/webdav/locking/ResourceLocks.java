@@ -16,8 +16,17 @@
 
 package net.sf.webdav.locking;
 
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.sf.webdav.ILockingListener;
 import net.sf.webdav.ITransaction;
@@ -40,53 +49,100 @@ public class ResourceLocks implements IResourceLocks {
      * after creating this much LockedObjects, a cleanup deletes unused
      * LockedObjects
      */
-    private final int _cleanupLimit = 100000;
+    protected final int _cleanupLimit = 100000;
 
     protected int _cleanupCounter = 0;
 
     /**
      * keys: path value: LockedObject from that path
      */
-    protected Hashtable<String, LockedObject> _locks = new Hashtable<String, LockedObject>();
+    protected Map<String, LockedObject> _locks = new ConcurrentHashMap<String, LockedObject>();
 
     /**
      * keys: id value: LockedObject from that id
      */
-    protected Hashtable<String, LockedObject> _locksByID = new Hashtable<String, LockedObject>();
+    protected Map<String, LockedObject> _locksByID = new ConcurrentHashMap<String, LockedObject>();
 
     /**
      * keys: path value: Temporary LockedObject from that path
      */
-    protected Hashtable<String, LockedObject> _tempLocks = new Hashtable<String, LockedObject>();
+    protected Map<String, LockedObject> _tempLocks = new ConcurrentHashMap<String, LockedObject>();
 
     /**
      * keys: id value: Temporary LockedObject from that id
      */
-    protected Hashtable<String, LockedObject> _tempLocksByID = new Hashtable<String, LockedObject>();
+    protected Map<String, LockedObject> _tempLocksByID = new ConcurrentHashMap<String, LockedObject>();
+
+    /**
+     * pending timeouts of real locks, ordered by expiry
+     */
+    protected final DelayQueue<LockTimeout> _timeouts = new DelayQueue<LockTimeout>();
+
+    /**
+     * pending timeouts of temporary locks, ordered by expiry
+     */
+    protected final DelayQueue<LockTimeout> _tempTimeouts = new DelayQueue<LockTimeout>();
+
+    private final AtomicLong _expiredCounter = new AtomicLong();
+
+    protected final LockMetrics _metrics = new LockMetrics();
+
+    /**
+     * removes expired locks in the background, null if checkTimeouts() is
+     * called on unlock instead
+     */
+    private ScheduledExecutorService _timeoutSweeper = null;
+
+    private volatile long _timeoutSweepInterval = 0;
 
     private ILockingListener _lockingListener;
 
+    private volatile ILockTokenGenerator _lockTokenGenerator = new SecureLockTokenGenerator();
+
     // REMEMBER TO REMOVE UNUSED LOCKS FROM THE HASHTABLE AS WELL
 
     protected LockedObject _root = null;
 
     protected LockedObject _tempRoot = null;
 
-    private boolean _temporary = true;
+    protected final boolean _temporary = true;
+
+    /**
+     * set while restoreLock() is running. restored locks are not reported to
+     * the ILockingListener
+     */
+    protected boolean _restoring = false;
 
     public ResourceLocks(ILockingListener lockingListener) {
         _lockingListener = lockingListener;
-        _root = new LockedObject(this, "/", true, _lockingListener);
-        _tempRoot = new LockedObject(this, "/", false, _lockingListener);
+        _root = new LockedObject(this, "/", !_temporary, _lockingListener);
+        _tempRoot = new LockedObject(this, "/", _temporary, _lockingListener);
     }
 
     public ResourceLocks() {
         this(null);
     }
 
-    public synchronized boolean lock(ITransaction transaction, String path,
+    public boolean lock(ITransaction transaction, String path,
             String owner, boolean exclusive, int depth, int timeout,
             boolean temporary) throws LockFailedException {
+        long start = System.nanoTime();
+        boolean locked;
+        synchronized (this) {
+            locked = lockLockedObject(transaction, path, owner, exclusive,
+                    depth, timeout, temporary);
+        }
+        _metrics.lockRequested(temporary, locked, System.nanoTime() - start);
+        return locked;
+    }
+
+    /**
+     * does the actual work of lock(). the caller is responsible for
+     * serializing access to the affected part of the lock tree
+     */
+    protected boolean lockLockedObject(ITransaction transaction, String path,
+            String owner, boolean exclusive, int depth, int timeout,
+            boolean temporary) {
 
         LockedObject lo = null;
 
@@ -103,8 +159,13 @@ public class ResourceLocks implements IResourceLocks {
             lo._exclusive = exclusive;
             lo._lockDepth = depth;
             lo._expiresAt = System.currentTimeMillis() + (timeout * 1000);
+            scheduleTimeout(lo);
             if (lo._parent != null) {
                 lo._parent._expiresAt = lo._expiresAt;
+                if (lo._parent._parent != null) {
+                    // the old timeout of the parent is skipped now
+                    scheduleTimeout(lo._parent);
+                }
                 if (lo._parent.equals(_root)) {
                     LockedObject rootLo = getLockedObjectByPath(transaction,
                             _root.getPath());
@@ -134,20 +195,7 @@ public class ResourceLocks implements IResourceLocks {
             String owner) {
 
         if (_locksByID.containsKey(id)) {
-            String path = _locksByID.get(id).getPath();
-            if (_locks.containsKey(path)) {
-                LockedObject lo = _locks.get(path);
-                lo.removeLockedObjectOwner(owner);
-
-                if (lo._children == null && lo._owner == null) {
-                    lo.removeLockedObject(transaction);
-                }
-            } else {
-                // there is no lock at that path. someone tried to unlock it
-                // anyway. could point to a problem
-                LOG
-                        .trace("net.sf.webdav.locking.ResourceLocks.unlock(): no lock for path "
-                                + path);
+            if (!unlockLockedObject(transaction, id, owner)) {
                 return false;
             }
 
@@ -156,7 +204,9 @@ public class ResourceLocks implements IResourceLocks {
                 cleanLockedObjects(transaction, _root, !_temporary);
             }
         }
-        checkTimeouts(transaction, !_temporary);
+        if (!isTimeoutSweeperRunning()) {
+            checkTimeouts(transaction, !_temporary);
+        }
 
         return true;
 
@@ -164,47 +214,359 @@ public class ResourceLocks implements IResourceLocks {
 
     public synchronized void unlockTemporaryLockedObjects(
             ITransaction transaction, String path, String owner) {
-        if (_tempLocks.containsKey(path)) {
-            LockedObject lo = _tempLocks.get(path);
+        unlockTempLockedObject(path, owner);
+
+        if (_cleanupCounter > _cleanupLimit) {
+            _cleanupCounter = 0;
+            cleanLockedObjects(transaction, _tempRoot, _temporary);
+        }
+
+        if (!isTimeoutSweeperRunning()) {
+            checkTimeouts(transaction, _temporary);
+        }
+
+    }
+
+    /**
+     * removes the owner from the real LockedObject with the given id and
+     * deletes the LockedObject if it is no longer used
+     * 
+     * @param transaction
+     * @param id
+     *      id of the LockedObject
+     * @param owner
+     *      who wants to unlock
+     * @return false if there is no lock at the path of the LockedObject
+     */
+    protected boolean unlockLockedObject(ITransaction transaction, String id,
+            String owner) {
+        LockedObject byId = _locksByID.get(id);
+        if (byId == null) {
+            return true;
+        }
+        String path = byId.getPath();
+        LockedObject lo = _locks.get(path);
+        if (lo != null) {
             lo.removeLockedObjectOwner(owner);
 
+            if (!lo.hasChildren() && !lo.hasOwner()) {
+                lo.removeLockedObject(transaction);
+            }
+            return true;
         } else {
             // there is no lock at that path. someone tried to unlock it
             // anyway. could point to a problem
             LOG
                     .trace("net.sf.webdav.locking.ResourceLocks.unlock(): no lock for path "
                             + path);
+            return false;
         }
+    }
 
-        if (_cleanupCounter > _cleanupLimit) {
-            _cleanupCounter = 0;
-            cleanLockedObjects(transaction, _tempRoot, _temporary);
-        }
-
-        checkTimeouts(transaction, _temporary);
+    /**
+     * removes the owner from the temporary LockedObject at the given path
+     * 
+     * @param path
+     *      what resource to unlock
+     * @param owner
+     *      who wants to unlock
+     */
+    protected void unlockTempLockedObject(String path, String owner) {
+        LockedObject lo = _tempLocks.get(path);
+        if (lo != null) {
+            lo.removeLockedObjectOwner(owner);
 
+        } else {
+            // there is no lock at that path. someone tried to unlock it
+            // anyway. could point to a problem
+            LOG
+                    .trace("net.sf.webdav.locking.ResourceLocks.unlock(): no lock for path "
+                            + path);
+        }
     }
 
+    /**
+     * only looks at the locks which have expired, not at all locks
+     */
     public synchronized void checkTimeouts(ITransaction transaction, boolean temporary) {
-        if (!temporary) {
-            Enumeration<LockedObject> lockedObjects = _locks.elements();
-            while (lockedObjects.hasMoreElements()) {
-                LockedObject currentLockedObject = lockedObjects.nextElement();
+        DelayQueue<LockTimeout> timeouts = temporary ? _tempTimeouts
+                : _timeouts;
+        LockTimeout timeout;
+        while ((timeout = timeouts.poll()) != null) {
+            expireLockedObject(transaction, timeout._lockedObject);
+        }
+    }
 
-                if (currentLockedObject._expiresAt < System.currentTimeMillis()) {
-                    currentLockedObject.removeLockedObject(transaction);
+    /**
+     * Starts a daemon thread that calls checkTimeouts() every intervalMillis
+     * milliseconds. As long as it runs, unlock() and
+     * unlockTemporaryLockedObjects() don't check for timeouts themselves.
+     * 
+     * @param intervalMillis
+     *      time between two checks
+     */
+    public synchronized void startTimeoutSweeper(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "sweep interval must be positive: " + intervalMillis);
+        }
+        stopTimeoutSweeper();
+        _timeoutSweeper = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "webdav-lock-timeouts");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        _timeoutSweeper.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    checkTimeouts(null, !_temporary);
+                    checkTimeouts(null, _temporary);
+                } catch (RuntimeException e) {
+                    // don't let the executor cancel the sweeper
+                    LOG.error("Checking lock timeouts failed", e);
                 }
             }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        _timeoutSweepInterval = intervalMillis;
+    }
+
+    /**
+     * Life cycle method, called by WebDavServletBean's destroy() method.
+     */
+    public void destroy() {
+        stopTimeoutSweeper();
+    }
+
+    /**
+     * Stops the thread started by startTimeoutSweeper(), if any.
+     */
+    public synchronized void stopTimeoutSweeper() {
+        if (_timeoutSweeper != null) {
+            _timeoutSweeper.shutdownNow();
+            _timeoutSweeper = null;
+            _timeoutSweepInterval = 0;
+        }
+    }
+
+    protected boolean isTimeoutSweeperRunning() {
+        return _timeoutSweepInterval > 0;
+    }
+
+    /**
+     * @return the interval of the timeout sweeper in milliseconds, 0 if it is
+     *  not running
+     */
+    public long getTimeoutSweepInterval() {
+        return _timeoutSweepInterval;
+    }
+
+    /**
+     * @return number of LockedObjects removed because their timeout passed
+     */
+    public long getExpiredCount() {
+        return _expiredCounter.get();
+    }
+
+    /**
+     * @return number of timeouts waiting in the queues, including the ones of
+     *  locks which have been refreshed or unlocked in the meantime
+     */
+    public int getPendingTimeoutCount() {
+        return _timeouts.size() + _tempTimeouts.size();
+    }
+
+    /**
+     * @return the counters of this ResourceLocks
+     */
+    public LockMetrics getMetrics() {
+        return _metrics;
+    }
+
+    /**
+     * replaces the generator of the ids of real locks
+     * 
+     * @param lockTokenGenerator
+     */
+    public void setLockTokenGenerator(ILockTokenGenerator lockTokenGenerator) {
+        _lockTokenGenerator = lockTokenGenerator;
+    }
+
+    /**
+     * @return a new id for a real LockedObject
+     */
+    protected String generateLockToken() {
+        return _lockTokenGenerator.generateToken();
+    }
+
+    /**
+     * queues the current expiry of the LockedObject. called whenever it
+     * changes; outdated entries are skipped by expireLockedObject()
+     * 
+     * @param lo
+     *      LockedObject
+     */
+    protected void scheduleTimeout(LockedObject lo) {
+        LockTimeout timeout = new LockTimeout(lo, lo._expiresAt);
+        if (lo._temporary) {
+            _tempTimeouts.add(timeout);
         } else {
-            Enumeration<LockedObject> lockedObjects = _tempLocks.elements();
-            while (lockedObjects.hasMoreElements()) {
-                LockedObject currentLockedObject = lockedObjects.nextElement();
+            _timeouts.add(timeout);
+        }
+    }
 
-                if (currentLockedObject._expiresAt < System.currentTimeMillis()) {
-                    currentLockedObject.removeTempLockedObject();
-                }
+    /**
+     * called by LockedObject.refreshTimeout()
+     * 
+     * @param lo
+     *      LockedObject with the new timeout
+     */
+    protected void timeoutRefreshed(LockedObject lo) {
+        scheduleTimeout(lo);
+    }
+
+    /**
+     * @return one record for every owner of a real lock which hasn't expired
+     */
+    protected List<LockRecord> getLockRecords() {
+        List<LockRecord> records = new ArrayList<LockRecord>();
+        for (LockedObject lo : _locks.values()) {
+            String[] owners = lo.getOwner();
+            if (owners == null || lo.hasExpired()) {
+                continue;
+            }
+            for (String owner : owners) {
+                records.add(new LockRecord(lo.getID(), lo.getPath(), owner, lo
+                        .isExclusive(), lo.getLockDepth(), lo._expiresAt));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * locks the resource again as described by the record, keeping its id and
+     * expiry, without notifying the ILockingListener. the caller is responsible for serializing access to the lock
+     * tree
+     * 
+     * @param record
+     *      one owner of a real lock
+     * @return false if the lock has expired or conflicts with another one
+     */
+    protected boolean restoreLock(LockRecord record) {
+        long timeLeft = record.getExpiresAt() - System.currentTimeMillis();
+        if (timeLeft <= 0) {
+            return false;
+        }
+        boolean locked;
+        _restoring = true;
+        try {
+            locked = lockLockedObject(null, record.getPath(),
+                    record.getOwner(), record.isExclusive(), record.getDepth(),
+                    (int) ((timeLeft + 999) / 1000), false);
+        } finally {
+            _restoring = false;
+        }
+        if (!locked) {
+            LOG.warn("Could not restore lock " + record);
+            return false;
+        }
+        LockedObject lo = _locks.get(record.getPath());
+        lo._expiresAt = record.getExpiresAt();
+        scheduleTimeout(lo);
+        if (!lo.getID().equals(record.getID())) {
+            lo.setID(record.getID());
+        }
+        return true;
+    }
+
+    /**
+     * forgets all real locks, without notifying the ILockingListener. the
+     * caller is responsible for serializing access to the lock tree
+     */
+    protected void clearLocks() {
+        _locks.clear();
+        _locksByID.clear();
+        _timeouts.clear();
+        _root = new LockedObject(this, "/", !_temporary, _lockingListener);
+    }
+
+    /**
+     * deletes the LockedObject if it is still in the tree and has expired,
+     * and its parents which were only kept for it. one with children only
+     * loses its owners. the caller is responsible
+     * for serializing access to the affected part of the lock tree
+     * 
+     * @param transaction
+     * @param lo
+     *      LockedObject whose timeout was reached
+     */
+    protected void expireLockedObject(ITransaction transaction,
+            LockedObject lo) {
+        Map<String, LockedObject> locks = lo._temporary ? _tempLocks : _locks;
+        long now = System.currentTimeMillis();
+        if (lo._parent == null || locks.get(lo.getPath()) != lo
+                || lo._expiresAt > now) {
+            // the root, or unlocked or refreshed in the meantime
+            return;
+        }
+        LockedObject parent = lo._parent;
+        if (lo.hasOwner()) {
+            _metrics.lockExpired(lo._temporary);
+        }
+        if (lo.hasChildren()) {
+            // still the parent of other locks, only its own lock ends. it is
+            // removed with the last of them
+            lo.removeLockedObjectOwners();
+            return;
+        }
+        removeExpiredLockedObject(transaction, lo);
+
+        while (parent != null && parent._parent != null
+                && !parent.hasOwner() && !parent.hasChildren()
+                && parent._expiresAt <= now
+                && locks.get(parent.getPath()) == parent) {
+            LockedObject next = parent._parent;
+            removeExpiredLockedObject(transaction, parent);
+            parent = next;
+        }
+    }
+
+    private void removeExpiredLockedObject(ITransaction transaction,
+            LockedObject lo) {
+        if (lo._temporary) {
+            lo.removeTempLockedObject();
+        } else {
+            lo.removeLockedObject(transaction);
+        }
+        _expiredCounter.incrementAndGet();
+    }
+
+    /**
+     * not synchronized: only reads the temporary lock tree, whose children
+     * and owners are concurrent collections
+     */
+    public boolean checkTemporaryLocks(ITransaction transaction, String path,
+            int depth) {
+        LockedObject lo = _tempLocks.get(path);
+        if (lo != null) {
+            return lo.checkLocks(false, depth);
+        }
+        // no LockedObject yet, so there are no children. the nearest existing
+        // parent decides
+        String parentPath = getParentPath(path);
+        while (parentPath != null) {
+            LockedObject parentLo = _tempLocks.get(parentPath);
+            if (parentLo != null) {
+                return parentLo.checkParents(false);
+            }
+            if (parentPath.equals(_tempRoot.getPath())) {
+                break;
             }
+            parentPath = getParentPath(parentPath);
         }
+        return true;
     }
 
     public boolean exclusiveLock(ITransaction transaction, String path,
@@ -234,9 +596,13 @@ public class ResourceLocks implements IResourceLocks {
         }
     }
 
+    /**
+     * temporary locks don't get an id unless one is set explicitly, so this
+     * usually returns null
+     */
     public LockedObject getTempLockedObjectByID(ITransaction transaction,
             String id) {
-        if (_tempLocksByID.containsKey(id)) {
+        if (id != null && _tempLocksByID.containsKey(id)) {
             return _tempLocksByID.get(id);
         } else {
             return null;
@@ -261,10 +627,10 @@ public class ResourceLocks implements IResourceLocks {
      *      path to the (new) LockedObject
      * @return the LockedObject for path.
      */
-    private LockedObject generateLockedObjects(ITransaction transaction,
+    protected LockedObject generateLockedObjects(ITransaction transaction,
             String path) {
         if (!_locks.containsKey(path)) {
-            if (_lockingListener != null) {
+            if (_lockingListener != null && !_restoring) {
                 _lockingListener.onLockResource(transaction,path);
             }
             LockedObject returnObject = new LockedObject(this, path,
@@ -293,7 +659,7 @@ public class ResourceLocks implements IResourceLocks {
      *      path to the (new) LockedObject
      * @return the LockedObject for path.
      */
-    private LockedObject generateTempLockedObjects(ITransaction transaction,
+    protected LockedObject generateTempLockedObjects(ITransaction transaction,
             String path) {
         if (!_tempLocks.containsKey(path)) {
             LockedObject returnObject = new LockedObject(this, path, _temporary, _lockingListener);
@@ -324,11 +690,11 @@ public class ResourceLocks implements IResourceLocks {
      * 
      * @return if cleaned
      */
-    private boolean cleanLockedObjects(ITransaction transaction,
+    protected boolean cleanLockedObjects(ITransaction transaction,
             LockedObject lo, boolean temporary) {
 
-        if (lo._children == null) {
-            if (lo._owner == null) {
+        if (!lo.hasChildren()) {
+            if (!lo.hasOwner()) {
                 if (temporary) {
                     lo.removeTempLockedObject();
                 } else {
@@ -341,19 +707,13 @@ public class ResourceLocks implements IResourceLocks {
             }
         } else {
             boolean canDelete = true;
-            int limit = lo._children.length;
-            for (int i = 0; i < limit; i++) {
-                if (!cleanLockedObjects(transaction, lo._children[i], temporary)) {
+            for (LockedObject child : lo._children.values()) {
+                if (!cleanLockedObjects(transaction, child, temporary)) {
                     canDelete = false;
-                } else {
-
-                    // because the deleting shifts the array
-                    i--;
-                    limit--;
                 }
             }
             if (canDelete) {
-                if (lo._owner == null) {
+                if (!lo.hasOwner()) {
                     if (temporary) {
                         lo.removeTempLockedObject();
                     } else {
@@ -377,7 +737,7 @@ public class ResourceLocks implements IResourceLocks {
      *      the path
      * @return parent path
      */
-    private String getParentPath(String path) {
+    protected String getParentPath(String path) {
         int slash = path.lastIndexOf('/');
         if (slash == -1) {
             return null;
@@ -391,4 +751,30 @@ public class ResourceLocks implements IResourceLocks {
         }
     }
 
+    /**
+     * entry of the timeout queues
+     */
+    protected static class LockTimeout implements Delayed {
+
+        final LockedObject _lockedObject;
+
+        final long _expiresAt;
+
+        LockTimeout(LockedObject lockedObject, long expiresAt) {
+            _lockedObject = lockedObject;
+            _expiresAt = expiresAt;
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(_expiresAt - System.currentTimeMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+
+        public int compareTo(Delayed other) {
+            long otherExpiresAt = ((LockTimeout) other)._expiresAt;
+            return _expiresAt < otherExpiresAt ? -1
+                    : (_expiresAt == otherExpiresAt ? 0 : 1);
+        }
+    }
+
 }
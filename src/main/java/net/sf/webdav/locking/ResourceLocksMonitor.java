@@ -0,0 +1,197 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.locking;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Statistics of a ResourceLocks, registered as MBean and printed by the
+ * lock monitor page of the servlet. The lock counts are taken by iterating
+ * over the locks on every call, the rest comes from its LockMetrics.
+ */
+public class ResourceLocksMonitor implements ResourceLocksMonitorMBean {
+
+    /**
+     * number of paths returned by getLargestSubtrees()
+     */
+    public static final int LARGEST_SUBTREES = 10;
+
+    private final ResourceLocks _resourceLocks;
+
+    public ResourceLocksMonitor(ResourceLocks resourceLocks) {
+        _resourceLocks = resourceLocks;
+    }
+
+    public int getRealExclusiveLocks() {
+        return countLocks(_resourceLocks._locks.values(), true);
+    }
+
+    public int getRealSharedLocks() {
+        return countLocks(_resourceLocks._locks.values(), false);
+    }
+
+    public int getTemporaryExclusiveLocks() {
+        return countLocks(_resourceLocks._tempLocks.values(), true);
+    }
+
+    public int getTemporarySharedLocks() {
+        return countLocks(_resourceLocks._tempLocks.values(), false);
+    }
+
+    public long getRealLocksGranted() {
+        return metrics().getGrantedCount(false);
+    }
+
+    public long getTemporaryLocksGranted() {
+        return metrics().getGrantedCount(true);
+    }
+
+    public long getRealLockConflicts() {
+        return metrics().getConflictCount(false);
+    }
+
+    public long getTemporaryLockConflicts() {
+        return metrics().getConflictCount(true);
+    }
+
+    public long getRealLocksExpired() {
+        return metrics().getExpiredCount(false);
+    }
+
+    public long getTemporaryLocksExpired() {
+        return metrics().getExpiredCount(true);
+    }
+
+    public int getPendingTimeouts() {
+        return _resourceLocks.getPendingTimeoutCount();
+    }
+
+    public long getAverageRealLockMicros() {
+        return metrics().getAverageWaitMicros(false);
+    }
+
+    public long getAverageTemporaryLockMicros() {
+        return metrics().getAverageWaitMicros(true);
+    }
+
+    public String[] getRealLockHistogram() {
+        return histogram(metrics().getWaitHistogram(false));
+    }
+
+    public String[] getTemporaryLockHistogram() {
+        return histogram(metrics().getWaitHistogram(true));
+    }
+
+    public String[] getLargestSubtrees() {
+        // keeps the LARGEST_SUBTREES largest, smallest first
+        PriorityQueue<LockedObject> largest = new PriorityQueue<LockedObject>(
+                LARGEST_SUBTREES + 1, new java.util.Comparator<LockedObject>() {
+                    public int compare(LockedObject a, LockedObject b) {
+                        int sizeA = subtreeSize(a);
+                        int sizeB = subtreeSize(b);
+                        return sizeA < sizeB ? -1 : (sizeA == sizeB ? 0 : 1);
+                    }
+                });
+        for (LockedObject lo : _resourceLocks._locks.values()) {
+            if (lo._parent == null || subtreeSize(lo) == 0) {
+                // the root counts everything
+                continue;
+            }
+            largest.add(lo);
+            if (largest.size() > LARGEST_SUBTREES) {
+                largest.poll();
+            }
+        }
+        String[] subtrees = new String[largest.size()];
+        for (int i = subtrees.length - 1; i >= 0; i--) {
+            LockedObject lo = largest.poll();
+            subtrees[i] = lo.getPath() + ": " + lo.getExclusiveLocksBelow()
+                    + "/" + lo.getSharedLocksBelow();
+        }
+        return subtrees;
+    }
+
+    /**
+     * prints all values, one "name: value" per line
+     */
+    public void print(PrintWriter writer) {
+        writer.println("realExclusiveLocks: " + getRealExclusiveLocks());
+        writer.println("realSharedLocks: " + getRealSharedLocks());
+        writer.println("temporaryExclusiveLocks: "
+                + getTemporaryExclusiveLocks());
+        writer.println("temporarySharedLocks: " + getTemporarySharedLocks());
+        writer.println("realLocksGranted: " + getRealLocksGranted());
+        writer.println("temporaryLocksGranted: " + getTemporaryLocksGranted());
+        writer.println("realLockConflicts: " + getRealLockConflicts());
+        writer.println("temporaryLockConflicts: "
+                + getTemporaryLockConflicts());
+        writer.println("realLocksExpired: " + getRealLocksExpired());
+        writer.println("temporaryLocksExpired: " + getTemporaryLocksExpired());
+        writer.println("pendingTimeouts: " + getPendingTimeouts());
+        writer.println("averageRealLockMicros: " + getAverageRealLockMicros());
+        writer.println("averageTemporaryLockMicros: "
+                + getAverageTemporaryLockMicros());
+        printList(writer, "realLockHistogram", getRealLockHistogram());
+        printList(writer, "temporaryLockHistogram",
+                getTemporaryLockHistogram());
+        printList(writer, "largestSubtrees", getLargestSubtrees());
+    }
+
+    private LockMetrics metrics() {
+        return _resourceLocks.getMetrics();
+    }
+
+    private static int countLocks(Collection<LockedObject> locks,
+            boolean exclusive) {
+        int count = 0;
+        for (LockedObject lo : locks) {
+            if (lo.hasOwner() && lo.isExclusive() == exclusive) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int subtreeSize(LockedObject lo) {
+        return lo.getExclusiveLocksBelow() + lo.getSharedLocksBelow();
+    }
+
+    private static String[] histogram(long[] counts) {
+        List<String> buckets = new ArrayList<String>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            if (i == counts.length - 1) {
+                buckets.add(">= " + (1L << (i - 1)) + " us: " + counts[i]);
+            } else {
+                buckets.add("< " + (1L << i) + " us: " + counts[i]);
+            }
+        }
+        return buckets.toArray(new String[buckets.size()]);
+    }
+
+    private static void printList(PrintWriter writer, String name,
+            String[] values) {
+        writer.println(name + ":");
+        for (String value : values) {
+            writer.println("  " + value);
+        }
+    }
+}
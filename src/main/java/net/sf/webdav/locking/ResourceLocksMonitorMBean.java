@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.locking;
+
+/**
+ * JMX view of a ResourceLocks, read-only. "real" are the webdav locks,
+ * "temporary" the locks held by running requests
+ */
+public interface ResourceLocksMonitorMBean {
+
+    int getRealExclusiveLocks();
+
+    int getRealSharedLocks();
+
+    int getTemporaryExclusiveLocks();
+
+    int getTemporarySharedLocks();
+
+    long getRealLocksGranted();
+
+    long getTemporaryLocksGranted();
+
+    long getRealLockConflicts();
+
+    long getTemporaryLockConflicts();
+
+    long getRealLocksExpired();
+
+    /**
+     * @return temporary locks which timed out instead of being released by
+     *  their request
+     */
+    long getTemporaryLocksExpired();
+
+    int getPendingTimeouts();
+
+    long getAverageRealLockMicros();
+
+    long getAverageTemporaryLockMicros();
+
+    /**
+     * @return "< n us: count" for every bucket of the durations of lock()
+     */
+    String[] getRealLockHistogram();
+
+    String[] getTemporaryLockHistogram();
+
+    /**
+     * @return "path: exclusive/shared" of the paths with the most real locks
+     *  below them
+     */
+    String[] getLargestSubtrees();
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.locking;
+
+import java.security.SecureRandom;
+
+/**
+ * Generates random (version 4) UUIDs like UUID.randomUUID(), but with a
+ * SecureRandom per thread instead of the one shared by the whole JVM, so
+ * concurrent LOCKs don't contend for it.
+ */
+public class SecureLockTokenGenerator implements ILockTokenGenerator {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final ThreadLocal<SecureRandom> _random = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue() {
+            return new SecureRandom();
+        }
+    };
+
+    public String generateToken() {
+        byte[] bytes = new byte[16];
+        _random.get().nextBytes(bytes);
+        // version 4, IETF variant
+        bytes[6] = (byte) ((bytes[6] & 0x0f) | 0x40);
+        bytes[8] = (byte) ((bytes[8] & 0x3f) | 0x80);
+
+        char[] chars = new char[36];
+        int pos = 0;
+        for (int i = 0; i < 16; i++) {
+            if (i == 4 || i == 6 || i == 8 || i == 10) {
+                chars[pos++] = '-';
+            }
+            chars[pos++] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[pos++] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.locking;
+
+import net.sf.webdav.ILockingListener;
+import net.sf.webdav.ITransaction;
+import net.sf.webdav.exceptions.LockFailedException;
+import net.sf.webdav.exceptions.WebdavException;
+
+/**
+ * ResourceLocks whose real (webdav) locks are shared with other servlets
+ * through an ILockStore, so a LOCK taken on one node of a cluster is seen by
+ * all of them.
+ * <p/>
+ * The local lock tree is a near cache of the stored locks. Lookups only ask
+ * the store for its version and rebuild the tree when it has changed; with a
+ * maxStaleness > 0 they don't even do that if they did within the last
+ * maxStaleness ms. Locking, unlocking and refreshing always work on the
+ * current locks while holding the update lock of the store, so two nodes can
+ * never grant conflicting locks.
+ * <p/>
+ * Temporary locks stay local, they only guard the requests of this servlet.
+ * To plug in another store via the ResourceLocksImplementation init-param,
+ * subclass this with a constructor taking an ILockingListener.
+ */
+public class SharedResourceLocks extends ResourceLocks {
+
+    private final ILockStore _store;
+
+    private final long _maxStaleness;
+
+    /**
+     * version of the stored locks in the lock tree, -1 if unknown
+     */
+    private volatile long _version = -1;
+
+    /**
+     * when the version was last compared with the store
+     */
+    private volatile long _checkedAt = 0;
+
+    /**
+     * @param lockingListener
+     * @param store
+     *      where the locks are shared
+     * @param maxStaleness
+     *      ms a lookup may use the lock tree without checking the version of
+     *      the store
+     */
+    public SharedResourceLocks(ILockingListener lockingListener,
+            ILockStore store, long maxStaleness) {
+        super(lockingListener);
+        _store = store;
+        _maxStaleness = maxStaleness;
+    }
+
+    public SharedResourceLocks(ILockingListener lockingListener,
+            ILockStore store) {
+        this(lockingListener, store, 0);
+    }
+
+    @Override
+    public boolean lock(ITransaction transaction, String path, String owner,
+            boolean exclusive, int depth, int timeout, boolean temporary)
+            throws LockFailedException {
+        if (temporary) {
+            return super.lock(transaction, path, owner, exclusive, depth,
+                    timeout, temporary);
+        }
+        long start = System.nanoTime();
+        boolean locked;
+        synchronized (this) {
+            _store.beginUpdate();
+            try {
+                reload(_store.getVersion());
+                locked = lockLockedObject(transaction, path, owner,
+                        exclusive, depth, timeout, temporary);
+                if (locked) {
+                    store();
+                }
+            } finally {
+                _store.endUpdate();
+            }
+        }
+        _metrics.lockRequested(temporary, locked, System.nanoTime() - start);
+        return locked;
+    }
+
+    @Override
+    public synchronized boolean unlock(ITransaction transaction, String id,
+            String owner) {
+        _store.beginUpdate();
+        try {
+            reload(_store.getVersion());
+            if (!super.unlock(transaction, id, owner)) {
+                return false;
+            }
+            store();
+            return true;
+        } finally {
+            _store.endUpdate();
+        }
+    }
+
+    @Override
+    public LockedObject getLockedObjectByID(ITransaction transaction, String id) {
+        refresh();
+        synchronized (this) {
+            return super.getLockedObjectByID(transaction, id);
+        }
+    }
+
+    @Override
+    public LockedObject getLockedObjectByPath(ITransaction transaction,
+            String path) {
+        refresh();
+        synchronized (this) {
+            return super.getLockedObjectByPath(transaction, path);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        _store.close();
+    }
+
+    @Override
+    protected void timeoutRefreshed(LockedObject lo) {
+        super.timeoutRefreshed(lo);
+        if (lo._temporary) {
+            return;
+        }
+        synchronized (this) {
+            long expiresAt = lo._expiresAt;
+            _store.beginUpdate();
+            try {
+                reload(_store.getVersion());
+                // lo is outdated if another node changed the locks
+                LockedObject current = _locksByID.get(lo.getID());
+                if (current != null) {
+                    if (current != lo) {
+                        current._expiresAt = expiresAt;
+                        scheduleTimeout(current);
+                    }
+                    store();
+                }
+            } finally {
+                _store.endUpdate();
+            }
+        }
+    }
+
+    /**
+     * rebuilds the lock tree if the store has changed since the last check
+     */
+    private void refresh() {
+        long now = System.currentTimeMillis();
+        if (_maxStaleness > 0 && now - _checkedAt < _maxStaleness) {
+            return;
+        }
+        long version = _store.getVersion();
+        _checkedAt = now;
+        if (version != _version) {
+            synchronized (this) {
+                reload(version);
+            }
+        }
+    }
+
+    /**
+     * rebuilds the lock tree from the store, unless it already has the given
+     * version. called while holding the monitor
+     */
+    private void reload(long version) {
+        if (version == _version) {
+            return;
+        }
+        clearLocks();
+        // set first, restoring looks up the root
+        _version = version;
+        try {
+            for (LockRecord record : _store.read()) {
+                restoreLock(record);
+            }
+        } catch (RuntimeException e) {
+            _version = -1;
+            throw e;
+        }
+    }
+
+    /**
+     * writes the lock tree to the store. called while holding the monitor
+     * and the update lock of the store
+     */
+    private void store() {
+        try {
+            _version = _store.write(getLockRecords());
+            _checkedAt = System.currentTimeMillis();
+        } catch (WebdavException e) {
+            // the lock tree differs from the store now, read it again
+            _version = -1;
+            throw e;
+        }
+    }
+}
@@ -20,8 +20,10 @@ import java.io.IOException;
 import java.io.Writer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Queue;
@@ -249,19 +251,24 @@ public abstract class AbstractMethod implements IMethodExecutor {
     }
 
     /**
-     * Get the ETag associated with a file.
+     * Get the ETag associated with a file: the one set by the store, or a
+     * weak one made of resourceLength and lastModified.
      * 
      * @param so
-     *      StoredObject to get resourceLength, lastModified and a hashCode of
-     *      StoredObject
+     *      StoredObject to get the ETag, resourceLength and lastModified of
      * @return the ETag
      */
     protected String getETag(StoredObject so) {
 
+        if (so != null && so.getETag() != null) {
+            return so.getETag();
+        }
+
         String resourceLength = "";
         String lastModified = "";
 
-        if (so != null && so.isResource()) {
+        // lock-null resources have no modification date
+        if (so != null && so.isResource() && so.getLastModified() != null) {
             resourceLength = new Long(so.getResourceLength()).toString();
             lastModified = new Long(so.getLastModified().getTime()).toString();
         }
@@ -270,38 +277,12 @@ public abstract class AbstractMethod implements IMethodExecutor {
 
     }
 
+    /**
+     * @return the lock ids submitted in the If header, null if there are none
+     */
     protected String[] getLockIdFromIfHeader(HttpServletRequest req) {
-        String[] ids = new String[2];
-        String id = req.getHeader("If");
-
-        if (id != null && !id.equals("")) {
-            if (id.indexOf(">)") == id.lastIndexOf(">)")) {
-                id = id.substring(id.indexOf("(<"), id.indexOf(">)"));
-
-                if (id.indexOf("locktoken:") != -1) {
-                    id = id.substring(id.indexOf(':') + 1);
-                }
-                ids[0] = id;
-            } else {
-                String firstId = id.substring(id.indexOf("(<"), id
-                        .indexOf(">)"));
-                if (firstId.indexOf("locktoken:") != -1) {
-                    firstId = firstId.substring(firstId.indexOf(':') + 1);
-                }
-                ids[0] = firstId;
-
-                String secondId = id.substring(id.lastIndexOf("(<"), id
-                        .lastIndexOf(">)"));
-                if (secondId.indexOf("locktoken:") != -1) {
-                    secondId = secondId.substring(secondId.indexOf(':') + 1);
-                }
-                ids[1] = secondId;
-            }
-
-        } else {
-            ids = null;
-        }
-        return ids;
+        String[] ids = new IfHeader(req).getLockTokens();
+        return ids.length > 0 ? ids : null;
     }
 
     protected String getLockIdFromLockTokenHeader(HttpServletRequest req) {
@@ -338,41 +319,105 @@ public abstract class AbstractMethod implements IMethodExecutor {
             HttpServletRequest req, HttpServletResponse resp,
             IResourceLocks resourceLocks, String path) throws IOException,
             LockFailedException {
+        return checkLocks(transaction, req, resp, resourceLocks, path,
+                new IfHeader(req));
+    }
+
+    /**
+     * Same as checkLocks(transaction, req, resp, resourceLocks, path), with
+     * the If header of the request, so it is parsed only once for all the
+     * checks of a request.
+     * 
+     * @param ifHeader
+     *      If header of req
+     */
+    protected boolean checkLocks(ITransaction transaction,
+            HttpServletRequest req, HttpServletResponse resp,
+            IResourceLocks resourceLocks, String path, IfHeader ifHeader)
+            throws IOException, LockFailedException {
 
         LockedObject loByPath = resourceLocks.getLockedObjectByPath(
                 transaction, path);
-        if (loByPath != null) {
-
-            if (loByPath.isShared())
-                return true;
-
-            // the resource is locked
-            String[] lockTokens = getLockIdFromIfHeader(req);
-            String lockToken = null;
-            if (lockTokens != null)
-                lockToken = lockTokens[0];
-            else {
-                return false;
-            }
-            if (lockToken != null) {
-                LockedObject loByIf = resourceLocks.getLockedObjectByID(
-                        transaction, lockToken);
-                if (loByIf == null) {
-                    // no locked resource to the given lockToken
-                    return false;
-                }
-                if (!loByIf.equals(loByPath)) {
-                    loByIf = null;
-                    return false;
-                }
-                loByIf = null;
-            }
+        if (loByPath == null || loByPath.isShared()) {
+            return true;
+        }
+        // the resource is locked, its token has to be in the If header
+        return ifHeader.hasLockToken(loByPath.getID());
+    }
+
+    /**
+     * Evaluates the conditions of the If header (RFC 4918 10.4) for the
+     * resource at path, against its ETag and the locks covering it. Sends
+     * 400 for a malformed header and 412 if the conditions fail.
+     *
+     * @param so
+     *      the resource at path, null if there is none
+     * @return true if the request may go on
+     */
+    protected boolean checkIfHeader(ITransaction transaction,
+            HttpServletResponse resp, IResourceLocks resourceLocks,
+            String path, StoredObject so, IfHeader ifHeader)
+            throws IOException {
+        return checkIfHeader(transaction, resp, resourceLocks,
+                new String[] { path }, new StoredObject[] { so }, ifHeader);
+    }
 
+    /**
+     * Same as checkIfHeader(transaction, resp, resourceLocks, path, so,
+     * ifHeader) for all the resources of a request, like the source and the
+     * destination of COPY and MOVE.
+     *
+     * @param sos
+     *      the resource at each path, null if there is none
+     */
+    protected boolean checkIfHeader(ITransaction transaction,
+            HttpServletResponse resp, IResourceLocks resourceLocks,
+            String[] paths, StoredObject[] sos, IfHeader ifHeader)
+            throws IOException {
+
+        if (!ifHeader.isPresent()) {
+            return true;
+        }
+        if (ifHeader.isMalformed()) {
+            resp.sendError(WebdavStatus.SC_BAD_REQUEST);
+            return false;
+        }
+        String[][] lockIds = new String[paths.length][];
+        String[] eTags = new String[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            lockIds[i] = getCoveringLockIds(transaction, resourceLocks,
+                    paths[i]);
+            eTags[i] = sos[i] == null || sos[i].isNullResource() ? null
+                    : getETag(sos[i]);
+        }
+        if (!ifHeader.evaluate(paths, lockIds, eTags)) {
+            resp.sendError(WebdavStatus.SC_PRECONDITION_FAILED);
+            return false;
         }
-        loByPath = null;
         return true;
     }
 
+    /**
+     * @return the ids of the lock on the resource at path and of the locks of
+     *  its parents which have a depth
+     */
+    private String[] getCoveringLockIds(ITransaction transaction,
+            IResourceLocks resourceLocks, String path) {
+        List<String> ids = new ArrayList<String>();
+        for (String p = path; p != null; p = getParentPath(p)) {
+            LockedObject lo = resourceLocks.getLockedObjectByPath(
+                    transaction, p.length() == 0 ? "/" : p);
+            if (lo != null && lo.getOwner() != null
+                    && (p == path || lo.getLockDepth() != 0)) {
+                ids.add(lo.getID());
+            }
+            if (p.length() == 0 || p.equals("/")) {
+                break;
+            }
+        }
+        return ids.toArray(new String[ids.size()]);
+    }
+
     /**
      * Send a multistatus element containing a complete error report to the
      * client. If the errorList contains only one error, send the error
@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.methods;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Sends large GET responses on its own threads (Servlet 3.0 async), so the
+ * container thread of the request is free again as soon as the headers are
+ * set. Slow clients then block a thread of this bounded pool instead of the
+ * request pool. Once the queue of the pool is full the content is sent on the
+ * request thread as before.
+ * <p/>
+ * Only FileChannels of stores with atomic content (IAtomicContentStore) are
+ * sent this way: the channel keeps reading the content it was opened on,
+ * after the transaction of the request is committed and while a PUT
+ * replaces the resource.
+ */
+public class AsyncSender {
+
+    private static org.slf4j.Logger LOG = org.slf4j.LoggerFactory
+            .getLogger(AsyncSender.class);
+
+    /**
+     * ms destroy() waits for running transfers
+     */
+    private static final long SHUTDOWN_TIMEOUT = 5000;
+
+    private final ThreadPoolExecutor _executor;
+
+    private final long _minLength;
+
+    /**
+     * @param threads
+     *      number of threads sending content
+     * @param minLength
+     *      only resources of at least this length are sent asynchronously
+     */
+    public AsyncSender(int threads, long minLength) {
+        _minLength = minLength;
+        _executor = new ThreadPoolExecutor(threads, threads, 60,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+                        threads * 4), new ThreadFactory() {
+                    private final AtomicInteger _count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "webdav-sender-"
+                                + _count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        _executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return true if the content should be sent with send()
+     */
+    public boolean accepts(HttpServletRequest req, long length) {
+        return length >= _minLength && req.isAsyncSupported();
+    }
+
+
+    /**
+     * @return the number of responses being sent or waiting for a thread
+     */
+    public int getActiveCount() {
+        return _executor.getActiveCount() + _executor.getQueue().size();
+    }
+
+    /**
+     * stops the threads, waits a while for running transfers
+     */
+    public void destroy() {
+        _executor.shutdown();
+        try {
+            if (!_executor.awaitTermination(SHUTDOWN_TIMEOUT,
+                    TimeUnit.MILLISECONDS)) {
+                _executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            _executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends the channel and closes it, the response is complete afterwards.
+     */
+    public void send(HttpServletRequest req, final OutputStream out,
+            final FileChannel channel) {
+        final AsyncContext context = req.startAsync();
+        // the container's socket timeout still applies to each write
+        context.setTimeout(0);
+        Runnable transfer = new Runnable() {
+            public void run() {
+                try {
+                    WritableByteChannel target = Channels.newChannel(out);
+                    long position = 0;
+                    long size = channel.size();
+                    while (position < size) {
+                        long sent = channel.transferTo(position, size
+                                - position, target);
+                        if (sent <= 0) {
+                            break;
+                        }
+                        position += sent;
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    // mostly the client went away
+                    LOG.debug("sending content failed: " + e);
+                } finally {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        LOG.warn("Closing content causes Exception!\n"
+                                + e.toString());
+                    }
+                    context.complete();
+                }
+            }
+        };
+        try {
+            _executor.execute(transfer);
+        } catch (RejectedExecutionException e) {
+            // all threads busy, send it like a synchronous request
+            transfer.run();
+        }
+    }
+}
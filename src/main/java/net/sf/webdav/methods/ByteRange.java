@@ -0,0 +1,188 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.methods;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One range of a Range header (RFC 7233), resolved against the length of the
+ * resource: both positions are absolute and inclusive.
+ */
+public class ByteRange {
+
+    private static final Comparator<ByteRange> BY_START = new Comparator<ByteRange>() {
+        public int compare(ByteRange a, ByteRange b) {
+            return a._start < b._start ? -1 : (a._start == b._start ? 0 : 1);
+        }
+    };
+
+    private final long _start;
+
+    private final long _end;
+
+    public ByteRange(long start, long end) {
+        _start = start;
+        _end = end;
+    }
+
+    public long getStart() {
+        return _start;
+    }
+
+    public long getEnd() {
+        return _end;
+    }
+
+    public long getLength() {
+        return _end - _start + 1;
+    }
+
+    /**
+     * @return the value of the Content-Range header for this range
+     */
+    public String getContentRange(long resourceLength) {
+        return "bytes " + _start + "-" + _end + "/" + resourceLength;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ByteRange)) {
+            return false;
+        }
+        ByteRange other = (ByteRange) o;
+        return _start == other._start && _end == other._end;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (_start ^ (_end >>> 32) ^ _end);
+    }
+
+    @Override
+    public String toString() {
+        return _start + "-" + _end;
+    }
+
+    /**
+     * Parses the value of a Range header like "bytes=0-99,200-,-50".
+     *
+     * @param value
+     *      value of the Range header
+     * @param resourceLength
+     *      length of the resource
+     * @return the satisfiable ranges in the order of the header, an empty list
+     *  if none is (416), or null if the header is malformed or not in bytes,
+     *  in which case it is ignored
+     */
+    public static List<ByteRange> parse(String value, long resourceLength) {
+        if (value == null) {
+            return null;
+        }
+        value = value.trim();
+        int equals = value.indexOf('=');
+        if (equals == -1
+                || !value.substring(0, equals).trim().equalsIgnoreCase("bytes")) {
+            return null;
+        }
+        List<ByteRange> ranges = new ArrayList<ByteRange>(1);
+        boolean empty = true;
+        for (String spec : value.substring(equals + 1).split(",")) {
+            spec = spec.trim();
+            if (spec.length() == 0) {
+                // empty list elements are allowed
+                continue;
+            }
+            empty = false;
+            int dash = spec.indexOf('-');
+            if (dash == -1) {
+                return null;
+            }
+            long first = parsePosition(spec.substring(0, dash).trim());
+            long last = parsePosition(spec.substring(dash + 1).trim());
+            if (first == -1) {
+                // suffix range: the last bytes
+                if (last == -1 || last == -2) {
+                    return null;
+                }
+                if (last > 0 && resourceLength > 0) {
+                    ranges.add(new ByteRange(Math.max(0, resourceLength - last),
+                            resourceLength - 1));
+                }
+            } else {
+                if (first == -2 || last == -2 || (last != -1 && last < first)) {
+                    return null;
+                }
+                if (first < resourceLength) {
+                    long end = last == -1 || last >= resourceLength ? resourceLength - 1
+                            : last;
+                    ranges.add(new ByteRange(first, end));
+                }
+            }
+        }
+        return empty ? null : ranges;
+    }
+
+    /**
+     * Merges overlapping and adjacent ranges, so a client can't make the
+     * server send the same bytes many times.
+     *
+     * @return the merged ranges ordered by position, or the given list if it
+     *  has only one range
+     */
+    public static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        List<ByteRange> sorted = new ArrayList<ByteRange>(ranges);
+        Collections.sort(sorted, BY_START);
+        List<ByteRange> merged = new ArrayList<ByteRange>(sorted.size());
+        ByteRange current = sorted.get(0);
+        for (int i = 1; i < sorted.size(); i++) {
+            ByteRange next = sorted.get(i);
+            if (next._start <= current._end + 1) {
+                current = new ByteRange(current._start, Math.max(current._end,
+                        next._end));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * @return the position, -1 if empty, -2 if it isn't a number
+     */
+    private static long parsePosition(String position) {
+        if (position.length() == 0) {
+            return -1;
+        }
+        for (int i = 0; i < position.length(); i++) {
+            if (!Character.isDigit(position.charAt(i))) {
+                return -2;
+            }
+        }
+        try {
+            return Long.parseLong(position);
+        } catch (NumberFormatException e) {
+            // too long, can't be within the resource anyway
+            return Long.MAX_VALUE;
+        }
+    }
+}
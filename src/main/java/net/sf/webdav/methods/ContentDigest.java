@@ -0,0 +1,305 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.methods;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Digests of a PUT body or of the content a resumable upload assembled,
+ * computed while it is read. One is the digest the store keeps (see
+ * IDigestStore), the others check the Content-MD5 and Digest (RFC 3230)
+ * headers of the request: content which doesn't match them fails at its end,
+ * before the store commits it.
+ */
+public class ContentDigest {
+
+    private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    /**
+     * algorithm of the digest to keep, null for none
+     */
+    private final String _algorithm;
+
+    private final Map<String, MessageDigest> _digests = new LinkedHashMap<String, MessageDigest>();
+
+    private final Map<String, byte[]> _expected = new HashMap<String, byte[]>();
+
+    private byte[] _digest;
+
+    private boolean _finished = false;
+
+    private boolean _mismatch = false;
+
+    private ContentDigest(String algorithm) {
+        _algorithm = algorithm;
+        if (algorithm != null) {
+            add(algorithm);
+        }
+    }
+
+    /**
+     * @param algorithm
+     *      the digest to keep, null for none
+     * @return the digests of the request body, null if there are none to
+     *  compute
+     * @throws IllegalArgumentException
+     *      if a digest header of the request is malformed
+     */
+    public static ContentDigest forRequest(HttpServletRequest req,
+            String algorithm) {
+        ContentDigest digest = new ContentDigest(algorithm);
+        digest.expectContentMd5(req);
+        digest.expectDigest(req);
+        return digest._digests.isEmpty() ? null : digest;
+    }
+
+    /**
+     * @return the digest checking a part of a resumable upload against the
+     *  Content-MD5 header, which covers the body only. null if there is
+     *  none
+     * @throws IllegalArgumentException
+     *      if the header is malformed
+     */
+    public static ContentDigest forPart(HttpServletRequest req) {
+        ContentDigest digest = new ContentDigest(null);
+        digest.expectContentMd5(req);
+        return digest._digests.isEmpty() ? null : digest;
+    }
+
+    /**
+     * @param algorithm
+     *      the digest to keep, null for none
+     * @return the digests of the content a resumable upload assembled, the
+     *  Digest header (RFC 3230) covers all of it. null if there are none to
+     *  compute
+     * @throws IllegalArgumentException
+     *      if the header is malformed
+     */
+    public static ContentDigest forUpload(HttpServletRequest req,
+            String algorithm) {
+        ContentDigest digest = new ContentDigest(algorithm);
+        digest.expectDigest(req);
+        return digest._digests.isEmpty() ? null : digest;
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *      if the JVM doesn't know the algorithm
+     */
+    public static void checkAlgorithm(String algorithm) {
+        try {
+            MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("unknown digest algorithm "
+                    + algorithm, e);
+        }
+    }
+
+    /**
+     * @return the stream to give the store instead of in. Once it reaches
+     *  the end the digests are complete, and a digest which doesn't match
+     *  its header fails the read with an IOException.
+     */
+    public InputStream wrap(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b == -1) {
+                    finish();
+                } else {
+                    for (MessageDigest digest : _digests.values()) {
+                        digest.update((byte) b);
+                    }
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read == -1) {
+                    finish();
+                } else {
+                    for (MessageDigest digest : _digests.values()) {
+                        digest.update(b, off, read);
+                    }
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                // everything has to pass the digests
+                byte[] skipBuffer = new byte[(int) Math.min(n, 8192)];
+                int read = read(skipBuffer, 0, skipBuffer.length);
+                return read == -1 ? 0 : read;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+    }
+
+    public String getAlgorithm() {
+        return _algorithm;
+    }
+
+    /**
+     * @return the digest to keep, null if there is none or the body wasn't
+     *  read to its end
+     */
+    public byte[] getDigest() {
+        return _digest;
+    }
+
+    /**
+     * @return true if the body didn't match a digest header
+     */
+    public boolean isMismatch() {
+        return _mismatch;
+    }
+
+    /**
+     * @return the MessageDigest name of a Digest header algorithm, null if
+     *  it isn't supported
+     */
+    static String toJavaAlgorithm(String name) {
+        name = name.trim().toUpperCase();
+        if (name.equals("SHA")) {
+            return "SHA-1";
+        }
+        if (name.equals("MD5") || name.equals("SHA-256")
+                || name.equals("SHA-512")) {
+            return name;
+        }
+        return null;
+    }
+
+    private void expectContentMd5(HttpServletRequest req) {
+        String contentMd5 = req.getHeader("Content-MD5");
+        if (contentMd5 != null) {
+            expect("MD5", decode(contentMd5));
+        }
+    }
+
+    private void expectDigest(HttpServletRequest req) {
+        String header = req.getHeader("Digest");
+        if (header != null) {
+            for (String instance : header.split(",")) {
+                int equals = instance.indexOf('=');
+                if (equals == -1) {
+                    throw new IllegalArgumentException("malformed digest: "
+                            + instance);
+                }
+                String name = toJavaAlgorithm(instance.substring(0, equals));
+                if (name != null) {
+                    expect(name, decode(instance.substring(equals + 1)));
+                }
+            }
+        }
+    }
+
+    private void expect(String algorithm, byte[] value) {
+        add(algorithm);
+        _expected.put(algorithm, value);
+    }
+
+    private void add(String algorithm) {
+        if (!_digests.containsKey(algorithm)) {
+            try {
+                _digests.put(algorithm, MessageDigest.getInstance(algorithm));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private void finish() throws IOException {
+        if (_finished) {
+            return;
+        }
+        _finished = true;
+        byte[] kept = null;
+        for (Map.Entry<String, MessageDigest> e : _digests.entrySet()) {
+            byte[] value = e.getValue().digest();
+            byte[] expected = _expected.get(e.getKey());
+            if (expected != null && !MessageDigest.isEqual(expected, value)) {
+                _mismatch = true;
+                throw new IOException(e.getKey()
+                        + " digest of the content doesn't match the request");
+            }
+            if (e.getKey().equals(_algorithm)) {
+                kept = value;
+            }
+        }
+        _digest = kept;
+    }
+
+    /**
+     * @return the bytes of a padded base64 value (RFC 4648)
+     * @throws IllegalArgumentException
+     *      if the value is malformed
+     */
+    static byte[] decode(String base64) {
+        String value = base64.trim();
+        int length = value.length();
+        if (length % 4 != 0) {
+            throw new IllegalArgumentException("malformed digest: " + base64);
+        }
+        int padding = 0;
+        while (padding < 2 && padding < length
+                && value.charAt(length - 1 - padding) == '=') {
+            padding++;
+        }
+        byte[] bytes = new byte[length / 4 * 3 - padding];
+        int bits = 0;
+        int position = 0;
+        for (int i = 0; i < length - padding; i++) {
+            int sixBits = BASE64.indexOf(value.charAt(i));
+            if (sixBits == -1) {
+                throw new IllegalArgumentException("malformed digest: "
+                        + base64);
+            }
+            bits = bits << 6 | sixBits;
+            if (i % 4 == 3) {
+                bytes[position++] = (byte) (bits >> 16);
+                bytes[position++] = (byte) (bits >> 8);
+                bytes[position++] = (byte) bits;
+                bits = 0;
+            }
+        }
+        if (padding == 1) {
+            bits <<= 6;
+            bytes[position++] = (byte) (bits >> 16);
+            bytes[position] = (byte) (bits >> 8);
+        } else if (padding == 2) {
+            bits <<= 12;
+            bytes[position] = (byte) (bits >> 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.methods;
+
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Negotiation of the gzip content coding with Accept-Encoding. Bodies
+ * shorter than MIN_LENGTH aren't worth it, and only text-like content types
+ * compress well.
+ */
+public class ContentEncoding {
+
+    public static final String GZIP = "gzip";
+
+    /**
+     * bodies and resources shorter than this are sent as they are
+     */
+    public static final int MIN_LENGTH = 1024;
+
+    /**
+     * @return true if the Accept-Encoding header allows gzip: "gzip",
+     *  "x-gzip" or "*" with a q-value above 0
+     */
+    public static boolean acceptsGzip(HttpServletRequest req) {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean accepted = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String name = coding;
+            float q = 1;
+            int semicolon = coding.indexOf(';');
+            if (semicolon != -1) {
+                name = coding.substring(0, semicolon);
+                q = parseQ(coding.substring(semicolon + 1));
+            }
+            name = name.trim().toLowerCase();
+            if (name.equals(GZIP) || name.equals("x-gzip")) {
+                // an explicit gzip wins over *
+                return q > 0;
+            } else if (name.equals("*")) {
+                accepted = q > 0;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * @return true for text, XML, JSON and JavaScript content
+     */
+    public static boolean isCompressible(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        String type = mimeType.toLowerCase();
+        int semicolon = type.indexOf(';');
+        if (semicolon != -1) {
+            type = type.substring(0, semicolon);
+        }
+        type = type.trim();
+        return type.startsWith("text/") || type.endsWith("/xml")
+                || type.endsWith("+xml") || type.endsWith("/json")
+                || type.endsWith("+json") || type.endsWith("/javascript")
+                || type.endsWith("/x-javascript");
+    }
+
+    /**
+     * @return the entity tag of the encoded representation, which has to
+     *  differ from the one of the resource: "abc" becomes "abc-gzip"
+     */
+    public static String encodedETag(String eTag, String encoding) {
+        if (eTag.endsWith("\"")) {
+            return eTag.substring(0, eTag.length() - 1) + "-" + encoding
+                    + "\"";
+        }
+        return eTag + "-" + encoding;
+    }
+
+    /**
+     * Decides if a generated body is compressed and sets the headers for it.
+     *
+     * @param length
+     *      length of the body in characters
+     * @return true if the body has to be written with writeGzip()
+     */
+    public static boolean startGzip(HttpServletRequest req,
+            HttpServletResponse resp, int length) {
+        if (length < MIN_LENGTH) {
+            return false;
+        }
+        resp.addHeader("Vary", "Accept-Encoding");
+        if (!acceptsGzip(req)) {
+            return false;
+        }
+        resp.setHeader("Content-Encoding", GZIP);
+        return true;
+    }
+
+    /**
+     * writes the body gzip compressed to the response
+     */
+    public static void writeGzip(HttpServletResponse resp, byte[] body)
+            throws IOException {
+        GZIPOutputStream out = new GZIPOutputStream(resp.getOutputStream(),
+                AbstractMethod.BUF_SIZE);
+        out.write(body);
+        out.finish();
+        out.flush();
+    }
+
+    private static float parseQ(String params) {
+        for (String param : params.split(";")) {
+            param = param.trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -106,6 +106,19 @@ public class DoCopy extends AbstractMethod {
     public boolean copyResource(ITransaction transaction,
             HttpServletRequest req, HttpServletResponse resp)
             throws WebdavException, IOException, LockFailedException {
+        return copyResource(transaction, req, resp, new IfHeader(req));
+    }
+
+    /**
+     * Same as copyResource(transaction, req, resp), with the If header of a
+     * request which already checked other locks.
+     * 
+     * @param ifHeader
+     *      If header of req
+     */
+    boolean copyResource(ITransaction transaction, HttpServletRequest req,
+            HttpServletResponse resp, IfHeader ifHeader)
+            throws WebdavException, IOException, LockFailedException {
 
         // Parsing destination header
         String destinationPath = parseDestinationHeader(req, resp);
@@ -124,12 +137,13 @@ public class DoCopy extends AbstractMethod {
         String parentDestinationPath = getParentPath(getCleanPath(destinationPath));
 
         if (!checkLocks(transaction, req, resp, _resourceLocks,
-                parentDestinationPath)) {
+                parentDestinationPath, ifHeader)) {
             resp.setStatus(WebdavStatus.SC_LOCKED);
             return false; // parentDestination is locked
         }
 
-        if (!checkLocks(transaction, req, resp, _resourceLocks, destinationPath)) {
+        if (!checkLocks(transaction, req, resp, _resourceLocks,
+                destinationPath, ifHeader)) {
             resp.setStatus(WebdavStatus.SC_LOCKED);
             return false; // destination is locked
         }
@@ -168,6 +182,12 @@ public class DoCopy extends AbstractMethod {
 
                 destinationSo = _store.getStoredObject(transaction,
                         destinationPath);
+                if (!checkIfHeader(transaction, resp, _resourceLocks,
+                        new String[] { path, destinationPath },
+                        new StoredObject[] { copySo, destinationSo },
+                        ifHeader)) {
+                    return false;
+                }
 
                 if (overwrite) {
 
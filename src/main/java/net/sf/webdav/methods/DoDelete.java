@@ -59,12 +59,16 @@ public class DoDelete extends AbstractMethod {
             String path = getRelativePath(req);
             String parentPath = getParentPath(getCleanPath(path));
 
-            if (!checkLocks(transaction, req, resp, _resourceLocks, parentPath)) {
+            IfHeader ifHeader = new IfHeader(req);
+
+            if (!checkLocks(transaction, req, resp, _resourceLocks, parentPath,
+                    ifHeader)) {
                 resp.setStatus(WebdavStatus.SC_LOCKED);
                 return; // parent is locked
             }
 
-            if (!checkLocks(transaction, req, resp, _resourceLocks, path)) {
+            if (!checkLocks(transaction, req, resp, _resourceLocks, path,
+                    ifHeader)) {
                 resp.setStatus(WebdavStatus.SC_LOCKED);
                 return; // resource is locked
             }
@@ -74,6 +78,22 @@ public class DoDelete extends AbstractMethod {
             if (_resourceLocks.lock(transaction, path, tempLockOwner, false, 0,
                     TEMP_TIMEOUT, TEMPORARY)) {
                 try {
+                    // the resource is only looked up for conditional requests
+                    Preconditions preconditions = new Preconditions(req, false);
+                    if (preconditions.isPresent() || ifHeader.isPresent()) {
+                        StoredObject so = _store.getStoredObject(transaction,
+                                path);
+                        int condition = preconditions.evaluate(so,
+                                getETag(so));
+                        if (condition != WebdavStatus.SC_OK) {
+                            resp.sendError(WebdavStatus.SC_PRECONDITION_FAILED);
+                            return;
+                        }
+                        if (!checkIfHeader(transaction, resp, _resourceLocks,
+                                path, so, ifHeader)) {
+                            return;
+                        }
+                    }
                     Map<String, Integer> errorList = new HashMap<String, Integer>();
                     deleteResource(transaction, path, errorList, req, resp);
                     if (!errorList.isEmpty()) {
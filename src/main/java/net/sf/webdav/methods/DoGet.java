@@ -15,18 +15,38 @@
  */
 package net.sf.webdav.methods;
 
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import net.sf.webdav.IAtomicContentStore;
+import net.sf.webdav.IFileStore;
 import net.sf.webdav.IMimeTyper;
+import net.sf.webdav.IPrecompressedStore;
+import net.sf.webdav.IRandomAccessStore;
 import net.sf.webdav.ITransaction;
 import net.sf.webdav.IWebdavStore;
 import net.sf.webdav.StoredObject;
@@ -38,6 +58,33 @@ public class DoGet extends DoHead {
     private static org.slf4j.Logger LOG = org.slf4j.LoggerFactory
             .getLogger(DoGet.class);
 
+    /**
+     * more ranges (after merging overlapping ones) are answered with the
+     * whole resource
+     */
+    protected static final int MAX_RANGES = 64;
+
+    /**
+     * formats for the folder listing by locale, only used to be cloned. only
+     * the locales of the JVM are kept, the Accept-Language header of a
+     * client can't grow it
+     */
+    private static final ConcurrentMap<Locale, DateFormat> DATE_FORMATS = new ConcurrentHashMap<Locale, DateFormat>();
+
+    private static final Set<Locale> AVAILABLE_LOCALES = new HashSet<Locale>(
+            Arrays.asList(Locale.getAvailableLocales()));
+
+    /**
+     * request attributes of the sendfile support of Tomcat
+     */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+
+    private AsyncSender _asyncSender;
+
     public DoGet(IWebdavStore store, String dftIndexFile, String insteadOf404,
             ResourceLocks resourceLocks, IMimeTyper mimeTyper,
             int contentLengthHeader) {
@@ -46,6 +93,49 @@ public class DoGet extends DoHead {
 
     }
 
+    /**
+     * sends large resources with the given sender instead of on the request
+     * thread, null to send all on the request thread
+     */
+    public void setAsyncSender(AsyncSender asyncSender) {
+        _asyncSender = asyncSender;
+    }
+
+    @Override
+    protected void doBody(ITransaction transaction, HttpServletRequest req,
+            HttpServletResponse resp, String path) throws IOException {
+        if (!sendFile(transaction, req, resp, path, null)
+                && !sendAsync(transaction, req, resp, path)) {
+            doBody(transaction, resp, path);
+        }
+    }
+
+    /**
+     * sends a FileChannel of a store with atomic content on a thread of the
+     * AsyncSender. the channel reads the content it was opened on after the
+     * transaction is committed, other content has to be sent before
+     *
+     * @return false if the resource has to be sent on the request thread
+     */
+    private boolean sendAsync(ITransaction transaction,
+            HttpServletRequest req, HttpServletResponse resp, String path)
+            throws IOException {
+        if (_asyncSender == null || !(_store instanceof IAtomicContentStore)) {
+            return false;
+        }
+        StoredObject so = _store.getStoredObject(transaction, path);
+        if (so == null || so.isNullResource()
+                || !_asyncSender.accepts(req, so.getResourceLength())) {
+            return false;
+        }
+        FileChannel channel = openChannel(transaction, path);
+        if (channel == null) {
+            return false;
+        }
+        _asyncSender.send(req, resp.getOutputStream(), channel);
+        return true;
+    }
+
     protected void doBody(ITransaction transaction, HttpServletResponse resp,
             String path) {
 
@@ -59,6 +149,16 @@ public class DoGet extends DoHead {
                 return;
             }
             OutputStream out = resp.getOutputStream();
+            FileChannel channel = openChannel(transaction, path);
+            if (channel != null) {
+                try {
+                    transferRange(channel, Channels.newChannel(out),
+                            new ByteRange(0, channel.size() - 1));
+                } finally {
+                    close(channel, out);
+                }
+                return;
+            }
             InputStream in = _store.getResourceContent(transaction, path);
             try {
                 int read = -1;
@@ -89,6 +189,280 @@ public class DoGet extends DoHead {
         }
     }
 
+    @Override
+    protected void encodedBody(ITransaction transaction,
+            HttpServletResponse resp, String path, String encoding)
+            throws IOException {
+        long length = getEncodedLength(transaction, path, encoding);
+        setContentLength(resp, length);
+        OutputStream out = resp.getOutputStream();
+        InputStream in = null;
+        try {
+            if (length != -1) {
+                in = ((IPrecompressedStore) _store).getEncodedContent(
+                        transaction, path, encoding);
+            } else {
+                in = _store.getResourceContent(transaction, path);
+                out = new GZIPOutputStream(out, BUF_SIZE);
+            }
+            int read;
+            byte[] copyBuffer = new byte[BUF_SIZE];
+            while ((read = in.read(copyBuffer, 0, copyBuffer.length)) != -1) {
+                out.write(copyBuffer, 0, read);
+            }
+            if (out instanceof GZIPOutputStream) {
+                ((GZIPOutputStream) out).finish();
+            }
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    LOG.warn("Closing InputStream causes Exception!\n"
+                            + e.toString());
+                }
+            }
+            close(null, out);
+        }
+    }
+
+    @Override
+    protected boolean rangeBody(ITransaction transaction,
+            HttpServletRequest req, HttpServletResponse resp, String path,
+            StoredObject so, String mimeType) throws IOException {
+        super.rangeBody(transaction, req, resp, path, so, mimeType);
+
+        String rangeHeader = req.getHeader("Range");
+        long resourceLength = so.getResourceLength();
+        if (rangeHeader == null || resourceLength < 0
+                || !ifRangeMatches(req, so)) {
+            return false;
+        }
+        List<ByteRange> ranges = ByteRange.parse(rangeHeader, resourceLength);
+        if (ranges == null) {
+            return false;
+        }
+        if (ranges.isEmpty()) {
+            resp.setHeader("Content-Range", "bytes */" + resourceLength);
+            resp.sendError(WebdavStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return true;
+        }
+        ranges = ByteRange.coalesce(ranges);
+        if (ranges.size() > MAX_RANGES) {
+            return false;
+        }
+
+        resp.setStatus(WebdavStatus.SC_PARTIAL_CONTENT);
+        byte[][] partHeaders = null;
+        byte[] end = null;
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            resp.setHeader("Content-Range", range.getContentRange(resourceLength));
+            if (sendFile(transaction, req, resp, path, range)) {
+                return true;
+            }
+            setContentLength(resp, range.getLength());
+        } else {
+            String boundary = UUID.randomUUID().toString();
+            resp.setContentType("multipart/byteranges; boundary=" + boundary);
+            partHeaders = new byte[ranges.size()][];
+            long length = 0;
+            for (int i = 0; i < partHeaders.length; i++) {
+                ByteRange range = ranges.get(i);
+                StringBuilder partHeader = new StringBuilder();
+                partHeader.append("\r\n--").append(boundary).append("\r\n");
+                if (mimeType != null) {
+                    partHeader.append("Content-Type: ").append(mimeType)
+                            .append("\r\n");
+                }
+                partHeader.append("Content-Range: ").append(
+                        range.getContentRange(resourceLength)).append(
+                        "\r\n\r\n");
+                partHeaders[i] = partHeader.toString().getBytes("ISO-8859-1");
+                length += partHeaders[i].length + range.getLength();
+            }
+            end = ("\r\n--" + boundary + "--\r\n").getBytes("ISO-8859-1");
+            setContentLength(resp, length + end.length);
+        }
+
+        OutputStream out = resp.getOutputStream();
+        FileChannel channel = null;
+        try {
+            channel = openChannel(transaction, path);
+            WritableByteChannel target = channel != null ? Channels
+                    .newChannel(out) : null;
+            for (int i = 0; i < ranges.size(); i++) {
+                if (partHeaders != null) {
+                    out.write(partHeaders[i]);
+                }
+                ByteRange range = ranges.get(i);
+                if (channel != null) {
+                    transferRange(channel, target, range);
+                } else {
+                    copyRange(transaction, path, out, range);
+                }
+            }
+            if (end != null) {
+                out.write(end);
+            }
+        } finally {
+            close(channel, out);
+        }
+        return true;
+    }
+
+    /**
+     * Lets the container send the file of the resource with sendfile, if
+     * both support it. Only the headers are written by the servlet then.
+     *
+     * @param range
+     *      part of the file to send, null for all of it
+     * @return false if the servlet has to send the content
+     */
+    private boolean sendFile(ITransaction transaction, HttpServletRequest req,
+            HttpServletResponse resp, String path, ByteRange range)
+            throws IOException {
+        if (!(_store instanceof IFileStore)
+                || !Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORT))) {
+            return false;
+        }
+        File file = ((IFileStore) _store).getResourceFile(transaction, path);
+        if (file == null) {
+            return false;
+        }
+        if (range == null) {
+            range = new ByteRange(0, file.length() - 1);
+        }
+        req.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+        req.setAttribute(SENDFILE_START, Long.valueOf(range.getStart()));
+        req.setAttribute(SENDFILE_END, Long.valueOf(range.getEnd() + 1));
+        // sendfile needs the length, whatever no-content-length-headers says
+        if (range.getLength() <= Integer.MAX_VALUE) {
+            resp.setContentLength((int) range.getLength());
+        } else {
+            resp.setHeader("content-length", "" + range.getLength());
+        }
+        return true;
+    }
+
+    /**
+     * @return a channel on the content, null if the store can't provide one
+     */
+    private FileChannel openChannel(ITransaction transaction, String path) {
+        if (_store instanceof IRandomAccessStore) {
+            return ((IRandomAccessStore) _store).getResourceChannel(
+                    transaction, path);
+        }
+        return null;
+    }
+
+    private void close(FileChannel channel, OutputStream out) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("Closing FileChannel causes Exception!\n"
+                        + e.toString());
+            }
+        }
+        try {
+            out.flush();
+            out.close();
+        } catch (IOException e) {
+            LOG.warn("Flushing OutputStream causes Exception!\n"
+                    + e.toString());
+        }
+    }
+
+    /**
+     * If-Range only allows a partial response for an unchanged resource, it
+     * has to match the strong ETag or the exact modification date
+     */
+    private boolean ifRangeMatches(HttpServletRequest req, StoredObject so) {
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            String eTag = getETag(so);
+            return !eTag.startsWith("W/") && ifRange.equals(eTag);
+        }
+        long date;
+        try {
+            date = req.getDateHeader("If-Range");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return so.getLastModified() != null
+                && so.getLastModified().getTime() / 1000 == date / 1000;
+    }
+
+    /**
+     * sends a range from the file without reading it through the heap
+     */
+    private void transferRange(FileChannel channel, WritableByteChannel target,
+            ByteRange range) throws IOException {
+        long position = range.getStart();
+        long remaining = range.getLength();
+        while (remaining > 0) {
+            long sent = channel.transferTo(position, remaining, target);
+            if (sent <= 0) {
+                throw new IOException("resource is shorter than expected");
+            }
+            position += sent;
+            remaining -= sent;
+        }
+    }
+
+    private void copyRange(ITransaction transaction, String path,
+            OutputStream out, ByteRange range) throws IOException {
+        InputStream in;
+        if (_store instanceof IRandomAccessStore) {
+            in = ((IRandomAccessStore) _store).getResourceContent(transaction,
+                    path, range.getStart());
+        } else {
+            in = _store.getResourceContent(transaction, path);
+            skipFully(in, range.getStart());
+        }
+        try {
+            byte[] copyBuffer = new byte[(int) Math.min(BUF_SIZE, range
+                    .getLength())];
+            long remaining = range.getLength();
+            while (remaining > 0) {
+                int read = in.read(copyBuffer, 0, (int) Math.min(
+                        copyBuffer.length, remaining));
+                if (read == -1) {
+                    throw new IOException("resource is shorter than expected");
+                }
+                out.write(copyBuffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            try {
+                in.close();
+            } catch (Exception e) {
+                LOG.warn("Closing InputStream causes Exception!\n"
+                        + e.toString());
+            }
+        }
+    }
+
+    private static void skipFully(InputStream in, long count)
+            throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                // skip() may give up early, read() tells the end of the stream
+                if (in.read() == -1) {
+                    throw new IOException("resource is shorter than expected");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
     protected void folderBody(ITransaction transaction, String path,
             HttpServletResponse resp, HttpServletRequest req)
             throws IOException {
@@ -110,158 +484,236 @@ public class DoGet extends DoHead {
             if (so.isFolder()) {
                 // TODO some folder response (for browsers, DAV tools
                 // use propfind) in html?
-                Locale locale = req.getLocale();
-                DateFormat shortDF= getDateTimeFormat(req.getLocale());
+                DateFormat shortDF = getDateTimeFormat(req.getLocale());
                 resp.setContentType("text/html");
                 resp.setCharacterEncoding("UTF8");
-                OutputStream out = resp.getOutputStream();
                 String[] children = _store.getChildrenNames(transaction, path);
                 // Make sure it's not null
                 children = children == null ? new String[] {} : children;
-                // Sort by name
-                Arrays.sort(children);
-                StringBuilder childrenTemp = new StringBuilder();
-                childrenTemp.append("<html><head><title>Content of folder");
-                childrenTemp.append(path);
-                childrenTemp.append("</title><style type=\"text/css\">");
-                childrenTemp.append(getCSS());
-                childrenTemp.append("</style></head>");
-                childrenTemp.append("<body>");
-                childrenTemp.append(getHeader(transaction, path, resp, req));
-                childrenTemp.append("<table>");
-                childrenTemp.append("<tr><th>Name</th><th>Size</th><th>Created</th><th>Modified</th></tr>");
-                childrenTemp.append("<tr>");
-                childrenTemp.append("<td colspan=\"4\"><a href=\"../\">Parent</a></td></tr>");
-                boolean isEven= false;
-                for (String child : children)
-                {
-                    isEven= !isEven;
-                    childrenTemp.append("<tr class=\"");
-                    childrenTemp.append(isEven ? "even" : "odd");
-                    childrenTemp.append("\">");
-                    childrenTemp.append("<td>");
-                    childrenTemp.append("<a href=\"");
-                    childrenTemp.append(child);
-                    StoredObject obj= _store.getStoredObject(transaction, path+"/"+child);
-                    if (obj == null)
-                    {
-                        LOG.error("Should not return null for "+path+"/"+child);
-                    }
-                    if (obj != null && obj.isFolder())
-                    {
-                        childrenTemp.append("/");
-                    }
-                    childrenTemp.append("\">");
-                    childrenTemp.append(child);
-                    childrenTemp.append("</a></td>");
-                    if (obj != null && obj.isFolder())
-                    {
-                        childrenTemp.append("<td>Folder</td>");
-                    }
-                    else
-                    {
-                        childrenTemp.append("<td>");
-                        if (obj != null )
-                        {
-                            childrenTemp.append(obj.getResourceLength());
-                        }
-                        else
-                        {
-                            childrenTemp.append("Unknown");
-                        }
-                        childrenTemp.append(" Bytes</td>");
-                    }
-                    if (obj != null && obj.getCreationDate() != null)
-                    {
-                        childrenTemp.append("<td>");
-                        childrenTemp.append(shortDF.format(obj.getCreationDate()));
-                        childrenTemp.append("</td>");
-                    }
-                    else
-                    {
-                        childrenTemp.append("<td></td>");
-                    }
-                    if (obj != null  && obj.getLastModified() != null)
-                    {
-                        childrenTemp.append("<td>");
-                        childrenTemp.append(shortDF.format(obj.getLastModified()));
-                        childrenTemp.append("</td>");
+
+                String sort = req.getParameter("sort");
+                boolean descending = "desc".equals(req.getParameter("order"));
+                int offset = Math.max(0, getIntParameter(req, "offset", 0));
+                int limit = getIntParameter(req, "limit", -1);
+                if (limit <= 0) {
+                    limit = children.length;
+                }
+
+                // metadata is only read for the shown children, unless it
+                // is needed for sorting
+                StoredObject[] objects = null;
+                if ("size".equals(sort) || "modified".equals(sort)) {
+                    objects = new StoredObject[children.length];
+                    for (int i = 0; i < children.length; i++) {
+                        objects[i] = _store.getStoredObject(transaction, path
+                                + "/" + children[i]);
                     }
-                    else
-                    {
-                        childrenTemp.append("<td></td>");
+                    sortChildren(children, objects, sort, descending);
+                } else {
+                    sort = "name";
+                    Arrays.sort(children);
+                    if (descending) {
+                        Collections.reverse(Arrays.asList(children));
                     }
-                    childrenTemp.append("</tr>");
                 }
-                childrenTemp.append("</table>");
-                childrenTemp.append(getFooter(transaction, path, resp, req));
-                childrenTemp.append("</body></html>");
-                out.write(childrenTemp.toString().getBytes("UTF-8"));
+                int end = (int) Math.min((long) offset + limit, children.length);
+
+                OutputStream out = resp.getOutputStream();
+                // rough size, only to decide if compressing is worth it
+                if (ContentEncoding.startGzip(req, resp, 400
+                        + Math.max(0, end - offset) * 100)) {
+                    out = new GZIPOutputStream(out, BUF_SIZE);
+                }
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+                        "UTF-8"), BUF_SIZE);
+                writer.write("<html><head><title>Content of folder");
+                writer.write(path);
+                writer.write("</title><link rel=\"stylesheet\" type=\"text/css\" href=\"");
+                writer.write(getStylesheetLink(path, getCSS()));
+                writer.write("\"/></head>");
+                writer.write("<body>");
+                writer.write(getHeader(transaction, path, resp, req));
+                writer.write("<table>");
+                String query = "&order=" + (descending ? "asc" : "desc")
+                        + (limit < children.length ? "&limit=" + limit : "");
+                writer.write("<tr><th><a href=\"?sort=name" + query
+                        + "\">Name</a></th><th><a href=\"?sort=size" + query
+                        + "\">Size</a></th><th>Created</th><th><a href=\"?sort=modified"
+                        + query + "\">Modified</a></th></tr>");
+                writer.write("<tr>");
+                writer.write("<td colspan=\"4\"><a href=\"../\">Parent</a></td></tr>");
+                boolean isEven = false;
+                for (int i = offset; i < end; i++) {
+                    isEven = !isEven;
+                    StoredObject obj = objects != null ? objects[i] : _store
+                            .getStoredObject(transaction, path + "/"
+                                    + children[i]);
+                    writeChild(writer, path, children[i], obj, shortDF, isEven);
+                }
+                writer.write("</table>");
+                if (offset > 0 || end < children.length) {
+                    writePageLinks(writer, sort, descending, offset, limit,
+                            children.length);
+                }
+                writer.write(getFooter(transaction, path, resp, req));
+                writer.write("</body></html>");
+                writer.flush();
+                if (out instanceof GZIPOutputStream) {
+                    ((GZIPOutputStream) out).finish();
+                    out.flush();
+                }
             }
         }
     }
 
+    private void writeChild(Writer writer, String path, String child,
+            StoredObject obj, DateFormat shortDF, boolean isEven)
+            throws IOException {
+        writer.write("<tr class=\"");
+        writer.write(isEven ? "even" : "odd");
+        writer.write("\">");
+        writer.write("<td>");
+        writer.write("<a href=\"");
+        writer.write(child);
+        if (obj == null) {
+            LOG.error("Should not return null for " + path + "/" + child);
+        }
+        if (obj != null && obj.isFolder()) {
+            writer.write("/");
+        }
+        writer.write("\">");
+        writer.write(child);
+        writer.write("</a></td>");
+        if (obj != null && obj.isFolder()) {
+            writer.write("<td>Folder</td>");
+        } else {
+            writer.write("<td>");
+            if (obj != null) {
+                writer.write(String.valueOf(obj.getResourceLength()));
+            } else {
+                writer.write("Unknown");
+            }
+            writer.write(" Bytes</td>");
+        }
+        if (obj != null && obj.getCreationDate() != null) {
+            writer.write("<td>");
+            writer.write(shortDF.format(obj.getCreationDate()));
+            writer.write("</td>");
+        } else {
+            writer.write("<td></td>");
+        }
+        if (obj != null && obj.getLastModified() != null) {
+            writer.write("<td>");
+            writer.write(shortDF.format(obj.getLastModified()));
+            writer.write("</td>");
+        } else {
+            writer.write("<td></td>");
+        }
+        writer.write("</tr>");
+    }
+
+    private void writePageLinks(Writer writer, String sort,
+            boolean descending, int offset, int limit, int count)
+            throws IOException {
+        String query = "?sort=" + sort + (descending ? "&order=desc" : "")
+                + "&limit=" + limit + "&offset=";
+        writer.write("<p>");
+        if (offset > 0) {
+            writer.write("<a href=\"" + query + Math.max(0, offset - limit)
+                    + "\">Previous</a> ");
+        }
+        writer.write((offset + 1) + " - " + Math.min(offset + limit, count)
+                + " of " + count);
+        if (offset + limit < count) {
+            writer.write(" <a href=\"" + query + (offset + limit)
+                    + "\">Next</a>");
+        }
+        writer.write("</p>");
+    }
+
     /**
-     * Return the CSS styles used to display the HTML representation
-     * of the webdav content.
-     * 
-     * @return
+     * sorts the children and their objects together by size (folders first)
+     * or last modification, then by name
      */
-    protected String getCSS()
-    {
-        // The default styles to use
-       String retVal= "body {\n"+
-                "	font-family: Arial, Helvetica, sans-serif;\n"+
-                "}\n"+
-                "h1 {\n"+
-                "	font-size: 1.5em;\n"+
-                "}\n"+
-                "th {\n"+
-                "	background-color: #9DACBF;\n"+
-                "}\n"+
-                "table {\n"+
-                "	border-top-style: solid;\n"+
-                "	border-right-style: solid;\n"+
-                "	border-bottom-style: solid;\n"+
-                "	border-left-style: solid;\n"+
-                "}\n"+
-                "td {\n"+
-                "	margin: 0px;\n"+
-                "	padding-top: 2px;\n"+
-                "	padding-right: 5px;\n"+
-                "	padding-bottom: 2px;\n"+
-                "	padding-left: 5px;\n"+
-                "}\n"+
-                "tr.even {\n"+
-                "	background-color: #CCCCCC;\n"+
-                "}\n"+
-                "tr.odd {\n"+
-                "	background-color: #FFFFFF;\n"+
-                "}\n"+
-                "";
-        try
-        {
-            // Try loading one via class loader and use that one instead
-            ClassLoader cl = getClass().getClassLoader();
-            InputStream iStream = cl.getResourceAsStream("webdav.css");
-            if(iStream != null)
-            {
-                // Found css via class loader, use that one
-                StringBuffer out = new StringBuffer();
-                byte[] b = new byte[4096];
-                for (int n; (n = iStream.read(b)) != -1;)
-                {
-                    out.append(new String(b, 0, n));
-}
-                retVal= out.toString();
+    private static void sortChildren(String[] children,
+            final StoredObject[] objects, final String sort,
+            final boolean descending) {
+        Integer[] order = new Integer[children.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        final String[] names = children.clone();
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                long keyA = sortKey(objects[a], sort);
+                long keyB = sortKey(objects[b], sort);
+                int result = keyA < keyB ? -1 : (keyA == keyB ? names[a]
+                        .compareTo(names[b]) : 1);
+                return descending ? -result : result;
             }
+        });
+        StoredObject[] sortedObjects = objects.clone();
+        for (int i = 0; i < order.length; i++) {
+            children[i] = names[order[i]];
+            objects[i] = sortedObjects[order[i]];
         }
-        catch (Exception ex)
-        {
-            LOG.error("Error in reading webdav.css", ex);
+    }
+
+    private static long sortKey(StoredObject obj, String sort) {
+        if (obj == null) {
+            return -2;
+        }
+        if ("size".equals(sort)) {
+            return obj.isFolder() ? -1 : obj.getResourceLength();
         }
+        return obj.getLastModified() == null ? -1 : obj.getLastModified()
+                .getTime();
+    }
+
+    /**
+     * @return the value of the parameter, dft if it's missing or no number
+     */
+    private static int getIntParameter(HttpServletRequest req, String name,
+            int dft) {
+        String value = req.getParameter(name);
+        if (value == null) {
+            return dft;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return dft;
+        }
+    }
+
+    @Override
+    protected void stylesheetBody(HttpServletResponse resp, byte[] css)
+            throws IOException {
+        resp.getOutputStream().write(css);
+    }
 
-        return retVal;
+    /**
+     * @return the relative link from the folder listing of path to the
+     *  stylesheet, which is served by the root folder
+     */
+    private static String getStylesheetLink(String path, String css) {
+        StringBuilder link = new StringBuilder();
+        int depth = 0;
+        for (String segment : path.split("/")) {
+            if (segment.length() > 0) {
+                depth++;
+            }
+        }
+        if (!path.endsWith("/") && depth > 0) {
+            // the browser resolves relative to the parent
+            depth--;
+        }
+        for (int i = 0; i < depth; i++) {
+            link.append("../");
+        }
+        link.append('?').append(STYLESHEET_PARAMETER).append('=').append(
+                getStylesheetVersion(css));
+        return link.toString();
     }
 
     /**
@@ -302,6 +754,18 @@ public class DoGet extends DoHead {
      */
     protected DateFormat getDateTimeFormat(Locale browserLocale)
     {
-        return SimpleDateFormat.getDateTimeInstance(SimpleDateFormat.SHORT, SimpleDateFormat.MEDIUM, browserLocale);
+        if (browserLocale == null) {
+            browserLocale = Locale.getDefault();
+        }
+        // creating a format is expensive, a clone is cheap
+        DateFormat format = DATE_FORMATS.get(browserLocale);
+        if (format == null) {
+            format = SimpleDateFormat.getDateTimeInstance(SimpleDateFormat.SHORT, SimpleDateFormat.MEDIUM, browserLocale);
+            if (!AVAILABLE_LOCALES.contains(browserLocale)) {
+                return format;
+            }
+            DATE_FORMATS.putIfAbsent(browserLocale, format);
+        }
+        return (DateFormat) format.clone();
     }
  }
@@ -16,12 +16,19 @@ implied.
  */
 package net.sf.webdav.methods;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import net.sf.webdav.IAtomicContentStore;
 import net.sf.webdav.IMimeTyper;
+import net.sf.webdav.IPrecompressedStore;
 import net.sf.webdav.StoredObject;
 import net.sf.webdav.ITransaction;
 import net.sf.webdav.WebdavStatus;
@@ -44,6 +51,48 @@ public class DoHead extends AbstractMethod {
     private static org.slf4j.Logger LOG = org.slf4j.LoggerFactory
             .getLogger(DoHead.class);
 
+    /**
+     * query parameter asking a folder for the stylesheet of the listings,
+     * the listings give the version of the stylesheet as its value
+     */
+    public static final String STYLESHEET_PARAMETER = "webdav-css";
+
+    /**
+     * ms between two checks if webdav.css has changed
+     */
+    private static final long STYLESHEET_CHECK_INTERVAL = 1000;
+
+    private static final String DEFAULT_CSS = "body {\n"+
+            "	font-family: Arial, Helvetica, sans-serif;\n"+
+            "}\n"+
+            "h1 {\n"+
+            "	font-size: 1.5em;\n"+
+            "}\n"+
+            "th {\n"+
+            "	background-color: #9DACBF;\n"+
+            "}\n"+
+            "table {\n"+
+            "	border-top-style: solid;\n"+
+            "	border-right-style: solid;\n"+
+            "	border-bottom-style: solid;\n"+
+            "	border-left-style: solid;\n"+
+            "}\n"+
+            "td {\n"+
+            "	margin: 0px;\n"+
+            "	padding-top: 2px;\n"+
+            "	padding-right: 5px;\n"+
+            "	padding-bottom: 2px;\n"+
+            "	padding-left: 5px;\n"+
+            "}\n"+
+            "tr.even {\n"+
+            "	background-color: #CCCCCC;\n"+
+            "}\n"+
+            "tr.odd {\n"+
+            "	background-color: #FFFFFF;\n"+
+            "}\n";
+
+    private volatile Stylesheet _stylesheet;
+
     public DoHead(IWebdavStore store, String dftIndexFile, String insteadOf404,
             ResourceLocks resourceLocks, IMimeTyper mimeTyper,
             int contentLengthHeader) {
@@ -76,6 +125,9 @@ public class DoHead extends AbstractMethod {
 
         if (so != null) {
             if (so.isFolder()) {
+                if (servletResource(transaction, req, resp, path)) {
+                    return;
+                }
                 if (_dftIndexFile != null && !_dftIndexFile.trim().equals("")) {
                     resp.sendRedirect(resp.encodeRedirectURL(req
                             .getRequestURI()
@@ -90,19 +142,34 @@ public class DoHead extends AbstractMethod {
                 return;
             }
 
-            String tempLockOwner = "doGet" + System.currentTimeMillis()
-                    + req.toString();
-
-            if (_resourceLocks.lock(transaction, path, tempLockOwner, false, 0,
-                    TEMP_TIMEOUT, TEMPORARY)) {
+            // reading doesn't need to place a temporary lock, checking for a
+            // conflicting one is enough. not even that if writes are atomic
+            if (_store instanceof IAtomicContentStore
+                    || _resourceLocks.checkTemporaryLocks(transaction, path, 0)) {
                 try {
 
-                    String eTagMatch = req.getHeader("If-None-Match");
-                    if (eTagMatch != null) {
-                        if (eTagMatch.equals(getETag(so))) {
-                            resp.setStatus(WebdavStatus.SC_NOT_MODIFIED);
-                            return;
-                        }
+                    String mimeType = null;
+                    String encoding = null;
+                    if (so.isResource()) {
+                        mimeType = _mimeTyper.getMimeType(transaction, path,
+                                so);
+                        encoding = getContentEncoding(transaction, req, resp,
+                                path, so, mimeType);
+                    }
+
+                    String eTag = getETag(so);
+                    if (encoding != null) {
+                        eTag = ContentEncoding.encodedETag(eTag, encoding);
+                    }
+                    int condition = new Preconditions(req, true).evaluate(
+                            so, eTag);
+                    if (condition == WebdavStatus.SC_NOT_MODIFIED) {
+                        resp.addHeader("ETag", eTag);
+                        resp.setStatus(WebdavStatus.SC_NOT_MODIFIED);
+                        return;
+                    } else if (condition != WebdavStatus.SC_OK) {
+                        resp.sendError(condition);
+                        return;
                     }
 
                     if (so.isResource()) {
@@ -116,26 +183,8 @@ public class DoHead extends AbstractMethod {
                             long lastModified = so.getLastModified().getTime();
                             resp.setDateHeader("last-modified", lastModified);
 
-                            String eTag = getETag(so);
                             resp.addHeader("ETag", eTag);
 
-                            long resourceLength = so.getResourceLength();
-
-                            if (_contentLength == 1) {
-                                if (resourceLength > 0) {
-                                    if (resourceLength <= Integer.MAX_VALUE) {
-                                        resp
-                                                .setContentLength((int) resourceLength);
-                                    } else {
-                                        resp.setHeader("content-length", ""
-                                                + resourceLength);
-                                        // is "content-length" the right header?
-                                        // is long a valid format?
-                                    }
-                                }
-                            }
-
-                            String mimeType = _mimeTyper.getMimeType(transaction, path);
                             if (mimeType != null) {
                                 resp.setContentType(mimeType);
                             } else {
@@ -147,7 +196,17 @@ public class DoHead extends AbstractMethod {
                                 }
                             }
 
-                            doBody(transaction, resp, path);
+                            if (encoding != null) {
+                                resp.setHeader("Content-Encoding", encoding);
+                                encodedBody(transaction, resp, path, encoding);
+                            } else if (!bUriExists
+                                    || !rangeBody(transaction, req, resp,
+                                            path, so, mimeType)) {
+                                // ranges of the page shown instead of a 404
+                                // make no sense
+                                setContentLength(resp, so.getResourceLength());
+                                doBody(transaction, req, resp, path);
+                            }
                         }
                     } else {
                         folderBody(transaction, path, resp, req);
@@ -159,9 +218,6 @@ public class DoHead extends AbstractMethod {
                             .getRequestURI());
                 } catch (WebdavException e) {
                     resp.sendError(WebdavStatus.SC_INTERNAL_SERVER_ERROR);
-                } finally {
-                    _resourceLocks.unlockTemporaryLockedObjects(transaction,
-                            path, tempLockOwner);
                 }
             } else {
                 resp.sendError(WebdavStatus.SC_INTERNAL_SERVER_ERROR);
@@ -175,14 +231,244 @@ public class DoHead extends AbstractMethod {
 
     }
 
+    /**
+     * sets the content length, unless disabled by the
+     * no-content-length-headers init-param
+     */
+    protected void setContentLength(HttpServletResponse resp, long length) {
+        if (_contentLength == 1) {
+            if (length > 0) {
+                if (length <= Integer.MAX_VALUE) {
+                    resp.setContentLength((int) length);
+                } else {
+                    resp.setHeader("content-length", "" + length);
+                    // is "content-length" the right header?
+                    // is long a valid format?
+                }
+            }
+        }
+    }
+
+    /**
+     * Chooses the content coding of text: a precompressed copy of the store,
+     * or gzip on the fly if it is large. Ranges are always taken from the
+     * resource itself.
+     *
+     * @return the content coding, null to send the resource as it is
+     */
+    protected String getContentEncoding(ITransaction transaction,
+            HttpServletRequest req, HttpServletResponse resp, String path,
+            StoredObject so, String mimeType) {
+        if (!ContentEncoding.isCompressible(mimeType)) {
+            return null;
+        }
+        if (so.getResourceLength() < ContentEncoding.MIN_LENGTH
+                && getEncodedLength(transaction, path, ContentEncoding.GZIP) == -1) {
+            return null;
+        }
+        resp.addHeader("Vary", "Accept-Encoding");
+        if (!ContentEncoding.acceptsGzip(req) || req.getHeader("Range") != null) {
+            return null;
+        }
+        return ContentEncoding.GZIP;
+    }
+
+    /**
+     * @return length of the encoded copy of the store, -1 if it has none
+     */
+    protected long getEncodedLength(ITransaction transaction, String path,
+            String encoding) {
+        if (_store instanceof IPrecompressedStore) {
+            return ((IPrecompressedStore) _store).getEncodedLength(
+                    transaction, path, encoding);
+        }
+        return -1;
+    }
+
+    /**
+     * Answers requests for resources of the servlet itself, which aren't
+     * looked up in the store: the stylesheet of the folder listings, asked
+     * for with STYLESHEET_PARAMETER on a folder. Requests for its current
+     * version may be cached forever.
+     *
+     * @return true if the request was answered
+     */
+    protected boolean servletResource(ITransaction transaction,
+            HttpServletRequest req, HttpServletResponse resp, String path)
+            throws IOException {
+        String requested = req.getParameter(STYLESHEET_PARAMETER);
+        if (requested == null) {
+            return false;
+        }
+        String css = getCSS();
+        String version = getStylesheetVersion(css);
+        String eTag = "\"" + version + "\"";
+        resp.setHeader("ETag", eTag);
+        resp.setHeader("Cache-Control", version.equals(requested) ? "public, max-age=31536000"
+                : "public, max-age=60");
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null
+                && Preconditions.matches(ifNoneMatch, eTag, false)) {
+            resp.setStatus(WebdavStatus.SC_NOT_MODIFIED);
+            return true;
+        }
+        byte[] body = css.getBytes("UTF-8");
+        resp.setContentType("text/css");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setContentLength(body.length);
+        stylesheetBody(resp, body);
+        return true;
+    }
+
+    /**
+     * @return a version of the stylesheet, so a changed one gets a new URL
+     */
+    static String getStylesheetVersion(String css) {
+        return Integer.toHexString(css.hashCode());
+    }
+
+    /**
+     * Return the CSS styles used to display the HTML representation
+     * of the webdav content. The default is the webdav.css found by the
+     * class loader, loaded once and again when its file has changed.
+     * 
+     * @return
+     */
+    protected String getCSS()
+    {
+        Stylesheet stylesheet = _stylesheet;
+        long now = System.currentTimeMillis();
+        if (stylesheet == null || (stylesheet._file != null
+                && now - stylesheet._checkedAt > STYLESHEET_CHECK_INTERVAL)) {
+            synchronized (this) {
+                stylesheet = _stylesheet;
+                if (stylesheet == null) {
+                    stylesheet = loadStylesheet();
+                } else if (stylesheet._file != null
+                        && now - stylesheet._checkedAt > STYLESHEET_CHECK_INTERVAL) {
+                    stylesheet = stylesheet._file.lastModified() == stylesheet._lastModified ? new Stylesheet(
+                            stylesheet._css, stylesheet._file,
+                            stylesheet._lastModified, now)
+                            : loadStylesheet();
+                }
+                _stylesheet = stylesheet;
+            }
+        }
+        return stylesheet._css;
+    }
+
+    private Stylesheet loadStylesheet() {
+        long now = System.currentTimeMillis();
+        try
+        {
+            // Try loading one via class loader and use that one instead
+            ClassLoader cl = getClass().getClassLoader();
+            URL url = cl.getResource("webdav.css");
+            if (url != null)
+            {
+                File file = null;
+                long lastModified = -1;
+                if ("file".equals(url.getProtocol())) {
+                    file = new File(url.toURI());
+                    lastModified = file.lastModified();
+                }
+                InputStream iStream = url.openStream();
+                try {
+                    Reader reader = new InputStreamReader(iStream, "UTF-8");
+                    StringBuilder out = new StringBuilder();
+                    char[] b = new char[4096];
+                    for (int n; (n = reader.read(b)) != -1;)
+                    {
+                        out.append(b, 0, n);
+                    }
+                    return new Stylesheet(out.toString(), file, lastModified,
+                            now);
+                } finally {
+                    iStream.close();
+                }
+            }
+        }
+        catch (Exception ex)
+        {
+            LOG.error("Error in reading webdav.css", ex);
+        }
+        return new Stylesheet(DEFAULT_CSS, null, -1, now);
+    }
+
+    /**
+     * sends the resource in the content coding chosen by
+     * getContentEncoding(), the other headers are set already
+     */
+    protected void encodedBody(ITransaction transaction,
+            HttpServletResponse resp, String path, String encoding)
+            throws IOException {
+        // no body for HEAD, but the length is known for a precompressed copy
+        setContentLength(resp, getEncodedLength(transaction, path, encoding));
+    }
+
+    /**
+     * Sends the ranges of the resource asked for by the Range header. Called
+     * after the other headers of the resource are set.
+     *
+     * @param mimeType
+     *      content type of the resource, null if unknown
+     * @return false if the whole resource has to be sent with doBody()
+     */
+    protected boolean rangeBody(ITransaction transaction,
+            HttpServletRequest req, HttpServletResponse resp, String path,
+            StoredObject so, String mimeType) throws IOException {
+        resp.setHeader("Accept-Ranges", "bytes");
+        // no body for HEAD
+        return false;
+    }
+
+    /**
+     * sends the stylesheet of the folder listings, the headers are set
+     * already
+     */
+    protected void stylesheetBody(HttpServletResponse resp, byte[] css)
+            throws IOException {
+        // no body for HEAD
+    }
+
     protected void folderBody(ITransaction transaction, String path,
             HttpServletResponse resp, HttpServletRequest req)
             throws IOException {
         // no body for HEAD
     }
 
+    /**
+     * sends the whole resource, for methods which need the request to do so
+     */
+    protected void doBody(ITransaction transaction, HttpServletRequest req,
+            HttpServletResponse resp, String path) throws IOException {
+        doBody(transaction, resp, path);
+    }
+
     protected void doBody(ITransaction transaction, HttpServletResponse resp,
             String path) throws IOException {
         // no body for HEAD
     }
+
+    private static class Stylesheet {
+
+        private final String _css;
+
+        /**
+         * the file it was read from, null if it can't change
+         */
+        private final File _file;
+
+        private final long _lastModified;
+
+        private final long _checkedAt;
+
+        private Stylesheet(String css, File file, long lastModified,
+                long checkedAt) {
+            _css = css;
+            _file = file;
+            _lastModified = lastModified;
+            _checkedAt = checkedAt;
+        }
+    }
 }
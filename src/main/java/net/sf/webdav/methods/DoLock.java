@@ -63,6 +63,7 @@ public class DoLock extends AbstractMethod {
         private String _path = null;
         private String _parentPath = null;
         private String _userAgent = null;
+        private IfHeader _ifHeader = null;
     }
 
     public DoLock(IWebdavStore store, ILockingListener lockingListener,
@@ -87,12 +88,16 @@ public class DoLock extends AbstractMethod {
             state._path = getRelativePath(req);
             state._parentPath = getParentPath(getCleanPath(state._path));
 
-            if (!checkLocks(transaction, req, resp, _resourceLocks, state._path)) {
+            state._ifHeader = new IfHeader(req);
+
+            if (!checkLocks(transaction, req, resp, _resourceLocks, state._path,
+                    state._ifHeader)) {
                 resp.setStatus(WebdavStatus.SC_LOCKED);
                 return; // resource is locked
             }
 
-            if (!checkLocks(transaction, req, resp, _resourceLocks, state._parentPath)) {
+            if (!checkLocks(transaction, req, resp, _resourceLocks, state._parentPath,
+                    state._ifHeader)) {
                 resp.setStatus(WebdavStatus.SC_LOCKED);
                 return; // parent is locked
             }
@@ -113,8 +118,13 @@ public class DoLock extends AbstractMethod {
             if (_resourceLocks.lock(transaction, state._path, tempLockOwner, false,
                     0, TEMP_TIMEOUT, TEMPORARY)) {
                 try {
-                    if (req.getHeader("If") != null) {
-                        doRefreshLock(transaction, req, resp, state);
+                    if (state._ifHeader.isPresent()) {
+                        if (checkIfHeader(transaction, resp, _resourceLocks,
+                                state._path, _store.getStoredObject(
+                                        transaction, state._path),
+                                state._ifHeader)) {
+                            doRefreshLock(transaction, req, resp, state);
+                        }
                     } else {
                         doLock(transaction, req, resp, state);
                     }
@@ -240,10 +250,7 @@ public class DoLock extends AbstractMethod {
                                HttpServletRequest req, HttpServletResponse resp, State state)
             throws IOException, LockFailedException {
 
-        String[] lockTokens = getLockIdFromIfHeader(req);
-        String lockToken = null;
-        if (lockTokens != null)
-            lockToken = lockTokens[0];
+        String lockToken = state._ifHeader.getLockToken();
 
         if (lockToken != null) {
             // Getting LockObject of specified lockToken in If header
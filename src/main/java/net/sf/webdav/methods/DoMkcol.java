@@ -58,7 +58,10 @@ public class DoMkcol extends AbstractMethod {
 
             Map<String, Integer> errorList = new HashMap<String, Integer>();
 
-            if (!checkLocks(transaction, req, resp, _resourceLocks, parentPath)) {
+            IfHeader ifHeader = new IfHeader(req);
+
+            if (!checkLocks(transaction, req, resp, _resourceLocks, parentPath,
+                    ifHeader)) {
                 // TODO remove
                 LOG.trace("MkCol on locked resource (parentPath) not executable!"
                         + "\n Sending SC_FORBIDDEN (403) error response!");
@@ -82,6 +85,10 @@ public class DoMkcol extends AbstractMethod {
 					}
 					if (parentPath != null && parentSo.isFolder()) {
                         so = _store.getStoredObject(transaction, path);
+                        if (!checkIfHeader(transaction, resp, _resourceLocks,
+                                path, so, ifHeader)) {
+                            return;
+                        }
                         if (so == null) {
                             _store.createFolder(transaction, path);
                             resp.setStatus(WebdavStatus.SC_CREATED);
@@ -99,15 +106,13 @@ public class DoMkcol extends AbstractMethod {
                                 }
                                 String nullResourceLockToken = nullResourceLo
                                         .getID();
-                                String[] lockTokens = getLockIdFromIfHeader(req);
-                                String lockToken = null;
-                                if (lockTokens != null)
-                                    lockToken = lockTokens[0];
-                                else {
+                                String lockToken = ifHeader.getLockToken();
+                                if (lockToken == null) {
                                     resp.sendError(WebdavStatus.SC_BAD_REQUEST);
                                     return;
                                 }
-                                if (lockToken.equals(nullResourceLockToken)) {
+                                if (ifHeader.hasLockToken(nullResourceLockToken)) {
+                                    lockToken = nullResourceLockToken;
                                     so.setNullResource(false);
                                     so.setFolder(true);
 
@@ -17,6 +17,7 @@ package net.sf.webdav.methods;
 
 import net.sf.webdav.ITransaction;
 import net.sf.webdav.IWebdavStore;
+import net.sf.webdav.StoredObject;
 import net.sf.webdav.WebdavStatus;
 import net.sf.webdav.exceptions.AccessDeniedException;
 import net.sf.webdav.exceptions.LockFailedException;
@@ -60,7 +61,10 @@ public class DoMove extends AbstractMethod {
             String sourcePath = getRelativePath(req);
             Map<String, Integer> errorList = new HashMap<String, Integer>();
 
-            if (!checkLocks(transaction, req, resp, _resourceLocks, sourcePath)) {
+            IfHeader ifHeader = new IfHeader(req);
+
+            if (!checkLocks(transaction, req, resp, _resourceLocks, sourcePath,
+                    ifHeader)) {
                 resp.setStatus(WebdavStatus.SC_LOCKED);
                 return;
             }
@@ -72,7 +76,7 @@ public class DoMove extends AbstractMethod {
             }
 
             if (!checkLocks(transaction, req, resp, _resourceLocks,
-                    destinationPath)) {
+                    destinationPath, ifHeader)) {
                 resp.setStatus(WebdavStatus.SC_LOCKED);
                 return;
             }
@@ -85,9 +89,25 @@ public class DoMove extends AbstractMethod {
                 try {
 
                     if(_store.supportsMoveOperation()){
-                        _store.moveResource(transaction, sourcePath, RequestUtil.parseDestinationPath(req, destinationPath));
+                        String destination = RequestUtil.parseDestinationPath(
+                                req, destinationPath);
+                        if (ifHeader.isPresent()) {
+                            StoredObject sourceSo = _store.getStoredObject(
+                                    transaction, sourcePath);
+                            StoredObject destinationSo = _store
+                                    .getStoredObject(transaction, destination);
+                            if (!checkIfHeader(transaction, resp,
+                                    _resourceLocks, new String[] { sourcePath,
+                                            destination }, new StoredObject[] {
+                                            sourceSo, destinationSo }, ifHeader)) {
+                                return;
+                            }
+                        }
+                        _store.moveResource(transaction, sourcePath, destination);
                     }else{
-                        if (_doCopy.copyResource(transaction, req, resp)) {
+                        // copyResource() checks the If header
+                        if (_doCopy.copyResource(transaction, req, resp,
+                                ifHeader)) {
 
                             errorList = new HashMap<String, Integer>();
                             _doDelete.deleteResource(transaction, sourcePath,
@@ -119,5 +139,4 @@ public class DoMove extends AbstractMethod {
         }
 
     }
-
 }
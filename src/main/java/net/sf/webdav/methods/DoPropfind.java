@@ -16,6 +16,7 @@
 package net.sf.webdav.methods;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
@@ -89,12 +90,11 @@ public class DoPropfind extends AbstractMethod {
 
         // Retrieve the resources
         String path = getCleanPath(getRelativePath(req));
-        String tempLockOwner = "doPropfind" + System.currentTimeMillis()
-                + req.toString();
         _depth = getDepth(req);
 
-        if (_resourceLocks.lock(transaction, path, tempLockOwner, false,
-                _depth, TEMP_TIMEOUT, TEMPORARY)) {
+        // reading doesn't need to place a temporary lock, checking for a
+        // conflicting one is enough
+        if (_resourceLocks.checkTemporaryLocks(transaction, path, _depth)) {
 
             StoredObject so = null;
             try {
@@ -152,24 +152,23 @@ public class DoPropfind extends AbstractMethod {
                 resp.setContentType("text/xml; charset=UTF-8");
 
                 // Create multistatus object
-                XMLWriter generatedXML = new XMLWriter(resp.getWriter(),
-                        namespaces);
+                XMLWriter generatedXML = new XMLWriter(namespaces);
                 generatedXML.writeXMLHeader();
                 generatedXML
                         .writeElement("DAV::multistatus", XMLWriter.OPENING);
-                if (_depth == 0) {
-                    parseProperties(transaction, req, generatedXML, path,
-                            propertyFindType, properties, _mimeTyper
-                                    .getMimeType(transaction, path));
-                } else {
-                    recursiveParseProperties(transaction, path, req,
-                            generatedXML, propertyFindType, properties, _depth,
-                            _mimeTyper.getMimeType(transaction, path));
-                }
+                recursiveParseProperties(transaction, path, so, req,
+                        generatedXML, propertyFindType, properties, _depth);
                 generatedXML
                         .writeElement("DAV::multistatus", XMLWriter.CLOSING);
 
-                generatedXML.sendData();
+                String body = generatedXML.toString();
+                if (ContentEncoding.startGzip(req, resp, body.length())) {
+                    ContentEncoding.writeGzip(resp, body.getBytes("UTF-8"));
+                } else {
+                    Writer writer = resp.getWriter();
+                    writer.write(body);
+                    writer.flush();
+                }
             } catch (AccessDeniedException e) {
                 resp.sendError(WebdavStatus.SC_FORBIDDEN);
             } catch (WebdavException e) {
@@ -178,9 +177,6 @@ public class DoPropfind extends AbstractMethod {
             } catch (ServletException e) {
                 LOG.warn("Sending internal error!", e);
                 resp.sendError(WebdavStatus.SC_INTERNAL_SERVER_ERROR);
-            } finally {
-                _resourceLocks.unlockTemporaryLockedObjects(transaction, path,
-                        tempLockOwner);
             }
         } else {
             Map<String, Integer> errorList = new HashMap<String, Integer>();
@@ -194,6 +190,8 @@ public class DoPropfind extends AbstractMethod {
      * 
      * @param currentPath
      *      the current path
+     * @param so
+     *      the object at currentPath
      * @param req
      *      HttpServletRequest
      * @param generatedXML
@@ -205,12 +203,12 @@ public class DoPropfind extends AbstractMethod {
      *      if an error in the underlying store occurs
      */
     private void recursiveParseProperties(ITransaction transaction,
-            String currentPath, HttpServletRequest req, XMLWriter generatedXML,
-            int propertyFindType, Vector<String> properties, int depth,
-            String mimeType) throws WebdavException {
+            String currentPath, StoredObject so, HttpServletRequest req,
+            XMLWriter generatedXML, int propertyFindType,
+            Vector<String> properties, int depth) throws WebdavException {
 
-        parseProperties(transaction, req, generatedXML, currentPath,
-                propertyFindType, properties, mimeType);
+        parseProperties(transaction, req, generatedXML, currentPath, so,
+                propertyFindType, properties);
 
         if (depth > 0) {
             // no need to get name if depth is already zero
@@ -224,9 +222,15 @@ public class DoPropfind extends AbstractMethod {
                     newPath += "/";
                 }
                 newPath += name;
-                recursiveParseProperties(transaction, newPath, req,
-                        generatedXML, propertyFindType, properties, depth - 1,
-                        mimeType);
+                // each member is looked up once, for all its properties
+                StoredObject child = _store.getStoredObject(transaction,
+                        newPath);
+                if (child == null) {
+                    LOG.warn("Should not return null for " + newPath);
+                    continue;
+                }
+                recursiveParseProperties(transaction, newPath, child, req,
+                        generatedXML, propertyFindType, properties, depth - 1);
             }
         }
     }
@@ -240,6 +244,8 @@ public class DoPropfind extends AbstractMethod {
      *      XML response to the Propfind request
      * @param path
      *      Path of the current resource
+     * @param so
+     *      the current resource
      * @param type
      *      Propfind type
      * @param propertiesVector
@@ -248,12 +254,13 @@ public class DoPropfind extends AbstractMethod {
      */
     private void parseProperties(ITransaction transaction,
             HttpServletRequest req, XMLWriter generatedXML, String path,
-            int type, Vector<String> propertiesVector, String mimeType)
+            StoredObject so, int type, Vector<String> propertiesVector)
             throws WebdavException {
 
-        StoredObject so = _store.getStoredObject(transaction, path);
-
         boolean isFolder = so.isFolder();
+        // from the object and the extension, no store call
+        String mimeType = isFolder ? null : _mimeTyper.getMimeType(
+                transaction, path, so);
         final String creationdate = creationDateFormat(so.getCreationDate());
         final String lastModified = lastModifiedDateFormat(so.getLastModified());
         String resourceLength = String.valueOf(so.getResourceLength());
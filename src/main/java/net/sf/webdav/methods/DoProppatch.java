@@ -59,12 +59,16 @@ public class DoProppatch extends AbstractMethod {
 
         Map<String, Integer> errorList = new HashMap<String, Integer>();
 
-        if (!checkLocks(transaction, req, resp, _resourceLocks, parentPath)) {
+        IfHeader ifHeader = new IfHeader(req);
+
+        if (!checkLocks(transaction, req, resp, _resourceLocks, parentPath,
+                ifHeader)) {
             resp.setStatus(WebdavStatus.SC_LOCKED);
             return; // parent is locked
         }
 
-        if (!checkLocks(transaction, req, resp, _resourceLocks, path)) {
+        if (!checkLocks(transaction, req, resp, _resourceLocks, path,
+                ifHeader)) {
             resp.setStatus(WebdavStatus.SC_LOCKED);
             return; // resource is locked
         }
@@ -99,9 +103,13 @@ public class DoProppatch extends AbstractMethod {
                     resp.sendError(WebdavStatus.SC_METHOD_NOT_ALLOWED);
                     return;
                 }
+                if (!checkIfHeader(transaction, resp, _resourceLocks, path, so,
+                        ifHeader)) {
+                    return;
+                }
 
-                String[] lockTokens = getLockIdFromIfHeader(req);
-                boolean lockTokenMatchesIfHeader = (lockTokens != null && lockTokens[0].equals(lo.getID()));
+                boolean lockTokenMatchesIfHeader = (lo != null && ifHeader
+                        .hasLockToken(lo.getID()));
                 if (lo != null && lo.isExclusive() && !lockTokenMatchesIfHeader) {
                     // Object on specified path is LOCKED
                     errorList = new HashMap<String, Integer>();
@@ -15,13 +15,18 @@
  */
 package net.sf.webdav.methods;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.Principal;
 import java.util.HashMap;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import net.sf.webdav.IDigestStore;
+import net.sf.webdav.IResumableStore;
 import net.sf.webdav.ITransaction;
 import net.sf.webdav.IWebdavStore;
 import net.sf.webdav.StoredObject;
@@ -42,6 +47,12 @@ public class DoPut extends AbstractMethod {
     private final boolean _readOnly;
     private final boolean _lazyFolderCreationOnPut;
 
+    /**
+     * digest kept with the content, null for none
+     */
+    private String _digestAlgorithm;
+
+    private volatile UploadScheduler _uploadScheduler;
 
     public DoPut(IWebdavStore store, IResourceLocks resLocks, boolean readOnly,
             boolean lazyFolderCreationOnPut) {
@@ -51,10 +62,55 @@ public class DoPut extends AbstractMethod {
         _lazyFolderCreationOnPut = lazyFolderCreationOnPut;
     }
 
+    /**
+     * Computes a digest of each uploaded content while the store writes it,
+     * and hands it to stores which keep it for their ETags (IDigestStore).
+     *
+     * @param algorithm
+     *      a MessageDigest algorithm, e.g. "SHA-256", null for none
+     * @throws IllegalArgumentException
+     *      if the algorithm is unknown
+     */
+    public void setDigestAlgorithm(String algorithm) {
+        if (algorithm != null) {
+            ContentDigest.checkAlgorithm(algorithm);
+        }
+        _digestAlgorithm = algorithm;
+    }
+
+    /**
+     * @param scheduler
+     *      bounds concurrent uploads and their rate, null for no limits
+     */
+    public void setUploadScheduler(UploadScheduler scheduler) {
+        _uploadScheduler = scheduler;
+    }
+
     public void execute(ITransaction transaction, HttpServletRequest req,
             HttpServletResponse resp) throws IOException, LockFailedException {
         LOG.trace("-- " + this.getClass().getName());
 
+        UploadScheduler scheduler = _uploadScheduler;
+        if (scheduler == null) {
+            put(transaction, req, resp, null);
+            return;
+        }
+        if (!scheduler.admit()) {
+            resp.setHeader("Retry-After", String.valueOf(scheduler
+                    .getRetryAfter()));
+            resp.sendError(WebdavStatus.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        try {
+            put(transaction, req, resp, scheduler);
+        } finally {
+            scheduler.release();
+        }
+    }
+
+    private void put(ITransaction transaction, HttpServletRequest req,
+            HttpServletResponse resp, UploadScheduler scheduler)
+            throws IOException, LockFailedException {
         if (!_readOnly) {
             String path = getRelativePath(req);
             String parentPath = getParentPath(path);
@@ -63,12 +119,16 @@ public class DoPut extends AbstractMethod {
 
             Map<String, Integer> errorList = new HashMap<String, Integer>();
 
-            if (!checkLocks(transaction, req, resp, _resourceLocks, parentPath)) {
+            IfHeader ifHeader = new IfHeader(req);
+
+            if (!checkLocks(transaction, req, resp, _resourceLocks, parentPath,
+                    ifHeader)) {
                 resp.setStatus(WebdavStatus.SC_LOCKED);
                 return; // parent is locked
             }
 
-            if (!checkLocks(transaction, req, resp, _resourceLocks, path)) {
+            if (!checkLocks(transaction, req, resp, _resourceLocks, path,
+                    ifHeader)) {
                 resp.setStatus(WebdavStatus.SC_LOCKED);
                 return; // resource is locked
             }
@@ -78,6 +138,8 @@ public class DoPut extends AbstractMethod {
             if (_resourceLocks.lock(transaction, path, tempLockOwner, false, 0,
                     TEMP_TIMEOUT, TEMPORARY)) {
                 StoredObject parentSo, so = null;
+                boolean created = false;
+                ContentDigest digest = null;
                 try {
                     parentSo = _store.getStoredObject(transaction, parentPath);
                     if (parentPath != null && parentSo != null
@@ -98,8 +160,36 @@ public class DoPut extends AbstractMethod {
 
                     so = _store.getStoredObject(transaction, path);
 
+                    int condition = new Preconditions(req, false).evaluate(
+                            so, getETag(so));
+                    if (condition != WebdavStatus.SC_OK) {
+                        resp.sendError(WebdavStatus.SC_PRECONDITION_FAILED);
+                        return;
+                    }
+                    if (!checkIfHeader(transaction, resp, _resourceLocks, path,
+                            so, ifHeader)) {
+                        return;
+                    }
+
+                    String contentRange = req.getHeader("Content-Range");
+                    if (contentRange != null) {
+                        putPart(transaction, req, resp, path, so,
+                                contentRange, ifHeader, userAgent, scheduler);
+                        return;
+                    }
+
+                    String algorithm = _store instanceof IDigestStore ? _digestAlgorithm
+                            : null;
+                    try {
+                        digest = ContentDigest.forRequest(req, algorithm);
+                    } catch (IllegalArgumentException e) {
+                        resp.sendError(WebdavStatus.SC_BAD_REQUEST);
+                        return;
+                    }
+
                     if (so == null) {
                         _store.createResource(transaction, path);
+                        created = true;
                         // resp.setStatus(WebdavStatus.SC_CREATED);
                     } else {
                         // This has already been created, just update the data
@@ -114,15 +204,13 @@ public class DoPut extends AbstractMethod {
                             }
                             String nullResourceLockToken = nullResourceLo
                                     .getID();
-                            String[] lockTokens = getLockIdFromIfHeader(req);
-                            String lockToken = null;
-                            if (lockTokens != null) {
-                                lockToken = lockTokens[0];
-                            } else {
+                            String lockToken = ifHeader.getLockToken();
+                            if (lockToken == null) {
                                 resp.sendError(WebdavStatus.SC_BAD_REQUEST);
                                 return;
                             }
-                            if (lockToken.equals(nullResourceLockToken)) {
+                            if (ifHeader.hasLockToken(nullResourceLockToken)) {
+                                lockToken = nullResourceLockToken;
                                 so.setNullResource(false);
                                 so.setFolder(false);
 
@@ -146,10 +234,19 @@ public class DoPut extends AbstractMethod {
                     // User-Agent workarounds
                     doUserAgentWorkaround(resp, userAgent);
 
-                    // setting resourceContent
-                    long resourceLength = _store
-                            .setResourceContent(transaction, path, req
-                                    .getInputStream(), null, null);
+                    // setting resourceContent, the content is read only once
+                    InputStream content = getContent(transaction, req,
+                            scheduler);
+                    if (digest != null) {
+                        content = digest.wrap(content);
+                    }
+                    long resourceLength = _store.setResourceContent(
+                            transaction, path, content, null, null);
+                    if (digest != null && digest.getDigest() != null) {
+                        ((IDigestStore) _store).setContentDigest(transaction,
+                                path, digest.getAlgorithm(), digest
+                                        .getDigest());
+                    }
 
                     so = _store.getStoredObject(transaction, path);
                     if (resourceLength != -1)
@@ -159,7 +256,16 @@ public class DoPut extends AbstractMethod {
                 } catch (AccessDeniedException e) {
                     resp.sendError(WebdavStatus.SC_FORBIDDEN);
                 } catch (WebdavException e) {
-                    resp.sendError(WebdavStatus.SC_INTERNAL_SERVER_ERROR);
+                    if (created) {
+                        // don't leave an empty resource behind a failed upload
+                        removeQuietly(transaction, path);
+                    }
+                    if (digest != null && digest.isMismatch()) {
+                        // damaged on the way
+                        resp.sendError(WebdavStatus.SC_BAD_REQUEST);
+                    } else {
+                        resp.sendError(WebdavStatus.SC_INTERNAL_SERVER_ERROR);
+                    }
                 } finally {
                     _resourceLocks.unlockTemporaryLockedObjects(transaction,
                             path, tempLockOwner);
@@ -173,6 +279,199 @@ public class DoPut extends AbstractMethod {
 
     }
 
+    /**
+     * Stages one part of a resumable upload, given by "Content-Range: bytes
+     * first-last/length", and commits the upload with its last byte. Until
+     * then the response is 202 with a "Range: bytes=0-n" header telling
+     * what is staged; "Content-Range: bytes *&#47;length" only asks for that.
+     * A part may start anywhere up to the end of the staged bytes, 0 starts
+     * over. Each client has its own upload, told apart by its lock token or
+     * else its user. A Content-MD5 header is checked against the part, a
+     * Digest header of the last part against the assembled content.
+     */
+    private void putPart(ITransaction transaction, HttpServletRequest req,
+            HttpServletResponse resp, String path, StoredObject so,
+            String contentRange, IfHeader ifHeader, String userAgent,
+            UploadScheduler scheduler) throws IOException {
+        long[] range = parseContentRange(contentRange);
+        if (!(_store instanceof IResumableStore) || range == null) {
+            // a part must not be taken for the whole content
+            resp.sendError(WebdavStatus.SC_BAD_REQUEST);
+            return;
+        }
+        if (so != null && (so.isFolder() || so.isNullResource())) {
+            resp.sendError(WebdavStatus.SC_CONFLICT);
+            return;
+        }
+        ContentDigest partDigest, uploadDigest;
+        try {
+            partDigest = ContentDigest.forPart(req);
+            uploadDigest = ContentDigest.forUpload(req,
+                    _store instanceof IDigestStore ? _digestAlgorithm : null);
+        } catch (IllegalArgumentException e) {
+            resp.sendError(WebdavStatus.SC_BAD_REQUEST);
+            return;
+        }
+        IResumableStore store = (IResumableStore) _store;
+        String uploadId = getUploadId(transaction, ifHeader);
+        long staged = Math.max(0, store.getUploadOffset(transaction, path,
+                uploadId));
+        if (range[0] == -1) {
+            setStagedRange(resp, staged);
+            resp.setStatus(WebdavStatus.SC_ACCEPTED);
+            return;
+        }
+        if (range[0] > staged) {
+            setStagedRange(resp, staged);
+            resp.sendError(WebdavStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        InputStream content = getContent(transaction, req, scheduler);
+        if (partDigest != null) {
+            content = partDigest.wrap(content);
+        }
+        try {
+            staged = store.writeUpload(transaction, path, uploadId, content,
+                    range[0]);
+        } catch (WebdavException e) {
+            if (partDigest == null || !partDigest.isMismatch()) {
+                throw e;
+            }
+            // damaged on the way, drop the part
+            store.writeUpload(transaction, path, uploadId,
+                    new ByteArrayInputStream(new byte[0]), range[0]);
+            resp.sendError(WebdavStatus.SC_BAD_REQUEST);
+            return;
+        }
+        if (staged > range[1] + 1) {
+            // more than announced, keep the announced part only
+            store.writeUpload(transaction, path, uploadId,
+                    new ByteArrayInputStream(new byte[0]), range[1] + 1);
+            resp.sendError(WebdavStatus.SC_BAD_REQUEST);
+            return;
+        }
+        if (staged < range[2]) {
+            setStagedRange(resp, staged);
+            resp.setStatus(WebdavStatus.SC_ACCEPTED);
+            return;
+        }
+        if (uploadDigest != null
+                && !matches(store.getUploadContent(transaction, path,
+                        uploadId), uploadDigest)) {
+            // the parts don't add up to what the client sent
+            store.cancelUpload(transaction, path, uploadId);
+            resp.sendError(WebdavStatus.SC_BAD_REQUEST);
+            return;
+        }
+        store.commitUpload(transaction, path, uploadId);
+        if (uploadDigest != null && uploadDigest.getDigest() != null) {
+            ((IDigestStore) _store).setContentDigest(transaction, path,
+                    uploadDigest.getAlgorithm(), uploadDigest.getDigest());
+        }
+        doUserAgentWorkaround(resp, userAgent);
+    }
+
+    /**
+     * @return the lock token of the client, else its user name. null if it
+     *  has neither
+     */
+    private static String getUploadId(ITransaction transaction,
+            IfHeader ifHeader) {
+        String lockToken = ifHeader.getLockToken();
+        if (lockToken != null) {
+            return lockToken;
+        }
+        Principal principal = transaction == null ? null : transaction
+                .getPrincipal();
+        return principal == null ? null : principal.getName();
+    }
+
+    /**
+     * @return false if the content doesn't match the digest headers, it's
+     *  read to its end and closed
+     */
+    private static boolean matches(InputStream content, ContentDigest digest)
+            throws IOException {
+        InputStream in = digest.wrap(content);
+        try {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // digested on the way
+            }
+            return true;
+        } catch (IOException e) {
+            if (digest.isMismatch()) {
+                return false;
+            }
+            throw e;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the request body, at the rate the scheduler allows the user
+     */
+    private static InputStream getContent(ITransaction transaction,
+            HttpServletRequest req, UploadScheduler scheduler)
+            throws IOException {
+        InputStream in = req.getInputStream();
+        if (scheduler == null) {
+            return in;
+        }
+        return scheduler.throttle(transaction.getPrincipal(), in);
+    }
+
+    private static void setStagedRange(HttpServletResponse resp, long staged) {
+        if (staged > 0) {
+            resp.setHeader("Range", "bytes=0-" + (staged - 1));
+        }
+    }
+
+    /**
+     * @return first byte, last byte and length of "bytes first-last/length",
+     *  first and last are -1 for "bytes *&#47;length". null if the value is
+     *  malformed or has no length
+     */
+    static long[] parseContentRange(String value) {
+        value = value.trim();
+        if (!value.startsWith("bytes ")) {
+            return null;
+        }
+        int slash = value.indexOf('/');
+        if (slash == -1) {
+            return null;
+        }
+        String positions = value.substring(6, slash).trim();
+        try {
+            long length = Long.parseLong(value.substring(slash + 1).trim());
+            if (positions.equals("*")) {
+                return length < 0 ? null : new long[] { -1, -1, length };
+            }
+            int dash = positions.indexOf('-');
+            if (dash == -1) {
+                return null;
+            }
+            long first = Long.parseLong(positions.substring(0, dash).trim());
+            long last = Long.parseLong(positions.substring(dash + 1).trim());
+            if (first < 0 || last < first || last >= length) {
+                return null;
+            }
+            return new long[] { first, last, length };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void removeQuietly(ITransaction transaction, String path) {
+        try {
+            _store.removeObject(transaction, path);
+        } catch (WebdavException e) {
+            LOG.warn("can't remove " + path + " after a failed upload: " + e);
+        }
+    }
+
     /**
      * @param resp
      * @param userAgent
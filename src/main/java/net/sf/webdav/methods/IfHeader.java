@@ -0,0 +1,471 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.methods;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import net.sf.webdav.fromcatalina.RequestUtil;
+
+/**
+ * The If header of a request (RFC 4918, section 10.4):
+ *
+ * <pre>
+ * If = ( 1*No-tag-list | 1*Tagged-list )
+ * No-tag-list = List
+ * Tagged-list = Resource-Tag 1*List
+ * List = "(" 1*Condition ")"
+ * Condition = ["Not"] (State-token | "[" entity-tag "]")
+ * </pre>
+ *
+ * The header is read and parsed in one pass the first time it is needed, so
+ * a method can create one IfHeader per request and hand it to all of its
+ * lock checks without reading the header if no resource is locked.
+ */
+public class IfHeader {
+
+    private static final String NO_LOCK = "DAV:no-lock";
+
+    private static final String[] NO_TOKENS = new String[0];
+
+    /**
+     * one condition of a list
+     */
+    public static class Condition {
+
+        private final boolean _not;
+
+        private final boolean _entityTag;
+
+        private final String _value;
+
+        Condition(boolean not, boolean entityTag, String value) {
+            _not = not;
+            _entityTag = entityTag;
+            _value = value;
+        }
+
+        /**
+         * @return true if the condition is negated with "Not"
+         */
+        public boolean isNot() {
+            return _not;
+        }
+
+        /**
+         * @return true for an entity tag, false for a state token
+         */
+        public boolean isEntityTag() {
+            return _entityTag;
+        }
+
+        /**
+         * @return the state token without the angle brackets, or the entity
+         *  tag including its quotes (and W/)
+         */
+        public String getValue() {
+            return _value;
+        }
+    }
+
+    /**
+     * a list of conditions which all have to be true
+     */
+    public static class ConditionList {
+
+        private final String _resourceTag;
+
+        private final List<Condition> _conditions = new ArrayList<Condition>(2);
+
+        ConditionList(String resourceTag) {
+            _resourceTag = resourceTag;
+        }
+
+        /**
+         * @return the resource the list applies to, null for an untagged
+         *  list
+         */
+        public String getResourceTag() {
+            return _resourceTag;
+        }
+
+        public List<Condition> getConditions() {
+            return _conditions;
+        }
+    }
+
+    private HttpServletRequest _req;
+
+    private boolean _parsed = false;
+
+    private boolean _present = false;
+
+    private boolean _malformed = false;
+
+    private List<ConditionList> _lists = Collections.emptyList();
+
+    /**
+     * lock ids of all submitted state tokens
+     */
+    private String[] _lockTokens = NO_TOKENS;
+
+    /**
+     * @param req
+     *      request whose If header is parsed on first use, and which maps
+     *      resource tags to paths
+     */
+    public IfHeader(HttpServletRequest req) {
+        _req = req;
+    }
+
+    /**
+     * parses the given value right away
+     *
+     * @param value
+     *      value of an If header, may be null
+     */
+    public static IfHeader parse(String value) {
+        IfHeader ifHeader = new IfHeader(null);
+        ifHeader.parseValue(value);
+        return ifHeader;
+    }
+
+    /**
+     * @return true if the request has a non-empty If header
+     */
+    public boolean isPresent() {
+        ensureParsed();
+        return _present;
+    }
+
+    /**
+     * @return true if the header doesn't follow the grammar. the lists and
+     *  tokens up to the error are kept
+     */
+    public boolean isMalformed() {
+        ensureParsed();
+        return _malformed;
+    }
+
+    public List<ConditionList> getLists() {
+        ensureParsed();
+        return _lists;
+    }
+
+    /**
+     * A lock token counts as submitted wherever it appears in the header,
+     * even in a "Not" condition or a list for another resource.
+     *
+     * @return the lock ids of all state tokens in the order of the header,
+     *  without the "opaquelocktoken:" prefix
+     */
+    public String[] getLockTokens() {
+        ensureParsed();
+        return _lockTokens;
+    }
+
+    /**
+     * @return the first submitted lock id, null if there is none
+     */
+    public String getLockToken() {
+        ensureParsed();
+        return _lockTokens.length > 0 ? _lockTokens[0] : null;
+    }
+
+    /**
+     * @param id
+     *      id of a LockedObject
+     * @return true if the lock token was submitted
+     */
+    public boolean hasLockToken(String id) {
+        ensureParsed();
+        for (String token : _lockTokens) {
+            if (token.equals(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates the header for one resource: it is true if any of the lists
+     * which apply to the resource is true, or if none applies. A list is true
+     * if all its conditions are.
+     *
+     * @param path
+     *      path of the resource relative to the servlet, resource tags are
+     *      mapped to such paths like the Destination header
+     * @param lockIds
+     *      ids of the locks covering the resource: its own and the ones of
+     *      parents locked with a depth
+     * @param entityTag
+     *      current entity tag of the resource, null if it has none
+     * @return false if the request must fail with 412 (Precondition Failed)
+     */
+    public boolean evaluate(String path, String[] lockIds, String entityTag) {
+        return evaluate(new String[] { path }, new String[][] { lockIds },
+                new String[] { entityTag });
+    }
+
+    /**
+     * Evaluates the header for the resources a request works on, like the
+     * source and the destination of COPY: it is true if any list is true
+     * for a resource it applies to, or if no list applies to any of them.
+     * Untagged lists apply to each of them.
+     *
+     * @param paths
+     *      paths of the resources relative to the servlet
+     * @param lockIds
+     *      ids of the locks covering each resource
+     * @param entityTags
+     *      current entity tag of each resource, null if it has none
+     * @return false if the request must fail with 412 (Precondition Failed)
+     */
+    public boolean evaluate(String[] paths, String[][] lockIds,
+            String[] entityTags) {
+        ensureParsed();
+        boolean applied = false;
+        for (ConditionList list : _lists) {
+            for (int i = 0; i < paths.length; i++) {
+                if (list._resourceTag != null
+                        && !tagMatches(list._resourceTag, paths[i])) {
+                    continue;
+                }
+                applied = true;
+                if (matches(list, lockIds[i], entityTags[i])) {
+                    return true;
+                }
+            }
+        }
+        return !applied;
+    }
+
+    private static boolean matches(ConditionList list, String[] lockIds,
+            String entityTag) {
+        for (Condition condition : list._conditions) {
+            boolean state;
+            if (condition._entityTag) {
+                state = condition._value.equals(entityTag);
+            } else {
+                state = !NO_LOCK.equals(condition._value)
+                        && contains(lockIds, toLockId(condition._value));
+            }
+            if (state == condition._not) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureParsed() {
+        if (!_parsed) {
+            parseValue(_req != null ? _req.getHeader("If") : null);
+        }
+    }
+
+    /**
+     * single pass over the header value, only the tokens and tags are
+     * copied
+     */
+    private void parseValue(String value) {
+        _parsed = true;
+        if (value == null) {
+            return;
+        }
+        int length = value.length();
+        int pos = skipWhitespace(value, 0);
+        if (pos == length) {
+            return;
+        }
+        _present = true;
+        _lists = new ArrayList<ConditionList>(2);
+        List<String> lockTokens = new ArrayList<String>(2);
+
+        String resourceTag = null;
+        Boolean tagged = null;
+        while (pos < length) {
+            char c = value.charAt(pos);
+            if (c == '<') {
+                // resource tag of the following lists
+                if (tagged == Boolean.FALSE) {
+                    _malformed = true;
+                    break;
+                }
+                int end = value.indexOf('>', pos + 1);
+                if (end == -1) {
+                    _malformed = true;
+                    break;
+                }
+                tagged = Boolean.TRUE;
+                resourceTag = value.substring(pos + 1, end);
+                pos = skipWhitespace(value, end + 1);
+                if (pos == length || value.charAt(pos) != '(') {
+                    // a tag needs at least one list
+                    _malformed = true;
+                    break;
+                }
+            } else if (c == '(') {
+                if (tagged == null) {
+                    tagged = Boolean.FALSE;
+                }
+                ConditionList list = new ConditionList(resourceTag);
+                pos = parseList(value, pos + 1, list, lockTokens);
+                if (pos == -1 || list._conditions.isEmpty()) {
+                    _malformed = true;
+                    break;
+                }
+                _lists.add(list);
+                pos = skipWhitespace(value, pos);
+            } else {
+                _malformed = true;
+                break;
+            }
+        }
+        _lockTokens = lockTokens.toArray(new String[lockTokens.size()]);
+    }
+
+    /**
+     * @return the position after the closing bracket, -1 if the list is
+     *  malformed
+     */
+    private int parseList(String value, int pos, ConditionList list,
+            List<String> lockTokens) {
+        int length = value.length();
+        while (true) {
+            pos = skipWhitespace(value, pos);
+            if (pos == length) {
+                return -1;
+            }
+            char c = value.charAt(pos);
+            if (c == ')') {
+                return pos + 1;
+            }
+            boolean not = false;
+            if (value.regionMatches(true, pos, "Not", 0, 3)) {
+                not = true;
+                pos = skipWhitespace(value, pos + 3);
+                if (pos == length) {
+                    return -1;
+                }
+                c = value.charAt(pos);
+            }
+            if (c == '<') {
+                int end = value.indexOf('>', pos + 1);
+                if (end == -1) {
+                    return -1;
+                }
+                String token = value.substring(pos + 1, end);
+                list._conditions.add(new Condition(not, false, token));
+                if (!NO_LOCK.equals(token)) {
+                    lockTokens.add(toLockId(token));
+                }
+                pos = end + 1;
+            } else if (c == '[') {
+                int end = endOfEntityTag(value, pos + 1);
+                if (end == -1) {
+                    return -1;
+                }
+                list._conditions.add(new Condition(not, true, value
+                        .substring(pos + 1, end).trim()));
+                pos = end + 1;
+            } else {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return the position of the "]" closing the entity tag, skipping
+     *  quoted strings
+     */
+    private static int endOfEntityTag(String value, int pos) {
+        boolean quoted = false;
+        for (int i = pos; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '\\' && quoted) {
+                i++;
+            } else if (c == ']' && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String value, int pos) {
+        while (pos < value.length()
+                && Character.isWhitespace(value.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * @return the lock id of a state token like "opaquelocktoken:id"
+     */
+    private static String toLockId(String token) {
+        if (token.indexOf("locktoken:") != -1) {
+            return token.substring(token.indexOf(':') + 1);
+        }
+        return token;
+    }
+
+    private static boolean contains(String[] ids, String id) {
+        if (ids != null) {
+            for (String candidate : ids) {
+                if (candidate.equals(id)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * compares the resource tag, an absolute URI or path including the
+     * context and servlet path, with the path of the resource relative to
+     * the servlet. trailing slashes are ignored
+     */
+    private boolean tagMatches(String tag, String path) {
+        String tagPath;
+        if (_req != null) {
+            try {
+                tagPath = RequestUtil.parseDestinationPath(_req, tag);
+            } catch (IOException e) {
+                return false;
+            }
+        } else {
+            tagPath = RequestUtil.URLDecode(tag, "UTF8");
+            int start = tagPath.indexOf("://");
+            if (start != -1) {
+                start = tagPath.indexOf('/', start + 3);
+                tagPath = start == -1 ? "/" : tagPath.substring(start);
+            }
+        }
+        return trimSlash(tagPath).equals(trimSlash(path));
+    }
+
+    private static String trimSlash(String path) {
+        if (path.endsWith("/")) {
+            return path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+}
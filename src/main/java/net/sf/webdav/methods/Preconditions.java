@@ -0,0 +1,183 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.methods;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.servlet.http.HttpServletRequest;
+
+import net.sf.webdav.StoredObject;
+import net.sf.webdav.WebdavStatus;
+
+/**
+ * The conditional headers of a request (RFC 7232): If-Match,
+ * If-Unmodified-Since, If-None-Match and If-Modified-Since. They are evaluated
+ * in the order of section 6 of the RFC, before any content is read or
+ * written.
+ */
+public class Preconditions {
+
+    /**
+     * IMF-fixdate, the obsolete RFC 850 format and asctime()
+     */
+    private static final String[] DATE_FORMATS = {
+            "EEE, dd MMM yyyy HH:mm:ss zzz", "EEEE, dd-MMM-yy HH:mm:ss zzz",
+            "EEE MMM d HH:mm:ss yyyy" };
+
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+    private final boolean _safe;
+
+    private final String _ifMatch;
+
+    private final String _ifNoneMatch;
+
+    private final long _ifUnmodifiedSince;
+
+    private final long _ifModifiedSince;
+
+    /**
+     * reads the conditional headers of the request
+     *
+     * @param safe
+     *      true for GET and HEAD, which answer a matching If-None-Match with
+     *      304 and evaluate If-Modified-Since
+     */
+    public Preconditions(HttpServletRequest req, boolean safe) {
+        _safe = safe;
+        _ifMatch = req.getHeader("If-Match");
+        _ifUnmodifiedSince = parseDate(req.getHeader("If-Unmodified-Since"));
+        _ifNoneMatch = req.getHeader("If-None-Match");
+        _ifModifiedSince = safe ? parseDate(req
+                .getHeader("If-Modified-Since")) : -1;
+    }
+
+    /**
+     * @return true if the request has any (valid) conditional header
+     */
+    public boolean isPresent() {
+        return _ifMatch != null || _ifNoneMatch != null
+                || _ifUnmodifiedSince != -1 || _ifModifiedSince != -1;
+    }
+
+    /**
+     * @param so
+     *      the resource, null (or a lock-null resource) if it doesn't exist
+     * @param eTag
+     *      current entity tag of the resource
+     * @return SC_OK if the request may be performed, SC_NOT_MODIFIED or
+     *  SC_PRECONDITION_FAILED otherwise
+     */
+    public int evaluate(StoredObject so, String eTag) {
+        boolean exists = so != null && !so.isNullResource();
+        // dates in headers have no milliseconds
+        long lastModified = exists && so.getLastModified() != null ? so
+                .getLastModified().getTime() / 1000 * 1000 : -1;
+
+        if (_ifMatch != null) {
+            if (!exists || !matches(_ifMatch, eTag, true)) {
+                return WebdavStatus.SC_PRECONDITION_FAILED;
+            }
+        } else if (_ifUnmodifiedSince != -1 && lastModified != -1
+                && lastModified > _ifUnmodifiedSince) {
+            return WebdavStatus.SC_PRECONDITION_FAILED;
+        }
+
+        if (_ifNoneMatch != null) {
+            if (exists && matches(_ifNoneMatch, eTag, false)) {
+                return _safe ? WebdavStatus.SC_NOT_MODIFIED
+                        : WebdavStatus.SC_PRECONDITION_FAILED;
+            }
+        } else if (_ifModifiedSince != -1 && lastModified != -1
+                && _ifModifiedSince <= System.currentTimeMillis()
+                && lastModified <= _ifModifiedSince) {
+            return WebdavStatus.SC_NOT_MODIFIED;
+        }
+        return WebdavStatus.SC_OK;
+    }
+
+    /**
+     * @param header
+     *      "*" or a list of entity tags
+     * @param strong
+     *      use the strong comparison, weak tags never match then
+     */
+    static boolean matches(String header, String eTag, boolean strong) {
+        if (header.trim().equals("*")) {
+            return true;
+        }
+        if (eTag == null || (strong && isWeak(eTag))) {
+            return false;
+        }
+        String opaqueTag = opaqueTag(eTag);
+        int length = header.length();
+        int pos = 0;
+        while (pos < length) {
+            char c = header.charAt(pos);
+            if (c == ',' || Character.isWhitespace(c)) {
+                pos++;
+                continue;
+            }
+            int start = pos;
+            int quote = header.indexOf('"', pos);
+            if (quote == -1) {
+                return false;
+            }
+            int end = header.indexOf('"', quote + 1);
+            if (end == -1) {
+                return false;
+            }
+            String tag = header.substring(start, end + 1);
+            if (!(strong && isWeak(tag)) && opaqueTag.equals(opaqueTag(tag))) {
+                return true;
+            }
+            pos = end + 1;
+        }
+        return false;
+    }
+
+    private static boolean isWeak(String eTag) {
+        return eTag.startsWith("W/");
+    }
+
+    private static String opaqueTag(String eTag) {
+        return isWeak(eTag) ? eTag.substring(2) : eTag;
+    }
+
+    /**
+     * @return the date in ms, -1 if missing or invalid, so the condition is
+     *  ignored
+     */
+    static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        value = value.trim();
+        for (String format : DATE_FORMATS) {
+            SimpleDateFormat dateFormat = new SimpleDateFormat(format,
+                    Locale.US);
+            dateFormat.setTimeZone(GMT);
+            try {
+                return dateFormat.parse(value).getTime();
+            } catch (ParseException e) {
+                // try the next format
+            }
+        }
+        return -1;
+    }
+}
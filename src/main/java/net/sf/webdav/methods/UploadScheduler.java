@@ -0,0 +1,231 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.webdav.methods;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.Principal;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the PUT requests writing at the same time and the rate at which
+ * each user uploads, so a few large uploads can't take all the disk
+ * bandwidth from GET. Uploads beyond the limit wait in a queue for a while;
+ * once the queue is full or the wait times out they are turned away, PUT
+ * answers 503 with Retry-After then.
+ * <p/>
+ * The rate is a token bucket per principal of the transaction, holding up
+ * to one second of bytes. The uploads of a user share it, uploads without a
+ * principal share one bucket.
+ */
+public class UploadScheduler {
+
+    /**
+     * buckets kept before the full (idle) ones are dropped
+     */
+    private static final int MAX_BUCKETS = 1024;
+
+    /**
+     * null if the number of uploads isn't bounded
+     */
+    private final Semaphore _uploads;
+
+    private final int _maxQueued;
+
+    private final long _timeout;
+
+    private final long _bytesPerSecond;
+
+    private final AtomicInteger _queued = new AtomicInteger();
+
+    private final AtomicLong _rejected = new AtomicLong();
+
+    private final ConcurrentMap<String, TokenBucket> _buckets = new ConcurrentHashMap<String, TokenBucket>();
+
+    /**
+     * @param maxUploads
+     *      uploads writing at the same time, 0 for no limit
+     * @param maxQueued
+     *      uploads waiting for one of them to finish
+     * @param timeout
+     *      ms an upload waits in the queue
+     * @param bytesPerSecond
+     *      upload rate of each user, 0 for no limit
+     */
+    public UploadScheduler(int maxUploads, int maxQueued, long timeout,
+            long bytesPerSecond) {
+        _uploads = maxUploads > 0 ? new Semaphore(maxUploads, true) : null;
+        _maxQueued = maxQueued;
+        _timeout = timeout;
+        _bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Waits for a free upload slot, release() it when the upload is done.
+     *
+     * @return false if the queue is full or the wait timed out
+     */
+    public boolean admit() {
+        if (_uploads == null || _uploads.tryAcquire()) {
+            return true;
+        }
+        if (_queued.incrementAndGet() > _maxQueued) {
+            _queued.decrementAndGet();
+            _rejected.incrementAndGet();
+            return false;
+        }
+        try {
+            if (_uploads.tryAcquire(_timeout, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            _queued.decrementAndGet();
+        }
+        _rejected.incrementAndGet();
+        return false;
+    }
+
+    public void release() {
+        if (_uploads != null) {
+            _uploads.release();
+        }
+    }
+
+    /**
+     * @return seconds a turned away client should wait before it tries again
+     */
+    public long getRetryAfter() {
+        return Math.max(1, (_timeout + 999) / 1000);
+    }
+
+    /**
+     * @return the number of uploads turned away
+     */
+    public long getRejectedCount() {
+        return _rejected.get();
+    }
+
+    /**
+     * @return the stream to read the upload of the principal from, it blocks
+     *  while the principal exceeds its rate
+     */
+    public InputStream throttle(Principal principal, InputStream in) {
+        if (_bytesPerSecond <= 0) {
+            return in;
+        }
+        final TokenBucket bucket = getBucket(principal == null ? ""
+                : principal.getName());
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    bucket.take(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    bucket.take(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    private TokenBucket getBucket(String name) {
+        TokenBucket bucket = _buckets.get(name);
+        if (bucket == null) {
+            if (_buckets.size() >= MAX_BUCKETS) {
+                Iterator<TokenBucket> it = _buckets.values().iterator();
+                while (it.hasNext()) {
+                    if (it.next().isFull()) {
+                        it.remove();
+                    }
+                }
+            }
+            TokenBucket created = new TokenBucket(_bytesPerSecond);
+            bucket = _buckets.putIfAbsent(name, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Bytes a user may upload now. Taking more than there are leaves a debt
+     * the taker sleeps off, so concurrent uploads of a user queue up behind
+     * each other.
+     */
+    private static class TokenBucket {
+
+        private final double _bytesPerNano;
+
+        private final double _capacity;
+
+        private double _tokens;
+
+        private long _last = System.nanoTime();
+
+        private TokenBucket(long bytesPerSecond) {
+            _bytesPerNano = bytesPerSecond / 1e9;
+            _capacity = bytesPerSecond;
+            _tokens = _capacity;
+        }
+
+        private void take(long bytes) throws InterruptedIOException {
+            long wait;
+            synchronized (this) {
+                refill();
+                _tokens -= bytes;
+                wait = _tokens >= 0 ? 0 : (long) (-_tokens / _bytesPerNano);
+            }
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("upload interrupted");
+                }
+            }
+        }
+
+        private synchronized boolean isFull() {
+            refill();
+            return _tokens >= _capacity;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            _tokens = Math.min(_capacity, _tokens + (now - _last)
+                    * _bytesPerNano);
+            _last = now;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package net.sf.webdav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+
+import org.jmock.Mockery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingStoreTest {
+
+    private File _root;
+
+    private CachingStore _store;
+
+    @Before
+    public void setUp() throws Exception {
+        _root = File.createTempFile("cachingStore", "");
+        _root.delete();
+        _root.mkdirs();
+        _store = new CachingStore(new LocalFileSystemStore(_root), 100, 40);
+    }
+
+    @After
+    public void tearDown() {
+        _store.destroy();
+        delete(_root);
+    }
+
+    @Test
+    public void testSmallResourceIsCached() throws Exception {
+        write("/a", "hello");
+
+        assertEquals("hello", read("/a"));
+        assertEquals("hello", read("/a"));
+        assertEquals(1, _store.getMissCount());
+        assertEquals(1, _store.getHitCount());
+        assertEquals(0.5, _store.getHitRate(), 0.001);
+        assertEquals(5, _store.getSize());
+        assertNull(_store.getResourceFile(null, "/a"));
+        assertNull(_store.getResourceChannel(null, "/a"));
+    }
+
+    @Test
+    public void testLargeResourceIsNotCached() throws Exception {
+        String content = "0123456789012345678901234567890123456789012345";
+        write("/big", content);
+
+        assertEquals(content, read("/big"));
+        assertEquals(content, read("/big"));
+        assertEquals(0, _store.getHitCount());
+        assertEquals(0, _store.getEntryCount());
+        assertEquals(new File(_root, "/big"), _store.getResourceFile(null,
+                "/big"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        String content = "0123456789012345678901234567890123456789";
+        write("/a", content);
+        write("/b", content);
+        write("/c", content);
+
+        read("/a");
+        read("/b");
+        read("/a");
+        read("/c");
+
+        assertEquals(2, _store.getEntryCount());
+        assertEquals(1, _store.getEvictionCount());
+        assertEquals(80, _store.getSize());
+        read("/b");
+        assertEquals(4, _store.getMissCount());
+    }
+
+    @Test
+    public void testWriteInvalidates() throws Exception {
+        write("/a", "hello");
+        read("/a");
+
+        _store.setResourceContent(null, "/a", new ByteArrayInputStream(
+                "bye".getBytes()), null, null);
+
+        assertEquals(0, _store.getEntryCount());
+        assertEquals("bye", read("/a"));
+    }
+
+    @Test
+    public void testRemoveInvalidatesTree() throws Exception {
+        new File(_root, "folder").mkdir();
+        write("/folder/a", "hello");
+        write("/b", "world");
+        read("/folder/a");
+        read("/b");
+
+        _store.removeObject(null, "/b");
+        assertEquals(1, _store.getEntryCount());
+
+        new File(_root, "folder/a").delete();
+        _store.removeObject(null, "/folder");
+        assertEquals(0, _store.getEntryCount());
+        assertEquals(0, _store.getSize());
+    }
+
+    @Test
+    public void testChangedFileIsNoticed() throws Exception {
+        write("/a", "hello");
+        read("/a");
+
+        write("/a", "hello, world");
+        _store.getStoredObject(null, "/a");
+
+        assertEquals(0, _store.getEntryCount());
+        assertEquals("hello, world", read("/a"));
+    }
+
+    @Test
+    public void testOffset() throws Exception {
+        write("/a", "hello");
+        read("/a");
+
+        InputStream in = _store.getResourceContent(null, "/a", 3);
+        assertEquals("lo", toString(in));
+        assertEquals(1, _store.getHitCount());
+    }
+
+    @Test
+    public void testWrapKeepsTheCapabilitiesOfTheStore() throws Exception {
+        IWebdavStore local = CachingStore.wrap(new LocalFileSystemStore(_root),
+                100, 40);
+        assertTrue(local instanceof IResumableStore);
+        assertTrue(local instanceof IAtomicContentStore);
+        assertTrue(local instanceof IFileStore);
+
+        write("/a", "hello");
+        assertEquals("lo", toString(((IRandomAccessStore) local)
+                .getResourceContent(null, "/a", 3)));
+        assertEquals(-1, ((IResumableStore) local).getUploadOffset(null, "/a",
+                null));
+
+        IWebdavStore plain = CachingStore.wrap(new Mockery()
+                .mock(IWebdavStore.class), 100, 40);
+        assertFalse(plain instanceof IRandomAccessStore);
+        assertFalse(plain instanceof IFileStore);
+        assertFalse(plain instanceof IPrecompressedStore);
+        assertFalse(plain instanceof IAtomicContentStore);
+        assertFalse(plain instanceof IResumableStore);
+        assertFalse(plain instanceof IDigestStore);
+    }
+
+    private void write(String uri, String content) throws Exception {
+        FileOutputStream out = new FileOutputStream(new File(_root, uri));
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+
+    private String read(String uri) throws Exception {
+        return toString(_store.getResourceContent(null, uri));
+    }
+
+    private static String toString(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,292 @@
+package net.sf.webdav;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import net.sf.webdav.exceptions.AccessDeniedException;
+import net.sf.webdav.exceptions.WebdavException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalFileSystemStoreTest {
+
+    private File _root;
+
+    private LocalFileSystemStore _store;
+
+    @Before
+    public void setUp() throws Exception {
+        _root = File.createTempFile("localStore", "");
+        _root.delete();
+        _root.mkdirs();
+        _store = new LocalFileSystemStore(_root);
+    }
+
+    @After
+    public void tearDown() {
+        delete(_root);
+    }
+
+    @Test
+    public void testContentIsReplaced() throws Exception {
+        _store.setSyncOnWrite(true);
+        _store.createResource(null, "/a");
+        assertEquals(5, _store.setResourceContent(null, "/a",
+                new ByteArrayInputStream("hello".getBytes()), null, null));
+        assertEquals(3, _store.setResourceContent(null, "/a",
+                new ByteArrayInputStream("bye".getBytes()), null, null));
+
+        assertEquals("bye", read("/a"));
+        assertArrayEquals(new String[] { "a" }, list("/"));
+    }
+
+    @Test
+    public void testFailedWriteKeepsContent() throws Exception {
+        _store.setResourceContent(null, "/a", new ByteArrayInputStream(
+                "hello".getBytes()), null, null);
+
+        try {
+            _store.setResourceContent(null, "/a", failing('x'), null, null);
+            fail();
+        } catch (WebdavException e) {
+            // expected
+        }
+
+        assertEquals("hello", read("/a"));
+        assertArrayEquals(new String[] { "a" }, list("/"));
+    }
+
+    @Test
+    public void testUploadIsResumed() throws Exception {
+        assertEquals(-1, _store.getUploadOffset(null, "/a", null));
+        assertEquals(3, _store.writeUpload(null, "/a", null,
+                new ByteArrayInputStream("hel".getBytes()), 0));
+        try {
+            _store.writeUpload(null, "/a", null, new ByteArrayInputStream(
+                    "lo".getBytes()), 4);
+            fail();
+        } catch (WebdavException e) {
+            // expected, there's a gap
+        }
+        try {
+            _store.writeUpload(null, "/a", null, failing('l'), 3);
+            fail();
+        } catch (WebdavException e) {
+            // expected
+        }
+        assertEquals(4, _store.getUploadOffset(null, "/a", null));
+
+        // the client resends what it isn't sure about
+        assertEquals(5, _store.writeUpload(null, "/a", null,
+                new ByteArrayInputStream("lo".getBytes()), 3));
+        assertEquals(5, _store.commitUpload(null, "/a", null));
+
+        assertEquals("hello", read("/a"));
+        assertEquals(-1, _store.getUploadOffset(null, "/a", null));
+        assertArrayEquals(new String[] { "a" }, list("/"));
+    }
+
+    @Test
+    public void testUploadIsCancelled() throws Exception {
+        _store.writeUpload(null, "/a", null, new ByteArrayInputStream(
+                "hel".getBytes()), 0);
+        _store.cancelUpload(null, "/a", null);
+
+        assertEquals(-1, _store.getUploadOffset(null, "/a", null));
+        assertEquals(0, list("/").length);
+    }
+
+    @Test
+    public void testUploadsAreKeptApart() throws Exception {
+        _store.writeUpload(null, "/a", "lock-1", new ByteArrayInputStream(
+                "hel".getBytes()), 0);
+        _store.writeUpload(null, "/a", "lock-2", new ByteArrayInputStream(
+                "bye".getBytes()), 0);
+        assertEquals(-1, _store.getUploadOffset(null, "/a", null));
+        assertEquals(5, _store.writeUpload(null, "/a", "lock-1",
+                new ByteArrayInputStream("lo".getBytes()), 3));
+
+        assertEquals(5, _store.commitUpload(null, "/a", "lock-1"));
+        assertEquals("hello", read("/a"));
+        assertEquals(3, _store.getUploadOffset(null, "/a", "lock-2"));
+    }
+
+    @Test
+    public void testAbandonedUploadsExpire() throws Exception {
+        _store.writeUpload(null, "/a", "lock-1", new ByteArrayInputStream(
+                "hel".getBytes()), 0);
+        File[] staged = new File(_root, ".webdav/staged").listFiles();
+        assertEquals(1, staged.length);
+        staged[0].setLastModified(System.currentTimeMillis() - 2
+                * LocalFileSystemStore.DEFAULT_STAGED_UPLOAD_TIMEOUT * 1000L);
+
+        assertEquals(-1, _store.getUploadOffset(null, "/a", "lock-1"));
+        try {
+            _store.commitUpload(null, "/a", "lock-1");
+            fail();
+        } catch (WebdavException e) {
+            // expected
+        }
+
+        // a new upload drops it
+        new LocalFileSystemStore(_root).writeUpload(null, "/b", null,
+                new ByteArrayInputStream("bye".getBytes()), 0);
+        assertFalse(staged[0].exists());
+        assertEquals(1, new File(_root, ".webdav/staged").list().length);
+    }
+
+    @Test
+    public void testDigestIsTheETag() throws Exception {
+        _store.setResourceContent(null, "/a", new ByteArrayInputStream(
+                "hello".getBytes()), null, null);
+        _store.setContentDigest(null, "/a", "MD5", new byte[] { 0x5d, 0x41,
+                0x40, 0x2a });
+        assertEquals("\"5d41402a\"", _store.getStoredObject(null, "/a")
+                .getETag());
+        assertArrayEquals(new String[] { "a" }, _store.getChildrenNames(null,
+                "/"));
+        // kept over a restart
+        assertEquals("\"5d41402a\"", new LocalFileSystemStore(_root)
+                .getStoredObject(null, "/a").getETag());
+
+        // written without a digest
+        _store.setResourceContent(null, "/a", new ByteArrayInputStream(
+                "bye".getBytes()), null, null);
+        assertFalse(_store.getStoredObject(null, "/a").getETag().equals(
+                "\"5d41402a\""));
+
+        _store.removeObject(null, "/a");
+        assertEquals(0, list("/").length);
+    }
+
+    @Test
+    public void testWorkDirIsNotAResource() throws Exception {
+        _store.createResource(null, "/a");
+        _store.setResourceContent(null, "/a", new ByteArrayInputStream(
+                "hello".getBytes()), null, null);
+        _store.setContentDigest(null, "/a", "MD5", new byte[] { 1 });
+        // looks like the files the store once kept next to the resources
+        _store.createResource(null, "/.a.webdav-digest");
+
+        assertArrayEquals(new String[] { ".a.webdav-digest", "a" }, sorted(
+                _store.getChildrenNames(null, "/")));
+        assertNull(_store.getStoredObject(null, "/.webdav"));
+        assertNull(_store.getStoredObject(null, "/.WebDAV/digest"));
+        try {
+            _store.createFolder(null, "/.webdav/x");
+            fail();
+        } catch (AccessDeniedException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFolderWithDigestsIsRemoved() throws Exception {
+        _store.createFolder(null, "/f");
+        _store.setResourceContent(null, "/f/a", new ByteArrayInputStream(
+                "hello".getBytes()), null, null);
+        _store.setContentDigest(null, "/f/a", "MD5", new byte[] { 1 });
+        _store.writeUpload(null, "/f/b", null, new ByteArrayInputStream(
+                "he".getBytes()), 0);
+
+        assertArrayEquals(new String[] { "a" }, list("/f"));
+        _store.removeObject(null, "/f/a");
+        _store.removeObject(null, "/f");
+        assertNull(_store.getStoredObject(null, "/f"));
+    }
+
+    @Test
+    public void testOnlyMatchingSidecarsAreServed() throws Exception {
+        _store.setResourceContent(null, "/a.txt", new ByteArrayInputStream(
+                "hello".getBytes()), null, null);
+        File sidecar = new File(_root, "a.txt.gz");
+        gzip(sidecar, "hello");
+        sidecar.setLastModified(System.currentTimeMillis() + 2000);
+
+        assertEquals("not enabled", -1, _store.getEncodedLength(null,
+                "/a.txt", "gzip"));
+        _store.setPrecompressedSidecars(true);
+        assertEquals(sidecar.length(), _store.getEncodedLength(null,
+                "/a.txt", "gzip"));
+
+        // a newer file of the user which isn't the compressed resource
+        gzip(sidecar, "jello");
+        sidecar.setLastModified(System.currentTimeMillis() + 4000);
+        assertEquals(-1, _store.getEncodedLength(null, "/a.txt", "gzip"));
+    }
+
+    /**
+     * @return a stream giving one byte, then failing like a dropped connection
+     */
+    private static InputStream failing(final int first) {
+        return new InputStream() {
+            private boolean _failed = false;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0];
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (_failed) {
+                    throw new IOException("connection reset");
+                }
+                _failed = true;
+                b[off] = (byte) first;
+                return 1;
+            }
+        };
+    }
+
+    private String[] list(String uri) {
+        return _store.getChildrenNames(null, uri);
+    }
+
+    private static String[] sorted(String[] names) {
+        Arrays.sort(names);
+        return names;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private String read(String uri) throws IOException {
+        InputStream in = _store.getResourceContent(null, uri);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        in.close();
+        return out.toString();
+    }
+
+    private static void gzip(File file, String content) throws IOException {
+        GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+        out.write(content.getBytes());
+        out.close();
+    }
+}
@@ -0,0 +1,39 @@
+package net.sf.webdav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockServletContext;
+
+public class MimeTyperTest {
+
+    @Test
+    public void testStoredMimeTypeWins() {
+        MimeTyper mimeTyper = new MimeTyper(null, new MockServletContext());
+        StoredObject so = new StoredObject();
+        so.setMimeType("text/x-special");
+
+        assertEquals("text/x-special", mimeTyper.getMimeType(null,
+                "/a.html", so));
+    }
+
+    @Test
+    public void testExtension() {
+        MimeTyper mimeTyper = new MimeTyper(null, new MockServletContext());
+
+        assertEquals("text/html", mimeTyper.getMimeType(null, "/a.html",
+                new StoredObject()));
+        assertEquals("text/html", mimeTyper.getMimeType(null, "/A.HTML",
+                null));
+        assertNull(mimeTyper.getMimeType(null, "/folder.html/file", null));
+        assertNull(mimeTyper.getMimeType(null, "/file", null));
+    }
+
+    @Test
+    public void testWithoutServletContext() {
+        MimeTyper mimeTyper = new MimeTyper(null, null);
+
+        assertNull(mimeTyper.getMimeType(null, "/a.html", null));
+    }
+}
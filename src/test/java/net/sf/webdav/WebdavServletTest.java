@@ -3,10 +3,12 @@ package net.sf.webdav;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 
+import net.sf.webdav.exceptions.UnauthenticatedException;
 import net.sf.webdav.testutil.MockPrincipal;
 import net.sf.webdav.testutil.MockTest;
 
 import org.jmock.Expectations;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.mock.web.MockHttpServletRequest;
@@ -91,9 +93,25 @@ public class WebdavServletTest extends MockTest {
                 		"LockingListener");
                 will(returnValue(""));
 
+                oneOf(servletConfig).getInitParameter(
+                        "ResourceLocksImplementation");
+                will(returnValue(""));
+
                 oneOf(servletConfig).getInitParameter("rootpath");
                 will(returnValue("./target/tmpTestData/"));
 
+                oneOf(servletConfig).getInitParameter("syncOnWrite");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("precompressedSidecars");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("stagedUploadTimeout");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("contentCacheSize");
+                will(returnValue(null));
+
                 exactly(2).of(servletConfig).getInitParameter(
                         "lazyFolderCreationOnPut");
                 will(returnValue("1"));
@@ -107,6 +125,34 @@ public class WebdavServletTest extends MockTest {
                 exactly(2).of(servletConfig).getInitParameter(
                         "no-content-length-headers");
                 will(returnValue("0"));
+
+                oneOf(servletConfig).getInitParameter("lockJournal");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("sharedLockFile");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter(
+                        "lockTimeoutSweepInterval");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("asyncThreads");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("maxUploads");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("uploadRate");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("contentDigest");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("lockMonitorMBeanName");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("lockMonitorPath");
+                will(returnValue(null));
             }
         });
 
@@ -162,4 +208,65 @@ public class WebdavServletTest extends MockTest {
 
         _mockery.assertIsSatisfied();
     }
+
+    @Test
+    public void testLockMonitorPageIsAuthenticated() throws Exception {
+        mockReq.setMethod("GET");
+        mockReq.setPathInfo("/.locks");
+
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockStore).createPrincipal(mockReq);
+                will(returnValue(null));
+
+                oneOf(mockStore).begin(null);
+                will(returnValue(mockTransaction));
+
+                oneOf(mockStore).checkAuthentication(mockTransaction);
+                will(throwException(new UnauthenticatedException("webdav")));
+
+                oneOf(mockStore).rollback(mockTransaction);
+            }
+        });
+
+        WebDavServletBean servlet = new WebdavServlet();
+        servlet.init(mockStore, null, dftIndexFile, insteadOf404, 1, true);
+        servlet.enableLockMonitor(null, "/.locks");
+        servlet.service(mockReq, mockRes);
+
+        Assert.assertEquals(401, mockRes.getStatus());
+        _mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testLockMonitorPageIsServed() throws Exception {
+        mockReq.setMethod("GET");
+        mockReq.setPathInfo("/.locks");
+
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockStore).createPrincipal(mockReq);
+                will(returnValue(mockPrincipal));
+
+                oneOf(mockStore).begin(mockPrincipal);
+                will(returnValue(mockTransaction));
+
+                oneOf(mockStore).checkAuthentication(mockTransaction);
+
+                oneOf(mockStore).getStoredObject(mockTransaction, "/.locks");
+                will(returnValue(null));
+
+                oneOf(mockStore).commit(mockTransaction);
+            }
+        });
+
+        WebDavServletBean servlet = new WebdavServlet();
+        servlet.init(mockStore, null, dftIndexFile, insteadOf404, 1, true);
+        servlet.enableLockMonitor(null, "/.locks");
+        servlet.service(mockReq, mockRes);
+
+        Assert.assertEquals(200, mockRes.getStatus());
+        Assert.assertEquals("text/plain", mockRes.getContentType());
+        _mockery.assertIsSatisfied();
+    }
 }
@@ -0,0 +1,107 @@
+package net.sf.webdav.locking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static net.sf.webdav.locking.ResourceLocksTest.OTHER_USER;
+import static net.sf.webdav.locking.ResourceLocksTest.USER;
+
+public class ConcurrentResourceLocksTest {
+
+    private ConcurrentResourceLocks resourceLocks;
+
+    @Before
+    public void setup() {
+        resourceLocks = new ConcurrentResourceLocks(null, 8);
+    }
+
+    @Test
+    public void testExclusiveLockOnParentBlocksChild() throws Exception {
+        Assert.assertTrue(resourceLocks.exclusiveLock(USER, "/a/b", "owner", 3, 300));
+        Assert.assertFalse("child of an exclusive lock",
+                resourceLocks.exclusiveLock(OTHER_USER, "/a/b/c", "owner2", 0, 300));
+        Assert.assertFalse("parent of an exclusive lock",
+                resourceLocks.exclusiveLock(OTHER_USER, "/a", "owner2", 3, 300));
+        Assert.assertTrue("depth 0 does not care for children",
+                resourceLocks.sharedLock(OTHER_USER, "/a", "owner2", 0, 300));
+        Assert.assertTrue("other top level folder",
+                resourceLocks.exclusiveLock(OTHER_USER, "/x/b", "owner2", 0, 300));
+    }
+
+    @Test
+    public void testLockOnRootSeesAllStripes() throws Exception {
+        Assert.assertTrue(resourceLocks.exclusiveLock(USER, "/a/file", "owner", 0, 300));
+        Assert.assertFalse(resourceLocks.exclusiveLock(OTHER_USER, "/", "owner2", 3, 300));
+
+        LockedObject lo = resourceLocks.getLockedObjectByPath(USER, "/a/file");
+        Assert.assertTrue(resourceLocks.unlock(USER, lo.getID(), "owner"));
+        Assert.assertTrue(resourceLocks.exclusiveLock(OTHER_USER, "/", "owner2", 3, 300));
+    }
+
+    @Test
+    public void testSharedLocks() throws Exception {
+        Assert.assertTrue(resourceLocks.sharedLock(USER, "/a/file", "owner", 0, 300));
+        Assert.assertTrue(resourceLocks.sharedLock(OTHER_USER, "/a/file", "owner2", 0, 300));
+        Assert.assertFalse(resourceLocks.exclusiveLock(OTHER_USER, "/a/file", "owner3", 0, 300));
+        Assert.assertEquals(2, resourceLocks.getLockedObjectByPath(USER, "/a/file").getOwner().length);
+    }
+
+    @Test
+    public void testStripeOfRoot() {
+        Assert.assertEquals(-1, ConcurrentResourceLocks.stripeFor("/", 8));
+        Assert.assertEquals(ConcurrentResourceLocks.stripeFor("/a", 8),
+                ConcurrentResourceLocks.stripeFor("/a/b/c/", 8));
+    }
+
+    @Test
+    public void testConcurrentTemporaryLocks() throws Exception {
+        final int threads = 8;
+        final int rounds = 2000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final String path = "/folder" + (t % 4) + "/file" + t;
+            Thread worker = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < rounds; i++) {
+                            String owner = getName() + i;
+                            if (!resourceLocks.lock(USER, path, owner, false,
+                                    0, 10, true)) {
+                                failures.incrementAndGet();
+                            }
+                            resourceLocks.unlockTemporaryLockedObjects(USER,
+                                    path, owner);
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            };
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        Assert.assertEquals(0, failures.get());
+        for (int t = 0; t < threads; t++) {
+            LockedObject lo = resourceLocks.getTempLockedObjectByPath(USER,
+                    "/folder" + (t % 4) + "/file" + t);
+            Assert.assertNotNull(lo);
+            Assert.assertNull("all owners released", lo.getOwner());
+        }
+        Assert.assertEquals(4, resourceLocks._tempRoot._children.size());
+    }
+}
@@ -0,0 +1,124 @@
+package net.sf.webdav.locking;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.LineNumberReader;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static net.sf.webdav.locking.ResourceLocksTest.OTHER_USER;
+import static net.sf.webdav.locking.ResourceLocksTest.USER;
+
+public class PersistentResourceLocksTest {
+
+    private File journal;
+
+    private PersistentResourceLocks resourceLocks;
+
+    @Before
+    public void setup() throws Exception {
+        journal = File.createTempFile("locks", ".journal");
+        journal.delete();
+        resourceLocks = new PersistentResourceLocks(null, journal, 100);
+    }
+
+    @After
+    public void teardown() {
+        resourceLocks.destroy();
+        journal.delete();
+    }
+
+    @Test
+    public void testLocksSurviveRestart() throws Exception {
+        Assert.assertTrue(resourceLocks.exclusiveLock(USER, "/a/file", "owner", 0, 300));
+        Assert.assertTrue(resourceLocks.sharedLock(USER, "/b", "owner", 3, 300));
+        Assert.assertTrue(resourceLocks.sharedLock(OTHER_USER, "/b", "owner2", 3, 300));
+        String fileId = resourceLocks.getLockedObjectByPath(USER, "/a/file").getID();
+        String sharedId = resourceLocks.getLockedObjectByPath(USER, "/b").getID();
+
+        restart();
+
+        LockedObject file = resourceLocks.getLockedObjectByID(USER, fileId);
+        Assert.assertNotNull(file);
+        Assert.assertEquals("/a/file", file.getPath());
+        Assert.assertTrue(file.isExclusive());
+        Assert.assertEquals(2, resourceLocks.getLockedObjectByID(USER, sharedId).getOwner().length);
+        Assert.assertFalse(resourceLocks.exclusiveLock(OTHER_USER, "/a/file", "owner3", 0, 300));
+        Assert.assertFalse(resourceLocks.exclusiveLock(OTHER_USER, "/b/c", "owner3", 0, 300));
+    }
+
+    @Test
+    public void testUnlockIsPersisted() throws Exception {
+        Assert.assertTrue(resourceLocks.exclusiveLock(USER, "/a/file", "owner", 0, 300));
+        String id = resourceLocks.getLockedObjectByPath(USER, "/a/file").getID();
+        Assert.assertTrue(resourceLocks.unlock(USER, id, "owner"));
+
+        restart();
+
+        Assert.assertNull(resourceLocks.getLockedObjectByID(USER, id));
+        Assert.assertTrue(resourceLocks.exclusiveLock(OTHER_USER, "/a/file", "owner2", 0, 300));
+    }
+
+    @Test
+    public void testExpiredLocksAreDropped() throws Exception {
+        Assert.assertTrue(resourceLocks.exclusiveLock(USER, "/a/file", "owner", 0, 1));
+        String id = resourceLocks.getLockedObjectByPath(USER, "/a/file").getID();
+        resourceLocks.destroy();
+        Thread.sleep(1100);
+
+        resourceLocks = new PersistentResourceLocks(null, journal, 100);
+
+        Assert.assertNull(resourceLocks.getLockedObjectByID(USER, id));
+        Assert.assertEquals(0, countLines());
+    }
+
+    @Test
+    public void testJournalIsCompacted() throws Exception {
+        Assert.assertTrue(resourceLocks.exclusiveLock(USER, "/kept", "owner", 0, 300));
+        for (int i = 0; i < 150; i++) {
+            Assert.assertTrue(resourceLocks.exclusiveLock(USER, "/file", "owner", 0, 300));
+            String id = resourceLocks.getLockedObjectByPath(USER, "/file").getID();
+            Assert.assertTrue(resourceLocks.unlock(USER, id, "owner"));
+        }
+        Assert.assertTrue(countLines() < 100);
+
+        restart();
+
+        Assert.assertNotNull(resourceLocks.getLockedObjectByPath(USER, "/kept"));
+        Assert.assertNull(resourceLocks.getLockedObjectByPath(USER, "/file"));
+    }
+
+    @Test
+    public void testTornRecordIsSkipped() throws Exception {
+        Assert.assertTrue(resourceLocks.exclusiveLock(USER, "/a/file", "owner", 0, 300));
+        resourceLocks.destroy();
+        FileOutputStream out = new FileOutputStream(journal, true);
+        out.write("L abc /b%2".getBytes("UTF-8"));
+        out.close();
+
+        resourceLocks = new PersistentResourceLocks(null, journal, 100);
+
+        Assert.assertNotNull(resourceLocks.getLockedObjectByPath(USER, "/a/file").getOwner());
+        Assert.assertNull(resourceLocks.getLockedObjectByPath(USER, "/b"));
+    }
+
+    private void restart() {
+        resourceLocks.destroy();
+        resourceLocks = new PersistentResourceLocks(null, journal, 100);
+    }
+
+    private int countLines() throws Exception {
+        LineNumberReader reader = new LineNumberReader(new FileReader(journal));
+        try {
+            while (reader.readLine() != null) {
+            }
+            return reader.getLineNumber();
+        } finally {
+            reader.close();
+        }
+    }
+}
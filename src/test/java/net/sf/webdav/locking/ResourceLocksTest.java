@@ -3,6 +3,7 @@ package net.sf.webdav.locking;
 import java.security.Principal;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.UUID;
 
 import net.sf.webdav.ILockingListener;
 import net.sf.webdav.ITransaction;
@@ -71,6 +72,155 @@ public class ResourceLocksTest {
         Assert.assertEquals("Checking number of 'onUnlock'-calls",2,lockingListener.unlockEvents.size());
     }
 
+    @Test
+    public void testRefreshedLockDoesNotTimeOut() throws Exception {
+
+        Assert.assertTrue(resourceLocks.exclusiveLock(USER, "/path/file.doc", "owner", 0, 1));
+        resourceLocks.getLockedObjectByPath(USER, "/path/file.doc").refreshTimeout(300);
+
+        Thread.sleep(1500);
+
+        resourceLocks.checkTimeouts(null, false);
+        Assert.assertNotNull(resourceLocks.getLockedObjectByPath(USER, "/path/file.doc"));
+        Assert.assertEquals(0, resourceLocks.getExpiredCount());
+        Assert.assertEquals("Only the refreshed timeout is left", 1, resourceLocks.getPendingTimeoutCount());
+    }
+
+    @Test
+    public void testParentOfALaterLockTimesOut() throws Exception {
+
+        Assert.assertTrue(resourceLocks.sharedLock(USER, "/a", "owner", 0, 1));
+        Assert.assertTrue(resourceLocks.sharedLock(USER, "/a/b", "owner", 0, 2));
+
+        Thread.sleep(2500);
+
+        resourceLocks.checkTimeouts(null, false);
+        resourceLocks.checkTimeouts(null, false);
+        Assert.assertNull(resourceLocks.getLockedObjectByPath(USER, "/a/b"));
+        Assert.assertNull(resourceLocks.getLockedObjectByPath(USER, "/a"));
+        Assert.assertEquals(0, resourceLocks.getPendingTimeoutCount());
+        Assert.assertTrue(resourceLocks.exclusiveLock(OTHER_USER, "/a", "owner2", 0, 300));
+    }
+
+    @Test
+    public void testTimeoutSweeper() throws Exception {
+
+        resourceLocks.startTimeoutSweeper(100);
+        try {
+            Assert.assertEquals(100, resourceLocks.getTimeoutSweepInterval());
+            Assert.assertTrue(resourceLocks.exclusiveLock(USER, "/path/file.doc", "owner", 0, 1));
+
+            Thread.sleep(1500);
+
+            Assert.assertNull(resourceLocks.getLockedObjectByPath(USER, "/path/file.doc"));
+            Assert.assertNull(resourceLocks.getLockedObjectByPath(USER, "/path"));
+            Assert.assertEquals(2, resourceLocks.getExpiredCount());
+        } finally {
+            resourceLocks.stopTimeoutSweeper();
+        }
+        Assert.assertEquals(0, resourceLocks.getTimeoutSweepInterval());
+    }
+
+    @Test
+    public void testCheckTemporaryLocksDoesNotLock() throws Exception {
+        int tempLocks = resourceLocks._tempLocks.size();
+        Assert.assertTrue(resourceLocks.checkTemporaryLocks(USER, "/path/file.doc", 0));
+        Assert.assertEquals("Check must not create LockedObjects", tempLocks, resourceLocks._tempLocks.size());
+
+        Assert.assertTrue(resourceLocks.lock(USER, "/path", "owner", true, 3, 10, true));
+        Assert.assertFalse("Child of an exclusive temporary lock", resourceLocks.checkTemporaryLocks(OTHER_USER, "/path/file.doc", 0));
+        Assert.assertFalse("Parent of an exclusive temporary lock", resourceLocks.checkTemporaryLocks(OTHER_USER, "/", 3));
+        Assert.assertTrue("Depth 0 does not care for children", resourceLocks.checkTemporaryLocks(OTHER_USER, "/", 0));
+
+        resourceLocks.unlockTemporaryLockedObjects(USER, "/path", "owner");
+        Assert.assertTrue(resourceLocks.checkTemporaryLocks(OTHER_USER, "/path/file.doc", 0));
+    }
+
+    @Test
+    public void testSubtreeCounters() throws Exception {
+        Assert.assertTrue(resourceLocks.exclusiveLock(USER, "/a/b/c/d/e/file", "owner", 0, 300));
+        Assert.assertTrue(resourceLocks.sharedLock(USER, "/a/x", "owner", 0, 300));
+        LockedObject a = resourceLocks.getLockedObjectByPath(USER, "/a");
+        Assert.assertEquals(1, a.getExclusiveLocksBelow());
+        Assert.assertEquals(1, a.getSharedLocksBelow());
+
+        Assert.assertFalse("Lock deep below", resourceLocks.sharedLock(OTHER_USER, "/a", "owner2", 3, 300));
+        Assert.assertTrue("Depth 0 does not care for children", resourceLocks.sharedLock(OTHER_USER, "/a/b", "owner2", 0, 300));
+        Assert.assertTrue(resourceLocks.sharedLock(OTHER_USER, "/a/x", "owner2", 3, 300));
+
+        String id = resourceLocks.getLockedObjectByPath(USER, "/a/b/c/d/e/file").getID();
+        Assert.assertTrue(resourceLocks.unlock(USER, id, "owner"));
+        Assert.assertEquals(0, a.getExclusiveLocksBelow());
+        Assert.assertTrue(resourceLocks.sharedLock(OTHER_USER, "/a", "owner2", 3, 300));
+        Assert.assertFalse(resourceLocks.exclusiveLock(OTHER_USER, "/", "owner3", 3, 300));
+
+        // expired locks are no longer counted
+        Assert.assertTrue(resourceLocks.lock(USER, "/t/file", "owner", true, 0, 0, true));
+        Assert.assertFalse(resourceLocks.checkTemporaryLocks(OTHER_USER, "/t", 3));
+        Thread.sleep(10);
+        resourceLocks.checkTimeouts(USER, true);
+        Assert.assertEquals(0, resourceLocks._tempRoot.getExclusiveLocksBelow());
+        Assert.assertTrue(resourceLocks.checkTemporaryLocks(OTHER_USER, "/t", 3));
+    }
+
+    @Test
+    public void testRemovingANodeRemovesItsSubtreeCounts() throws Exception {
+        Assert.assertTrue(resourceLocks.exclusiveLock(USER, "/a/b/c/file", "owner", 0, 300));
+        LockedObject a = resourceLocks.getLockedObjectByPath(USER, "/a");
+        LockedObject b = resourceLocks.getLockedObjectByPath(USER, "/a/b");
+        Assert.assertEquals(1, a.getExclusiveLocksBelow());
+
+        b.removeLockedObject(USER);
+        Assert.assertEquals(0, a.getExclusiveLocksBelow());
+        Assert.assertEquals(0, resourceLocks._root.getExclusiveLocksBelow());
+        Assert.assertNull(resourceLocks.getLockedObjectByPath(USER, "/a/b/c/file"));
+        Assert.assertTrue(resourceLocks.exclusiveLock(OTHER_USER, "/a", "owner2", -1, 300));
+    }
+
+    @Test
+    public void testLockTokens() throws Exception {
+        Assert.assertTrue(resourceLocks.lock(USER, "/path/file.doc", "owner", true, 0, 10, true));
+        Assert.assertNull("Temporary locks have no id",
+                resourceLocks.getTempLockedObjectByPath(USER, "/path/file.doc").getID());
+
+        Assert.assertTrue(resourceLocks.exclusiveLock(USER, "/path/file.doc", "owner", 0, 10));
+        UUID id = UUID.fromString(resourceLocks.getLockedObjectByPath(USER, "/path/file.doc").getID());
+        Assert.assertEquals(4, id.version());
+        Assert.assertEquals(2, id.variant());
+
+        resourceLocks.setLockTokenGenerator(new ILockTokenGenerator() {
+            public String generateToken() {
+                return "fixed";
+            }
+        });
+        Assert.assertTrue(resourceLocks.sharedLock(USER, "/other", "owner", 0, 10));
+        Assert.assertEquals("/other", resourceLocks.getLockedObjectByID(USER, "fixed").getPath());
+    }
+
+    @Test
+    public void testMonitor() throws Exception {
+        ResourceLocksMonitor monitor = new ResourceLocksMonitor(resourceLocks);
+        Assert.assertTrue(resourceLocks.exclusiveLock(USER, "/a/b/file", "owner", 0, 300));
+        Assert.assertTrue(resourceLocks.sharedLock(USER, "/a/x", "owner", 0, 300));
+        Assert.assertFalse(resourceLocks.exclusiveLock(OTHER_USER, "/a/b/file", "owner2", 0, 300));
+        Assert.assertTrue(resourceLocks.lock(USER, "/t/file", "owner", true, 0, 0, true));
+
+        Assert.assertEquals(1, monitor.getRealExclusiveLocks());
+        Assert.assertEquals(1, monitor.getRealSharedLocks());
+        Assert.assertEquals(1, monitor.getTemporaryExclusiveLocks());
+        Assert.assertEquals(2, monitor.getRealLocksGranted());
+        Assert.assertEquals(1, monitor.getRealLockConflicts());
+        Assert.assertEquals(1, monitor.getTemporaryLocksGranted());
+        Assert.assertEquals(1, monitor.getTemporaryLockHistogram().length);
+        Assert.assertArrayEquals(new String[] { "/a: 1/1", "/a/b: 1/0" },
+                monitor.getLargestSubtrees());
+
+        Thread.sleep(10);
+        resourceLocks.checkTimeouts(USER, true);
+        Assert.assertEquals(1, monitor.getTemporaryLocksExpired());
+        Assert.assertEquals(0, monitor.getTemporaryExclusiveLocks());
+    }
+
 
     private static class MyILockingListener implements ILockingListener {
 
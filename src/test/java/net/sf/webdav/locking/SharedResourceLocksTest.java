@@ -0,0 +1,144 @@
+package net.sf.webdav.locking;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.webdav.exceptions.WebdavException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static net.sf.webdav.locking.ResourceLocksTest.OTHER_USER;
+import static net.sf.webdav.locking.ResourceLocksTest.USER;
+
+public class SharedResourceLocksTest {
+
+    private File file;
+
+    private SharedResourceLocks nodeA;
+
+    private SharedResourceLocks nodeB;
+
+    @Before
+    public void setup() throws Exception {
+        file = File.createTempFile("locks", ".shared");
+        file.delete();
+        nodeA = new SharedResourceLocks(null, new FileLockStore(file));
+        nodeB = new SharedResourceLocks(null, new FileLockStore(file));
+    }
+
+    @After
+    public void teardown() {
+        nodeA.destroy();
+        nodeB.destroy();
+        file.delete();
+        new File(file.getPath() + ".lock").delete();
+    }
+
+    @Test
+    public void testLockIsSeenByOtherNode() throws Exception {
+        Assert.assertTrue(nodeA.exclusiveLock(USER, "/a/file", "owner", 0, 300));
+        String id = nodeA.getLockedObjectByPath(USER, "/a/file").getID();
+
+        LockedObject lo = nodeB.getLockedObjectByID(OTHER_USER, id);
+        Assert.assertNotNull(lo);
+        Assert.assertEquals("/a/file", lo.getPath());
+        Assert.assertArrayEquals(new String[] { "owner" }, lo.getOwner());
+        Assert.assertFalse(nodeB.exclusiveLock(OTHER_USER, "/a/file", "owner2", 0, 300));
+        Assert.assertFalse(nodeB.exclusiveLock(OTHER_USER, "/a", "owner2", 3, 300));
+    }
+
+    @Test
+    public void testUnlockOnOtherNode() throws Exception {
+        Assert.assertTrue(nodeA.exclusiveLock(USER, "/a/file", "owner", 0, 300));
+        String id = nodeA.getLockedObjectByPath(USER, "/a/file").getID();
+
+        Assert.assertTrue(nodeB.unlock(USER, id, "owner"));
+
+        Assert.assertNull(nodeA.getLockedObjectByID(USER, id));
+        Assert.assertTrue(nodeA.exclusiveLock(OTHER_USER, "/a/file", "owner2", 0, 300));
+    }
+
+    @Test
+    public void testRefreshIsSeenByOtherNode() throws Exception {
+        Assert.assertTrue(nodeA.exclusiveLock(USER, "/a/file", "owner", 0, 10));
+        String id = nodeA.getLockedObjectByPath(USER, "/a/file").getID();
+        // nodeB changes the locks, so nodeA's LockedObject is outdated
+        Assert.assertTrue(nodeB.sharedLock(OTHER_USER, "/b", "owner2", 0, 300));
+
+        nodeA.getLockedObjectByID(USER, id).refreshTimeout(600);
+
+        Assert.assertTrue(nodeB.getLockedObjectByID(USER, id).getTimeoutMillis() > 300000);
+    }
+
+    @Test
+    public void testTemporaryLocksStayLocal() throws Exception {
+        Assert.assertTrue(nodeA.lock(USER, "/a/file", "owner", true, 0, 10, true));
+        Assert.assertTrue(nodeB.lock(OTHER_USER, "/a/file", "owner2", true, 0, 10, true));
+        Assert.assertTrue(nodeB.exclusiveLock(OTHER_USER, "/a/file", "owner2", 0, 300));
+    }
+
+    @Test
+    public void testNodesDontGrantConflictingLocks() throws Exception {
+        final int rounds = 50;
+        final AtomicInteger granted = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<Thread>();
+        for (final SharedResourceLocks node : new SharedResourceLocks[] {
+                nodeA, nodeB }) {
+            Thread worker = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < rounds; i++) {
+                            if (node.exclusiveLock(USER, "/file" + i,
+                                    getName(), 0, 300)) {
+                                granted.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        granted.addAndGet(rounds * 10);
+                    }
+                }
+            };
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Assert.assertEquals(rounds, granted.get());
+    }
+
+    @Test
+    public void testUnchangedFileIsNotReadAgain() throws Exception {
+        Assert.assertTrue(nodeA.exclusiveLock(USER, "/a/file", "owner", 0, 300));
+        FileLockStore store = new FileLockStore(file);
+        file.setLastModified(System.currentTimeMillis() - 10000);
+        long version = store.getVersion();
+
+        // same length and modification time: the version is taken as it was
+        long modified = file.lastModified();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write('x');
+        raf.close();
+        file.setLastModified(modified);
+        Assert.assertEquals(version, store.getVersion());
+
+        file.setLastModified(modified + 1000);
+        try {
+            store.getVersion();
+            Assert.fail("a changed file is read again");
+        } catch (WebdavException e) {
+            // expected, the version line is broken now
+        }
+    }
+}
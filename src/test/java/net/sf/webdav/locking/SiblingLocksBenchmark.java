@@ -0,0 +1,55 @@
+package net.sf.webdav.locking;
+
+/**
+ * Locks and unlocks N siblings of one folder and prints the time it takes.
+ * Not a unit test, run its main() with the test classpath after
+ * "mvn test-compile".
+ *
+ * Arguments are the sibling counts to measure, 1000 5000 10000 50000 if
+ * none are given.
+ */
+public class SiblingLocksBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int[] counts = new int[] { 1000, 5000, 10000, 50000 };
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        // warm up
+        run(10000);
+
+        for (int count : counts) {
+            long nanos = run(count);
+            System.out.println(count + " siblings: " + (nanos / 1000000)
+                    + " ms, " + (nanos / count) + " ns per lock+unlock");
+        }
+    }
+
+    private static long run(int count) throws Exception {
+        ResourceLocks resourceLocks = new ResourceLocks();
+        String[] paths = new String[count];
+        for (int i = 0; i < count; i++) {
+            paths[i] = "/folder/file" + i;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            if (!resourceLocks.lock(null, paths[i], "owner" + i, false, 0, 10,
+                    true)) {
+                throw new IllegalStateException("could not lock " + paths[i]);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            resourceLocks.unlockTemporaryLockedObjects(null, paths[i], "owner"
+                    + i);
+        }
+        // the temporary LockedObjects are only removed by the cleanup, force
+        // the removal of all siblings
+        resourceLocks.cleanLockedObjects(null, resourceLocks._tempRoot, true);
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,72 @@
+package net.sf.webdav.methods;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+
+import net.sf.webdav.testutil.MockTest;
+
+import org.jmock.Expectations;
+import org.junit.Test;
+
+public class AsyncSenderTest extends MockTest {
+
+    @Test
+    public void testAccepts() throws Exception {
+        final HttpServletRequest mockReq = _mockery
+                .mock(HttpServletRequest.class);
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).isAsyncSupported();
+                will(returnValue(true));
+
+                oneOf(mockReq).isAsyncSupported();
+                will(returnValue(false));
+            }
+        });
+
+        AsyncSender sender = new AsyncSender(1, 100);
+        assertFalse(sender.accepts(mockReq, 99));
+        assertTrue(sender.accepts(mockReq, 100));
+        assertFalse(sender.accepts(mockReq, 100));
+        sender.destroy();
+    }
+
+    @Test
+    public void testContentIsSentOnAnotherThread() throws Exception {
+        final HttpServletRequest mockReq = _mockery
+                .mock(HttpServletRequest.class);
+        final AsyncContext mockContext = _mockery.mock(AsyncContext.class);
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).startAsync();
+                will(returnValue(mockContext));
+
+                oneOf(mockContext).setTimeout(0);
+
+                oneOf(mockContext).complete();
+            }
+        });
+
+        File file = File.createTempFile("asyncSender", "");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(resourceContent);
+        out.close();
+
+        TestingOutputStream tos = new TestingOutputStream();
+        AsyncSender sender = new AsyncSender(1, 0);
+        sender.send(mockReq, tos, new FileInputStream(file).getChannel());
+        // waits for the transfer
+        sender.destroy();
+        file.delete();
+
+        assertEquals("<hello/>", tos.toString());
+    }
+}
@@ -0,0 +1,52 @@
+package net.sf.webdav.methods;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteRangeTest {
+
+    @Test
+    public void testParse() {
+        Assert.assertEquals(Arrays.asList(new ByteRange(0, 99)),
+                ByteRange.parse("bytes=0-99", 1000));
+        Assert.assertEquals(Arrays.asList(new ByteRange(900, 999)),
+                ByteRange.parse("bytes=900-", 1000));
+        Assert.assertEquals(Arrays.asList(new ByteRange(950, 999)),
+                ByteRange.parse("bytes=-50", 1000));
+        Assert.assertEquals("clamped to the resource",
+                Arrays.asList(new ByteRange(500, 999), new ByteRange(0, 999)),
+                ByteRange.parse("bytes = 500-5000, ,-5000", 1000));
+    }
+
+    @Test
+    public void testUnsatisfiable() {
+        Assert.assertTrue(ByteRange.parse("bytes=1000-", 1000).isEmpty());
+        Assert.assertTrue(ByteRange.parse("bytes=-0", 1000).isEmpty());
+        Assert.assertTrue(ByteRange.parse("bytes=0-", 0).isEmpty());
+        Assert.assertEquals("only the satisfiable ones",
+                Arrays.asList(new ByteRange(0, 0)),
+                ByteRange.parse("bytes=2000-3000,0-0", 1000));
+    }
+
+    @Test
+    public void testMalformedIsIgnored() {
+        Assert.assertNull(ByteRange.parse(null, 1000));
+        Assert.assertNull(ByteRange.parse("items=0-1", 1000));
+        Assert.assertNull(ByteRange.parse("bytes=", 1000));
+        Assert.assertNull(ByteRange.parse("bytes=5-1", 1000));
+        Assert.assertNull(ByteRange.parse("bytes=a-b", 1000));
+        Assert.assertNull(ByteRange.parse("bytes=0-1,-", 1000));
+    }
+
+    @Test
+    public void testCoalesce() {
+        List<ByteRange> ranges = ByteRange.coalesce(Arrays.asList(
+                new ByteRange(500, 599), new ByteRange(0, 9),
+                new ByteRange(10, 19), new ByteRange(550, 700)));
+        Assert.assertEquals(Arrays.asList(new ByteRange(0, 19),
+                new ByteRange(500, 700)), ranges);
+    }
+}
@@ -0,0 +1,108 @@
+package net.sf.webdav.methods;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class ContentDigestTest {
+
+    private static final String HELLO_MD5 = "XUFAKrxLKna5cZ2REBfFkg==";
+
+    private static final String HELLO_SHA256 = "LPJNul+wow4m6DsqxbninhsWHlwfp0JecwQzYpOLmCQ=";
+
+    @Test
+    public void testNothingToCompute() {
+        Assert.assertNull(ContentDigest.forRequest(
+                new MockHttpServletRequest(), null));
+    }
+
+    @Test
+    public void testDigestIsKept() throws Exception {
+        ContentDigest digest = ContentDigest.forRequest(
+                new MockHttpServletRequest(), "SHA-256");
+        readAll(digest.wrap(new ByteArrayInputStream("hello".getBytes())));
+
+        Assert.assertArrayEquals(ContentDigest.decode(HELLO_SHA256), digest
+                .getDigest());
+        Assert.assertFalse(digest.isMismatch());
+    }
+
+    @Test
+    public void testHeadersAreChecked() throws Exception {
+        MockHttpServletRequest req = new MockHttpServletRequest();
+        req.addHeader("Content-MD5", HELLO_MD5);
+        req.addHeader("Digest", "unixsum=30637, SHA-256=" + HELLO_SHA256);
+        ContentDigest digest = ContentDigest.forRequest(req, null);
+        readAll(digest.wrap(new ByteArrayInputStream("hello".getBytes())));
+        Assert.assertFalse(digest.isMismatch());
+
+        digest = ContentDigest.forRequest(req, null);
+        try {
+            readAll(digest.wrap(new ByteArrayInputStream("hellO".getBytes())));
+            Assert.fail();
+        } catch (IOException e) {
+            // expected
+        }
+        Assert.assertTrue(digest.isMismatch());
+    }
+
+    @Test
+    public void testPartsAndUploadsCheckTheirHeaders() throws Exception {
+        MockHttpServletRequest req = new MockHttpServletRequest();
+        req.addHeader("Content-MD5", HELLO_MD5);
+        req.addHeader("Digest", "SHA-256=" + HELLO_SHA256);
+
+        ContentDigest part = ContentDigest.forPart(req);
+        readAll(part.wrap(new ByteArrayInputStream("hello".getBytes())));
+        Assert.assertFalse(part.isMismatch());
+        Assert.assertNull(part.getDigest());
+
+        ContentDigest upload = ContentDigest.forUpload(req, "MD5");
+        readAll(upload.wrap(new ByteArrayInputStream("hello".getBytes())));
+        Assert.assertArrayEquals(ContentDigest.decode(HELLO_MD5), upload
+                .getDigest());
+
+        Assert.assertNull(ContentDigest.forPart(new MockHttpServletRequest()));
+        Assert.assertNull(ContentDigest.forUpload(
+                new MockHttpServletRequest(), null));
+    }
+
+    @Test
+    public void testBase64IsDecoded() throws Exception {
+        Assert.assertArrayEquals(new byte[0], ContentDigest.decode(""));
+        Assert.assertArrayEquals("h".getBytes("US-ASCII"), ContentDigest
+                .decode("aA=="));
+        Assert.assertArrayEquals("he".getBytes("US-ASCII"), ContentDigest
+                .decode("aGU="));
+        Assert.assertArrayEquals("hel".getBytes("US-ASCII"), ContentDigest
+                .decode("aGVs"));
+        Assert.assertArrayEquals(new byte[] { (byte) 0xfb, (byte) 0xff },
+                ContentDigest.decode(" +/8= "));
+        for (String malformed : new String[] { "aGV", "aG=s", "a===", "aG!s" }) {
+            try {
+                ContentDigest.decode(malformed);
+                Assert.fail(malformed);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedDigest() {
+        MockHttpServletRequest req = new MockHttpServletRequest();
+        req.addHeader("Digest", "SHA-256");
+        ContentDigest.forRequest(req, null);
+    }
+
+    private static void readAll(InputStream in) throws IOException {
+        byte[] buffer = new byte[2];
+        while (in.read(buffer) != -1) {
+            // digested on the way
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package net.sf.webdav.methods;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class ContentEncodingTest {
+
+    @Test
+    public void testAcceptsGzip() {
+        Assert.assertFalse(ContentEncoding.acceptsGzip(request(null)));
+        Assert.assertTrue(ContentEncoding.acceptsGzip(request("gzip, deflate")));
+        Assert.assertTrue(ContentEncoding.acceptsGzip(request("deflate, x-gzip;q=0.5")));
+        Assert.assertTrue(ContentEncoding.acceptsGzip(request("*")));
+        Assert.assertFalse(ContentEncoding.acceptsGzip(request("identity")));
+        Assert.assertFalse(ContentEncoding.acceptsGzip(request("gzip;q=0")));
+        Assert.assertFalse("explicit gzip wins",
+                ContentEncoding.acceptsGzip(request("*, gzip; q=0")));
+    }
+
+    @Test
+    public void testIsCompressible() {
+        Assert.assertTrue(ContentEncoding.isCompressible("text/plain"));
+        Assert.assertTrue(ContentEncoding.isCompressible("text/xml; charset=UTF-8"));
+        Assert.assertTrue(ContentEncoding.isCompressible("application/json"));
+        Assert.assertTrue(ContentEncoding.isCompressible("image/svg+xml"));
+        Assert.assertFalse(ContentEncoding.isCompressible("image/png"));
+        Assert.assertFalse(ContentEncoding.isCompressible("application/zip"));
+        Assert.assertFalse(ContentEncoding.isCompressible(null));
+    }
+
+    @Test
+    public void testEncodedETag() {
+        Assert.assertEquals("\"abc-gzip\"",
+                ContentEncoding.encodedETag("\"abc\"", "gzip"));
+        Assert.assertEquals("W/\"abc-gzip\"",
+                ContentEncoding.encodedETag("W/\"abc\"", "gzip"));
+    }
+
+    private static MockHttpServletRequest request(String acceptEncoding) {
+        MockHttpServletRequest req = new MockHttpServletRequest();
+        if (acceptEncoding != null) {
+            req.addHeader("Accept-Encoding", acceptEncoding);
+        }
+        return req;
+    }
+}
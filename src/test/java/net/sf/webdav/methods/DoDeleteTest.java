@@ -68,6 +68,18 @@ public class DoDeleteTest extends MockTest {
 
                 StoredObject fileSo = initFileStoredObject(resourceContent);
 
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If");
+                will(returnValue(null));
+
                 oneOf(mockStore).getStoredObject(mockTransaction, sourceFilePath);
                 will(returnValue(fileSo));
 
@@ -83,6 +95,86 @@ public class DoDeleteTest extends MockTest {
         _mockery.assertIsSatisfied();
     }
 
+    @Test
+    public void testDeleteFileWithFailingIfHeader() throws Exception {
+
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue(sourceFilePath));
+
+                StoredObject fileSo = initFileStoredObject(resourceContent);
+
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If");
+                will(returnValue("([\"other\"])"));
+
+                oneOf(mockStore).getStoredObject(mockTransaction, sourceFilePath);
+                will(returnValue(fileSo));
+
+                oneOf(mockRes).sendError(WebdavStatus.SC_PRECONDITION_FAILED);
+            }
+        });
+
+        DoDelete doDelete = new DoDelete(mockStore, new ResourceLocks(),
+                !readOnly);
+
+        doDelete.execute(mockTransaction, mockReq, mockRes);
+
+        _mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testDeleteFileWithMalformedIfHeader() throws Exception {
+
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue(sourceFilePath));
+
+                StoredObject fileSo = initFileStoredObject(resourceContent);
+
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If");
+                will(returnValue("([\"other\"]"));
+
+                oneOf(mockStore).getStoredObject(mockTransaction, sourceFilePath);
+                will(returnValue(fileSo));
+
+                oneOf(mockRes).sendError(WebdavStatus.SC_BAD_REQUEST);
+            }
+        });
+
+        DoDelete doDelete = new DoDelete(mockStore, new ResourceLocks(),
+                !readOnly);
+
+        doDelete.execute(mockTransaction, mockReq, mockRes);
+
+        _mockery.assertIsSatisfied();
+    }
+
     @Test
     public void testDeleteFileIfObjectNotExists() throws Exception {
 
@@ -98,6 +190,18 @@ public class DoDeleteTest extends MockTest {
 
                 StoredObject fileSo = null;
 
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If");
+                will(returnValue(null));
+
                 oneOf(mockStore).getStoredObject(mockTransaction, sourceFilePath);
                 will(returnValue(fileSo));
 
@@ -128,6 +232,18 @@ public class DoDeleteTest extends MockTest {
 
                 StoredObject folderSo = initFolderStoredObject();
 
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If");
+                will(returnValue(null));
+
                 oneOf(mockStore).getStoredObject(mockTransaction,
                         sourceCollectionPath);
                 will(returnValue(folderSo));
@@ -193,6 +309,18 @@ public class DoDeleteTest extends MockTest {
 
                 StoredObject folderSo = null;
 
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If");
+                will(returnValue(null));
+
                 oneOf(mockStore).getStoredObject(mockTransaction,
                         sourceCollectionPath);
                 will(returnValue(folderSo));
@@ -224,6 +352,18 @@ public class DoDeleteTest extends MockTest {
 
                 StoredObject fileSo = initFileStoredObject(resourceContent);
 
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If");
+                will(returnValue(null));
+
                 oneOf(mockStore).getStoredObject(mockTransaction, sourceFilePath);
                 will(returnValue(fileSo));
 
@@ -309,7 +449,17 @@ public class DoDeleteTest extends MockTest {
 
                 StoredObject so = initFileStoredObject(resourceContent);
 
-                oneOf(mockStore).getStoredObject(mockTransaction, path);
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                exactly(2).of(mockStore).getStoredObject(mockTransaction,
+                        path);
                 will(returnValue(so));
 
                 oneOf(mockStore).removeObject(mockTransaction, path);
@@ -341,6 +491,18 @@ public class DoDeleteTest extends MockTest {
 
                 StoredObject nonExistingSo = null;
 
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If");
+                will(returnValue(null));
+
                 oneOf(mockStore).getStoredObject(mockTransaction, "/folder/file");
                 will(returnValue(nonExistingSo));
 
@@ -4,11 +4,15 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.util.Locale;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import net.sf.webdav.IFileStore;
 import net.sf.webdav.IMimeTyper;
 import net.sf.webdav.ITransaction;
 import net.sf.webdav.IWebdavStore;
@@ -100,20 +104,35 @@ public class DoGetTest extends MockTest {
                 oneOf(mockStore).getStoredObject(mockTransaction, "/index.html");
                 will(returnValue(indexSo));
 
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
                 oneOf(mockReq).getHeader("If-None-Match");
                 will(returnValue(null));
 
+                oneOf(mockReq).getHeader("If-Modified-Since");
+                will(returnValue(null));
+
                 oneOf(mockRes).setDateHeader("last-modified",
                         indexSo.getLastModified().getTime());
 
                 oneOf(mockRes).addHeader(with(any(String.class)),
                         with(any(String.class)));
 
-                oneOf(mockMimeTyper).getMimeType(mockTransaction, "/index.html");
+                oneOf(mockMimeTyper).getMimeType(mockTransaction, "/index.html",
+                        indexSo);
                 will(returnValue("text/foo"));
 
                 oneOf(mockRes).setContentType("text/foo");
 
+                oneOf(mockRes).setHeader("Accept-Ranges", "bytes");
+
+                oneOf(mockReq).getHeader("Range");
+                will(returnValue(null));
+
                 StoredObject so = initFileStoredObject(resourceContent);
 
                 oneOf(mockStore).getStoredObject(mockTransaction, "/index.html");
@@ -150,6 +169,9 @@ public class DoGetTest extends MockTest {
                 oneOf(mockReq).getPathInfo();
                 will(returnValue("/foo/"));
 
+                oneOf(mockReq).getParameter("webdav-css");
+                will(returnValue(null));
+
                 StoredObject fooSo = initFolderStoredObject();
                 StoredObject aaa = initFolderStoredObject();
                 StoredObject bbb = initFolderStoredObject();
@@ -157,14 +179,26 @@ public class DoGetTest extends MockTest {
                 oneOf(mockStore).getStoredObject(mockTransaction, "/foo/");
                 will(returnValue(fooSo));
 
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
                 oneOf(mockReq).getHeader("If-None-Match");
                 will(returnValue(null));
 
+                oneOf(mockReq).getHeader("If-Modified-Since");
+                will(returnValue(null));
+
                 oneOf(mockStore).getStoredObject(mockTransaction, "/foo/");
                 will(returnValue(fooSo));
 
                 allowing(mockReq).getLocale();
                 will(returnValue(Locale.GERMAN));
+
+                allowing(mockReq).getParameter(with(any(String.class)));
+                will(returnValue(null));
                 
                 oneOf(mockRes).setContentType("text/html");
 				oneOf(mockRes).setCharacterEncoding("UTF8");
@@ -191,7 +225,7 @@ public class DoGetTest extends MockTest {
 
         doGet.execute(mockTransaction, mockReq, mockRes);
 
-        assertTrue(tos.toString().length() > 0);
+        assertTrue(tos.toString().indexOf("href=\"../?webdav-css=") != -1);
 
         _mockery.assertIsSatisfied();
     }
@@ -208,6 +242,9 @@ public class DoGetTest extends MockTest {
                 oneOf(mockReq).getPathInfo();
                 will(returnValue("/foo/"));
 
+                oneOf(mockReq).getParameter("webdav-css");
+                will(returnValue(null));
+
                 StoredObject fooSo = initFolderStoredObject();
 
                 oneOf(mockStore).getStoredObject(mockTransaction, "/foo/");
@@ -252,16 +289,26 @@ public class DoGetTest extends MockTest {
                 oneOf(mockStore).getStoredObject(mockTransaction, "/alternative");
                 will(returnValue(alternativeSo));
 
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
                 oneOf(mockReq).getHeader("If-None-Match");
                 will(returnValue(null));
 
+                oneOf(mockReq).getHeader("If-Modified-Since");
+                will(returnValue(null));
+
                 oneOf(mockRes).setDateHeader("last-modified",
                         alternativeSo.getLastModified().getTime());
 
                 oneOf(mockRes).addHeader(with(any(String.class)),
                         with(any(String.class)));
 
-                oneOf(mockMimeTyper).getMimeType(mockTransaction, "/alternative");
+                oneOf(mockMimeTyper).getMimeType(mockTransaction, "/alternative",
+                        alternativeSo);
                 will(returnValue("text/foo"));
 
                 oneOf(mockRes).setContentType("text/foo");
@@ -293,4 +340,414 @@ public class DoGetTest extends MockTest {
         _mockery.assertIsSatisfied();
     }
 
+    @Test
+    public void testRangeResultsInPartialContent() throws Exception {
+
+        tos = new TestingOutputStream();
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue("/index.html"));
+
+                StoredObject indexSo = initFileStoredObject(resourceContent);
+
+                oneOf(mockStore).getStoredObject(mockTransaction, "/index.html");
+                will(returnValue(indexSo));
+
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Modified-Since");
+                will(returnValue(null));
+
+                oneOf(mockRes).setDateHeader("last-modified",
+                        indexSo.getLastModified().getTime());
+
+                oneOf(mockRes).addHeader(with(any(String.class)),
+                        with(any(String.class)));
+
+                oneOf(mockMimeTyper).getMimeType(mockTransaction, "/index.html",
+                        indexSo);
+                will(returnValue("text/foo"));
+
+                oneOf(mockRes).setContentType("text/foo");
+
+                oneOf(mockRes).setHeader("Accept-Ranges", "bytes");
+
+                oneOf(mockReq).getHeader("Range");
+                will(returnValue("bytes=1-5"));
+
+                oneOf(mockReq).getHeader("If-Range");
+                will(returnValue(null));
+
+                oneOf(mockRes).setStatus(WebdavStatus.SC_PARTIAL_CONTENT);
+
+                oneOf(mockRes).setHeader("Content-Range", "bytes 1-5/8");
+
+                oneOf(mockRes).getOutputStream();
+                will(returnValue(tos));
+
+                oneOf(mockStore).getResourceContent(mockTransaction,
+                        "/index.html");
+                will(returnValue(new ByteArrayInputStream(resourceContent)));
+            }
+        });
+
+        DoGet doGet = new DoGet(mockStore, null, null, new ResourceLocks(),
+                mockMimeTyper, 0);
+
+        doGet.execute(mockTransaction, mockReq, mockRes);
+
+        assertEquals("hello", tos.toString());
+
+        _mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testUnsatisfiableRangeResultsIn416() throws Exception {
+
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue("/index.html"));
+
+                StoredObject indexSo = initFileStoredObject(resourceContent);
+
+                oneOf(mockStore).getStoredObject(mockTransaction, "/index.html");
+                will(returnValue(indexSo));
+
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Modified-Since");
+                will(returnValue(null));
+
+                oneOf(mockRes).setDateHeader("last-modified",
+                        indexSo.getLastModified().getTime());
+
+                oneOf(mockRes).addHeader(with(any(String.class)),
+                        with(any(String.class)));
+
+                oneOf(mockMimeTyper).getMimeType(mockTransaction, "/index.html",
+                        indexSo);
+                will(returnValue("text/foo"));
+
+                oneOf(mockRes).setContentType("text/foo");
+
+                oneOf(mockRes).setHeader("Accept-Ranges", "bytes");
+
+                oneOf(mockReq).getHeader("Range");
+                will(returnValue("bytes=8-"));
+
+                oneOf(mockReq).getHeader("If-Range");
+                will(returnValue(null));
+
+                oneOf(mockRes).setHeader("Content-Range", "bytes */8");
+
+                oneOf(mockRes).sendError(
+                        WebdavStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            }
+        });
+
+        DoGet doGet = new DoGet(mockStore, null, null, new ResourceLocks(),
+                mockMimeTyper, 0);
+
+        doGet.execute(mockTransaction, mockReq, mockRes);
+
+        _mockery.assertIsSatisfied();
+    }
+
+    public interface FileStore extends IWebdavStore, IFileStore {
+    }
+
+    @Test
+    public void testFileIsSentWithSendfile() throws Exception {
+
+        final FileStore fileStore = _mockery.mock(FileStore.class);
+        final File file = File.createTempFile("webdav", ".html");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(resourceContent);
+        fos.close();
+
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue("/index.html"));
+
+                StoredObject indexSo = initFileStoredObject(resourceContent);
+
+                oneOf(fileStore).getStoredObject(mockTransaction, "/index.html");
+                will(returnValue(indexSo));
+
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Modified-Since");
+                will(returnValue(null));
+
+                oneOf(mockRes).setDateHeader("last-modified",
+                        indexSo.getLastModified().getTime());
+
+                oneOf(mockRes).addHeader(with(any(String.class)),
+                        with(any(String.class)));
+
+                oneOf(mockMimeTyper).getMimeType(mockTransaction, "/index.html",
+                        indexSo);
+                will(returnValue("text/foo"));
+
+                oneOf(mockRes).setContentType("text/foo");
+
+                oneOf(mockRes).setHeader("Accept-Ranges", "bytes");
+
+                oneOf(mockReq).getHeader("Range");
+                will(returnValue(null));
+
+                oneOf(mockReq).getAttribute("org.apache.tomcat.sendfile.support");
+                will(returnValue(Boolean.TRUE));
+
+                oneOf(fileStore).getResourceFile(mockTransaction, "/index.html");
+                will(returnValue(file));
+
+                oneOf(mockReq).setAttribute("org.apache.tomcat.sendfile.filename",
+                        file.getCanonicalPath());
+                oneOf(mockReq).setAttribute("org.apache.tomcat.sendfile.start",
+                        Long.valueOf(0));
+                oneOf(mockReq).setAttribute("org.apache.tomcat.sendfile.end",
+                        Long.valueOf(8));
+
+                oneOf(mockRes).setContentLength(8);
+            }
+        });
+
+        DoGet doGet = new DoGet(fileStore, null, null, new ResourceLocks(),
+                mockMimeTyper, 0);
+
+        doGet.execute(mockTransaction, mockReq, mockRes);
+
+        _mockery.assertIsSatisfied();
+        file.delete();
+    }
+
+    @Test
+    public void testLargeTextIsCompressed() throws Exception {
+
+        final byte[] text = new byte[4096];
+        java.util.Arrays.fill(text, (byte) 'a');
+        tos = new TestingOutputStream();
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue("/file.txt"));
+
+                StoredObject so = initFileStoredObject(text);
+
+                oneOf(mockStore).getStoredObject(mockTransaction, "/file.txt");
+                will(returnValue(so));
+
+                oneOf(mockMimeTyper).getMimeType(mockTransaction, "/file.txt", so);
+                will(returnValue("text/plain"));
+
+                oneOf(mockRes).addHeader("Vary", "Accept-Encoding");
+
+                oneOf(mockReq).getHeader("Accept-Encoding");
+                will(returnValue("gzip"));
+
+                oneOf(mockReq).getHeader("Range");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Modified-Since");
+                will(returnValue(null));
+
+                oneOf(mockRes).setDateHeader("last-modified",
+                        so.getLastModified().getTime());
+
+                oneOf(mockRes).addHeader("ETag", "W/\"4096-"
+                        + so.getLastModified().getTime() + "-gzip\"");
+
+                oneOf(mockRes).setContentType("text/plain");
+
+                oneOf(mockRes).setHeader("Content-Encoding", "gzip");
+
+                oneOf(mockRes).getOutputStream();
+                will(returnValue(tos));
+
+                oneOf(mockStore).getResourceContent(mockTransaction,
+                        "/file.txt");
+                will(returnValue(new ByteArrayInputStream(text)));
+            }
+        });
+
+        DoGet doGet = new DoGet(mockStore, null, null, new ResourceLocks(),
+                mockMimeTyper, 0);
+
+        doGet.execute(mockTransaction, mockReq, mockRes);
+
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(
+                tos.toByteArray()));
+        int length = 0;
+        while (in.read() == 'a') {
+            length++;
+        }
+        assertEquals(4096, length);
+
+        _mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testDirectoryListingIsPaged() throws Exception {
+
+        tos = new TestingOutputStream();
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue("/foo/"));
+
+                oneOf(mockReq).getParameter("webdav-css");
+                will(returnValue(null));
+
+                StoredObject fooSo = initFolderStoredObject();
+
+                exactly(2).of(mockStore).getStoredObject(mockTransaction,
+                        "/foo/");
+                will(returnValue(fooSo));
+
+                allowing(mockReq).getHeader(with(any(String.class)));
+                will(returnValue(null));
+
+                allowing(mockReq).getLocale();
+                will(returnValue(Locale.GERMAN));
+
+                oneOf(mockReq).getParameter("sort");
+                will(returnValue(null));
+
+                oneOf(mockReq).getParameter("order");
+                will(returnValue("desc"));
+
+                oneOf(mockReq).getParameter("offset");
+                will(returnValue("1"));
+
+                oneOf(mockReq).getParameter("limit");
+                will(returnValue("2"));
+
+                oneOf(mockRes).setContentType("text/html");
+                oneOf(mockRes).setCharacterEncoding("UTF8");
+
+                oneOf(mockRes).getOutputStream();
+                will(returnValue(tos));
+
+                oneOf(mockStore).getChildrenNames(mockTransaction, "/foo/");
+                will(returnValue(new String[] { "AAA", "CCC", "BBB", "DDD" }));
+
+                // only the shown page is looked up
+                oneOf(mockStore).getStoredObject(mockTransaction, "/foo//CCC");
+                will(returnValue(initFileStoredObject(resourceContent)));
+
+                oneOf(mockStore).getStoredObject(mockTransaction, "/foo//BBB");
+                will(returnValue(initFileStoredObject(resourceContent)));
+            }
+        });
+
+        DoGet doGet = new DoGet(mockStore, null, null, new ResourceLocks(),
+                mockMimeTyper, 0);
+
+        doGet.execute(mockTransaction, mockReq, mockRes);
+
+        String listing = tos.toString();
+        assertTrue(listing.indexOf(">CCC<") < listing.indexOf(">BBB<"));
+        assertTrue(listing.indexOf(">CCC<") != -1);
+        assertTrue(listing.indexOf(">AAA<") == -1);
+        assertTrue(listing.indexOf(">DDD<") == -1);
+        assertTrue(listing.indexOf("2 - 3 of 4") != -1);
+
+        _mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testStylesheetIsServed() throws Exception {
+
+        tos = new TestingOutputStream();
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue("/"));
+
+                StoredObject rootSo = initFolderStoredObject();
+
+                oneOf(mockStore).getStoredObject(mockTransaction, "/");
+                will(returnValue(rootSo));
+
+                oneOf(mockReq).getParameter("webdav-css");
+                will(returnValue("old"));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockRes).setHeader(with(equal("ETag")),
+                        with(any(String.class)));
+                oneOf(mockRes).setHeader("Cache-Control", "public, max-age=60");
+                oneOf(mockRes).setContentType("text/css");
+                oneOf(mockRes).setCharacterEncoding("UTF-8");
+                oneOf(mockRes).setContentLength(with(any(Integer.class)));
+
+                oneOf(mockRes).getOutputStream();
+                will(returnValue(tos));
+            }
+        });
+
+        DoGet doGet = new DoGet(mockStore, null, null, new ResourceLocks(),
+                mockMimeTyper, 0);
+
+        doGet.execute(mockTransaction, mockReq, mockRes);
+
+        assertTrue(tos.toString().indexOf("tr.even") != -1);
+
+        _mockery.assertIsSatisfied();
+    }
+
 }
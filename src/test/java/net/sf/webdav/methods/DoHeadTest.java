@@ -74,19 +74,31 @@ public class DoHeadTest extends MockTest {
                 oneOf(mockStore).getStoredObject(mockTransaction, "/index.html");
                 will(returnValue(indexSo));
 
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
                 oneOf(mockReq).getHeader("If-None-Match");
                 will(returnValue(null));
 
+                oneOf(mockReq).getHeader("If-Modified-Since");
+                will(returnValue(null));
+
                 oneOf(mockRes).setDateHeader("last-modified",
                         indexSo.getLastModified().getTime());
 
                 oneOf(mockRes).addHeader(with(any(String.class)),
                         with(any(String.class)));
 
-                oneOf(mockMimeTyper).getMimeType(mockTransaction, "/index.html");
+                oneOf(mockMimeTyper).getMimeType(mockTransaction, "/index.html",
+                        indexSo);
                 will(returnValue("text/foo"));
 
                 oneOf(mockRes).setContentType("text/foo");
+
+                oneOf(mockRes).setHeader("Accept-Ranges", "bytes");
             }
         });
 
@@ -110,6 +122,9 @@ public class DoHeadTest extends MockTest {
                 oneOf(mockReq).getPathInfo();
                 will(returnValue("/foo/"));
 
+                oneOf(mockReq).getParameter("webdav-css");
+                will(returnValue(null));
+
                 StoredObject fooSo = initFolderStoredObject();
 
                 oneOf(mockStore).getStoredObject(mockTransaction, "/foo/");
@@ -132,4 +147,42 @@ public class DoHeadTest extends MockTest {
         _mockery.assertIsSatisfied();
     }
 
+    @Test
+    public void testStylesheetHeadersAreSent() throws Exception {
+
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue("/foo/"));
+
+                StoredObject fooSo = initFolderStoredObject();
+
+                oneOf(mockStore).getStoredObject(mockTransaction, "/foo/");
+                will(returnValue(fooSo));
+
+                oneOf(mockReq).getParameter("webdav-css");
+                will(returnValue("old"));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockRes).setHeader(with(equal("ETag")),
+                        with(any(String.class)));
+                oneOf(mockRes).setHeader("Cache-Control", "public, max-age=60");
+                oneOf(mockRes).setContentType("text/css");
+                oneOf(mockRes).setCharacterEncoding("UTF-8");
+                oneOf(mockRes).setContentLength(with(any(Integer.class)));
+            }
+        });
+
+        DoHead doHead = new DoHead(mockStore, "/indexFile", null,
+                new ResourceLocks(), mockMimeTyper, 0);
+
+        doHead.execute(mockTransaction, mockReq, mockRes);
+
+        _mockery.assertIsSatisfied();
+    }
 }
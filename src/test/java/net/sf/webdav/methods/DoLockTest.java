@@ -90,8 +90,8 @@ public class DoLockTest extends MockTest {
                 oneOf(mockReq).getHeader("User-Agent");
                 will(returnValue("Goliath"));
 
-                exactly(2).of(mockReq).getHeader("If");
-                will(returnValue(lockToken));
+                oneOf(mockStore).getStoredObject(mockTransaction, lockPath);
+                will(returnValue(initFileStoredObject(resourceContent)));
 
                 oneOf(mockReq).getHeader("Timeout");
                 will(returnValue("Infinite"));
@@ -62,6 +62,9 @@ public class DoMkcolTest extends MockTest {
 
         _mockery.checking(new Expectations() {
             {
+                oneOf(mockReq).getHeader("If");
+                will(returnValue(null));
+
                 oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
                 will(returnValue(null));
 
@@ -130,6 +133,9 @@ public class DoMkcolTest extends MockTest {
 
         _mockery.checking(new Expectations() {
             {
+                oneOf(mockReq).getHeader("If");
+                will(returnValue(null));
+
                 oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
                 will(returnValue(null));
 
@@ -322,6 +328,7 @@ public class DoMkcolTest extends MockTest {
 
                 lockNullResourceLo = initLockNullLockedObject(resLocks,
                         mkcolPath);
+                lockNullResourceLo.addLockedObjectOwner("I'am the Lock Owner");
 
                 oneOf(mockResourceLocks).getLockedObjectByPath(mockTransaction,
                         mkcolPath);
@@ -371,6 +378,19 @@ public class DoMkcolTest extends MockTest {
                 oneOf(mockStore).getStoredObject(mockTransaction, mkcolPath);
                 will(returnValue(lockNullResourceSo));
 
+                // the locks covering the resource for the If header
+                oneOf(mockResourceLocks).getLockedObjectByPath(mockTransaction,
+                        mkcolPath);
+                will(returnValue(lockNullResourceLo));
+
+                oneOf(mockResourceLocks).getLockedObjectByPath(mockTransaction,
+                        parentPath);
+                will(returnValue(parentLo));
+
+                oneOf(mockResourceLocks).getLockedObjectByPath(mockTransaction,
+                        "/");
+                will(returnValue(null));
+
                 oneOf(mockResourceLocks).getLockedObjectByPath(mockTransaction,
                         mkcolPath);
                 will(returnValue(lockNullResourceLo));
@@ -1,5 +1,7 @@
 package net.sf.webdav.methods;
 
+import static org.junit.Assert.assertTrue;
+
 import net.sf.webdav.*;
 import net.sf.webdav.locking.ResourceLocks;
 import net.sf.webdav.testutil.MockTest;
@@ -10,6 +12,7 @@ import org.junit.Test;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 
 public class DoPropfindTest extends MockTest {
     IWebdavStore mockStore;
@@ -17,7 +20,8 @@ public class DoPropfindTest extends MockTest {
     HttpServletRequest mockReq;
     HttpServletResponse mockRes;
     ITransaction mockTransaction;
-    PrintWriter printWriter;
+    StringWriter body = new StringWriter();
+    PrintWriter printWriter = new PrintWriter(body);
     static byte[] resourceContent = new byte[] { '<', 'h', 'e', 'l', 'l', 'o',
             '/', '>' };
 
@@ -64,14 +68,13 @@ public class DoPropfindTest extends MockTest {
 
                 oneOf(mockRes).setContentType("text/xml; charset=UTF-8");
 
-                oneOf(mockRes).getWriter();
-                will(returnValue(printWriter));
+                oneOf(mockRes).addHeader("Vary", "Accept-Encoding");
 
-                oneOf(mockMimeTyper).getMimeType(mockTransaction, path);
-                will(returnValue("text/xml; charset=UTF-8"));
+                oneOf(mockReq).getHeader("Accept-Encoding");
+                will(returnValue(null));
 
-                oneOf(mockStore).getStoredObject(mockTransaction, path);
-                will(returnValue(rootSo));
+                oneOf(mockRes).getWriter();
+                will(returnValue(printWriter));
 
                 oneOf(mockReq).getContextPath();
                 will(returnValue(""));
@@ -87,6 +90,10 @@ public class DoPropfindTest extends MockTest {
                 oneOf(mockStore).getStoredObject(mockTransaction, path + "file1");
                 will(returnValue(file1So));
 
+                oneOf(mockMimeTyper).getMimeType(mockTransaction,
+                        path + "file1", file1So);
+                will(returnValue("text/plain"));
+
                 oneOf(mockReq).getContextPath();
                 will(returnValue(""));
 
@@ -102,6 +109,10 @@ public class DoPropfindTest extends MockTest {
                 oneOf(mockStore).getStoredObject(mockTransaction, path + "file2");
                 will(returnValue(file2So));
 
+                oneOf(mockMimeTyper).getMimeType(mockTransaction,
+                        path + "file2", file2So);
+                will(returnValue("image/png"));
+
                 oneOf(mockReq).getContextPath();
                 will(returnValue(""));
 
@@ -118,6 +129,11 @@ public class DoPropfindTest extends MockTest {
                 mockMimeTyper);
         doPropfind.execute(mockTransaction, mockReq, mockRes);
 
+        // every member has its own type
+        String xml = body.toString();
+        assertTrue(xml.indexOf("<D:getcontenttype>text/plain</D:getcontenttype>") != -1);
+        assertTrue(xml.indexOf("<D:getcontenttype>image/png</D:getcontenttype>") != -1);
+
         _mockery.assertIsSatisfied();
     }
 
@@ -158,12 +174,6 @@ public class DoPropfindTest extends MockTest {
                 oneOf(mockRes).getWriter();
                 will(returnValue(printWriter));
 
-                oneOf(mockMimeTyper).getMimeType(mockTransaction, path);
-                will(returnValue("text/xml; charset=UTF-8"));
-
-                oneOf(mockStore).getStoredObject(mockTransaction, path);
-                will(returnValue(fileSo));
-
                 oneOf(mockReq).getContextPath();
                 will(returnValue(""));
 
@@ -89,6 +89,9 @@ public class DoProppatchTest extends MockTest {
 
         _mockery.checking(new Expectations() {
             {
+                oneOf(mockReq).getHeader("If");
+                will(returnValue(null));
+
                 oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
                 will(returnValue(null));
 
@@ -99,9 +102,6 @@ public class DoProppatchTest extends MockTest {
 
                 oneOf(mockStore).getStoredObject(mockTransaction, path);
                 will(returnValue(testFileSo));
-                
-                oneOf(mockReq).getHeader("If");
-                will(returnValue(null));
 
                 oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
                 will(returnValue(null));
@@ -132,6 +132,9 @@ public class DoProppatchTest extends MockTest {
 
         _mockery.checking(new Expectations() {
             {
+                oneOf(mockReq).getHeader("If");
+                will(returnValue(null));
+
                 oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
                 will(returnValue(null));
 
@@ -142,9 +145,6 @@ public class DoProppatchTest extends MockTest {
 
                 oneOf(mockStore).getStoredObject(mockTransaction, path);
                 will(returnValue(testFileSo));
-                
-                oneOf(mockReq).getHeader("If");
-                will(returnValue(null));
 
                 oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
                 will(returnValue(null));
@@ -178,4 +178,37 @@ public class DoProppatchTest extends MockTest {
         _mockery.assertIsSatisfied();
     }
 
+    @Test
+    public void doProppatchIfTheEntityTagDoesNotMatch() throws Exception {
+
+        final String path = "/testFile";
+
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue(path));
+
+                oneOf(mockReq).getHeader("If");
+                will(returnValue("([\"another-etag\"])"));
+
+                StoredObject testFileSo = initFileStoredObject(resourceContent);
+
+                oneOf(mockStore).getStoredObject(mockTransaction, path);
+                will(returnValue(testFileSo));
+
+                oneOf(mockRes).sendError(WebdavStatus.SC_PRECONDITION_FAILED);
+            }
+        });
+
+        DoProppatch doProppatch = new DoProppatch(mockStore,
+                new ResourceLocks(), !readOnly);
+
+        doProppatch.execute(mockTransaction, mockReq, mockRes);
+
+        _mockery.assertIsSatisfied();
+    }
+
 }
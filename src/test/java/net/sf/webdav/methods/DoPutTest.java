@@ -1,5 +1,8 @@
 package net.sf.webdav.methods;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
 import net.sf.webdav.ITransaction;
 import net.sf.webdav.IWebdavStore;
 import net.sf.webdav.StoredObject;
@@ -67,6 +70,27 @@ public class DoPutTest extends MockTest {
                 oneOf(mockReq).getHeader("User-Agent");
                 will(returnValue("Goliath agent"));
 
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("Content-Range");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("Content-MD5");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("Digest");
+                will(returnValue(null));
+
                 StoredObject parentSo = initFolderStoredObject();
 
                 oneOf(mockStore).getStoredObject(mockTransaction, parentPath);
@@ -148,6 +172,27 @@ public class DoPutTest extends MockTest {
                 oneOf(mockReq).getHeader("User-Agent");
                 will(returnValue("WebDAVFS/1.5.0 (01500000) ....."));
 
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("Content-Range");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("Content-MD5");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("Digest");
+                will(returnValue(null));
+
                 StoredObject parentSo = null;
 
                 oneOf(mockStore).getStoredObject(mockTransaction, parentPath);
@@ -295,6 +340,7 @@ public class DoPutTest extends MockTest {
                 will(returnValue(true));
 
                 lockNullResourceLo = initLockNullLockedObject(resLocks, path);
+                lockNullResourceLo.addLockedObjectOwner("I'am the Lock Owner");
 
                 oneOf(mockResourceLocks).getLockedObjectByPath(mockTransaction,
                         path);
@@ -331,6 +377,24 @@ public class DoPutTest extends MockTest {
                 oneOf(mockReq).getHeader("User-Agent");
                 will(returnValue("Transmit agent"));
 
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-Unmodified-Since");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("Content-Range");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("Content-MD5");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("Digest");
+                will(returnValue(null));
+
                 oneOf(mockResourceLocks).getLockedObjectByPath(mockTransaction,
                         parentPath);
                 will(returnValue(parentLo));
@@ -344,10 +408,6 @@ public class DoPutTest extends MockTest {
                 oneOf(mockReq).getHeader("If");
                 will(returnValue(ifHeaderLockToken));
 
-                oneOf(mockResourceLocks).getLockedObjectByID(mockTransaction,
-                        loId);
-                will(returnValue(lockNullResourceLo));
-
                 oneOf(mockResourceLocks).lock(with(any(ITransaction.class)),
                         with(any(String.class)), with(any(String.class)),
                         with(any(boolean.class)), with(any(int.class)),
@@ -362,12 +422,22 @@ public class DoPutTest extends MockTest {
                 oneOf(mockStore).getStoredObject(mockTransaction, path);
                 will(returnValue(lockNullResourceSo));
 
+                // the locks covering the resource for the If header
                 oneOf(mockResourceLocks).getLockedObjectByPath(mockTransaction,
                         path);
                 will(returnValue(lockNullResourceLo));
 
-                oneOf(mockReq).getHeader("If");
-                will(returnValue(ifHeaderLockToken));
+                oneOf(mockResourceLocks).getLockedObjectByPath(mockTransaction,
+                        parentPath);
+                will(returnValue(parentLo));
+
+                oneOf(mockResourceLocks).getLockedObjectByPath(mockTransaction,
+                        "/");
+                will(returnValue(null));
+
+                oneOf(mockResourceLocks).getLockedObjectByPath(mockTransaction,
+                        path);
+                will(returnValue(lockNullResourceLo));
 
                 String[] owners = lockNullResourceLo.getOwner();
                 String owner = null;
@@ -407,4 +477,37 @@ public class DoPutTest extends MockTest {
 
         _mockery.assertIsSatisfied();
     }
+    @Test
+    public void testDoPutIsTurnedAwayWhenUploadsAreBusy() throws Exception {
+
+        _mockery.checking(new Expectations() {
+            {
+                oneOf(mockRes).setHeader("Retry-After", "1");
+
+                oneOf(mockRes).sendError(WebdavStatus.SC_SERVICE_UNAVAILABLE);
+            }
+        });
+
+        UploadScheduler scheduler = new UploadScheduler(1, 0, 0, 0);
+        scheduler.admit();
+        DoPut doPut = new DoPut(mockStore, new ResourceLocks(), !readOnly,
+                lazyFolderCreationOnPut);
+        doPut.setUploadScheduler(scheduler);
+        doPut.execute(mockTransaction, mockReq, mockRes);
+
+        _mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testParseContentRange() throws Exception {
+        assertArrayEquals(new long[] { 0, 99, 1000 }, DoPut
+                .parseContentRange("bytes 0-99/1000"));
+        assertArrayEquals(new long[] { -1, -1, 1000 }, DoPut
+                .parseContentRange("bytes */1000"));
+        assertNull(DoPut.parseContentRange("bytes 0-99/*"));
+        assertNull(DoPut.parseContentRange("bytes 0-1000/1000"));
+        assertNull(DoPut.parseContentRange("bytes 99-0/1000"));
+        assertNull(DoPut.parseContentRange("items 0-99/1000"));
+    }
+
 }
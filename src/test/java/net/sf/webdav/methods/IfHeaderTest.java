@@ -0,0 +1,140 @@
+package net.sf.webdav.methods;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class IfHeaderTest {
+
+    @Test
+    public void testNoHeader() {
+        IfHeader ifHeader = IfHeader.parse(null);
+        Assert.assertFalse(ifHeader.isPresent());
+        Assert.assertNull(ifHeader.getLockToken());
+        Assert.assertTrue(ifHeader.evaluate("/file", null, null));
+
+        Assert.assertFalse(IfHeader.parse("  ").isPresent());
+    }
+
+    @Test
+    public void testSingleToken() {
+        IfHeader ifHeader = IfHeader.parse("(<opaquelocktoken:abc-1>)");
+        Assert.assertTrue(ifHeader.isPresent());
+        Assert.assertFalse(ifHeader.isMalformed());
+        Assert.assertEquals("abc-1", ifHeader.getLockToken());
+        Assert.assertTrue(ifHeader.hasLockToken("abc-1"));
+        Assert.assertFalse(ifHeader.hasLockToken("abc"));
+    }
+
+    @Test
+    public void testTaggedListsWithSeveralTokens() {
+        IfHeader ifHeader = IfHeader
+                .parse("<http://example.com/folder/> (<opaquelocktoken:a>) "
+                        + "<http://example.com/folder/file> (<opaquelocktoken:b> [\"etag\"])"
+                        + " (Not <DAV:no-lock>)");
+        Assert.assertFalse(ifHeader.isMalformed());
+        Assert.assertArrayEquals(new String[] { "a", "b" },
+                ifHeader.getLockTokens());
+        Assert.assertEquals(3, ifHeader.getLists().size());
+        Assert.assertEquals("http://example.com/folder/file", ifHeader
+                .getLists().get(2).getResourceTag());
+
+        IfHeader.Condition etag = ifHeader.getLists().get(1).getConditions()
+                .get(1);
+        Assert.assertTrue(etag.isEntityTag());
+        Assert.assertEquals("\"etag\"", etag.getValue());
+
+        IfHeader.Condition noLock = ifHeader.getLists().get(2).getConditions()
+                .get(0);
+        Assert.assertTrue(noLock.isNot());
+        Assert.assertEquals("DAV:no-lock", noLock.getValue());
+    }
+
+    @Test
+    public void testEntityTagWithBracket() {
+        IfHeader ifHeader = IfHeader.parse("([W/\"a]b\"] <urn:uuid:x>)");
+        Assert.assertFalse(ifHeader.isMalformed());
+        Assert.assertEquals("W/\"a]b\"", ifHeader.getLists().get(0)
+                .getConditions().get(0).getValue());
+        Assert.assertEquals("urn:uuid:x", ifHeader.getLockToken());
+    }
+
+    @Test
+    public void testMalformed() {
+        Assert.assertTrue(IfHeader.parse("(<opaquelocktoken:a>").isMalformed());
+        Assert.assertTrue(IfHeader.parse("()").isMalformed());
+        Assert.assertTrue(IfHeader.parse("<http://x/a>").isMalformed());
+        Assert.assertTrue(IfHeader.parse("(<a>) <http://x/a> (<b>)")
+                .isMalformed());
+
+        IfHeader ifHeader = IfHeader.parse("(<opaquelocktoken:a>) junk");
+        Assert.assertTrue(ifHeader.isMalformed());
+        Assert.assertEquals("a", ifHeader.getLockToken());
+    }
+
+    @Test
+    public void testEvaluate() {
+        IfHeader ifHeader = IfHeader
+                .parse("(<opaquelocktoken:a> [\"1\"]) (Not <opaquelocktoken:b>)");
+        Assert.assertTrue(ifHeader.evaluate("/file", new String[] { "a" }, "\"1\""));
+        Assert.assertTrue("second list", ifHeader.evaluate("/file", new String[] { "c" }, "\"2\""));
+        Assert.assertFalse(ifHeader.evaluate("/file", new String[] { "b" }, "\"1\""));
+
+        IfHeader tagged = IfHeader
+                .parse("<http://example.com/file> ([\"1\"])");
+        Assert.assertTrue(tagged.evaluate("/file", null, "\"1\""));
+        Assert.assertFalse(tagged.evaluate("/file", null, "\"2\""));
+        Assert.assertTrue("list for another resource",
+                tagged.evaluate("/other", null, "\"2\""));
+
+        IfHeader inherited = IfHeader.parse("(<opaquelocktoken:parent>)");
+        Assert.assertTrue("lock of a parent", inherited.evaluate("/folder/file",
+                new String[] { "own", "parent" }, null));
+        Assert.assertFalse(inherited.evaluate("/folder/file", null, null));
+    }
+
+    @Test
+    public void testResourceTagsAreMappedToServletPaths() {
+        MockHttpServletRequest req = new MockHttpServletRequest("PUT",
+                "/ctx/dav/my%20file");
+        req.setContextPath("/ctx");
+        req.setServletPath("/dav");
+        req.setPathInfo("/my file");
+        req.addHeader("If", "<http://example.com/ctx/dav/my%20file> ([\"1\"])");
+
+        IfHeader ifHeader = new IfHeader(req);
+        Assert.assertFalse(ifHeader.evaluate("/my file", null, "\"2\""));
+        Assert.assertTrue(ifHeader.evaluate("/my file", null, "\"1\""));
+        Assert.assertTrue("list for another resource", ifHeader.evaluate(
+                "/other", null, "\"2\""));
+    }
+
+    @Test
+    public void testListsApplyToAnyResourceOfTheRequest() {
+        MockHttpServletRequest req = new MockHttpServletRequest("COPY",
+                "/ctx/dav/a");
+        req.setContextPath("/ctx");
+        req.setServletPath("/dav");
+        req.setPathInfo("/a");
+        req.addHeader("If", "(<opaquelocktoken:d>)");
+        String[] paths = { "/a", "/b" };
+
+        IfHeader ifHeader = new IfHeader(req);
+        Assert.assertTrue("token of the destination", ifHeader.evaluate(
+                paths, new String[][] { {}, { "d" } }, new String[2]));
+        Assert.assertFalse(ifHeader.evaluate(paths, new String[][] { {}, {} },
+                new String[2]));
+
+        req = new MockHttpServletRequest("COPY", "/ctx/dav/a");
+        req.setContextPath("/ctx");
+        req.setServletPath("/dav");
+        req.setPathInfo("/a");
+        req.addHeader("If", "</ctx/dav/b> ([\"1\"])");
+        ifHeader = new IfHeader(req);
+        Assert.assertFalse("tagged for the destination", ifHeader.evaluate(
+                paths, new String[][] { {}, {} }, new String[] { "\"1\"",
+                        "\"2\"" }));
+        Assert.assertTrue(ifHeader.evaluate(paths, new String[][] { {}, {} },
+                new String[] { "\"2\"", "\"1\"" }));
+    }
+}
@@ -0,0 +1,88 @@
+package net.sf.webdav.methods;
+
+import java.util.Date;
+
+import net.sf.webdav.StoredObject;
+import net.sf.webdav.WebdavStatus;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class PreconditionsTest {
+
+    private static final String ETAG = "\"abc\"";
+
+    private static final String MODIFIED = "Sun, 06 Nov 1994 08:49:37 GMT";
+
+    private MockHttpServletRequest req;
+
+    private StoredObject so;
+
+    @Before
+    public void setUp() {
+        req = new MockHttpServletRequest();
+        so = new StoredObject();
+        so.setFolder(false);
+        so.setLastModified(new Date(Preconditions.parseDate(MODIFIED) + 500));
+    }
+
+    @Test
+    public void testNoConditions() {
+        Preconditions preconditions = new Preconditions(req, true);
+        Assert.assertFalse(preconditions.isPresent());
+        Assert.assertEquals(WebdavStatus.SC_OK, preconditions.evaluate(so, ETAG));
+    }
+
+    @Test
+    public void testIfMatch() {
+        req.addHeader("If-Match", "\"xyz\", \"abc\"");
+        Assert.assertEquals(WebdavStatus.SC_OK,
+                new Preconditions(req, false).evaluate(so, ETAG));
+        Assert.assertEquals("weak tags never match",
+                WebdavStatus.SC_PRECONDITION_FAILED,
+                new Preconditions(req, false).evaluate(so, "W/\"abc\""));
+        Assert.assertEquals("missing resource",
+                WebdavStatus.SC_PRECONDITION_FAILED,
+                new Preconditions(req, false).evaluate(null, ETAG));
+    }
+
+    @Test
+    public void testIfNoneMatch() {
+        req.addHeader("If-None-Match", "W/\"abc\"");
+        Assert.assertEquals(WebdavStatus.SC_NOT_MODIFIED,
+                new Preconditions(req, true).evaluate(so, ETAG));
+        Assert.assertEquals(WebdavStatus.SC_PRECONDITION_FAILED,
+                new Preconditions(req, false).evaluate(so, ETAG));
+
+        MockHttpServletRequest create = new MockHttpServletRequest();
+        create.addHeader("If-None-Match", "*");
+        Assert.assertEquals(WebdavStatus.SC_OK,
+                new Preconditions(create, false).evaluate(null, null));
+        Assert.assertEquals(WebdavStatus.SC_PRECONDITION_FAILED,
+                new Preconditions(create, false).evaluate(so, ETAG));
+    }
+
+    @Test
+    public void testDates() {
+        req.addHeader("If-Modified-Since", MODIFIED);
+        Assert.assertEquals("same second", WebdavStatus.SC_NOT_MODIFIED,
+                new Preconditions(req, true).evaluate(so, ETAG));
+        Assert.assertEquals("only for GET and HEAD", WebdavStatus.SC_OK,
+                new Preconditions(req, false).evaluate(so, ETAG));
+
+        req.addHeader("If-None-Match", "\"xyz\"");
+        Assert.assertEquals("If-None-Match wins", WebdavStatus.SC_OK,
+                new Preconditions(req, true).evaluate(so, ETAG));
+
+        MockHttpServletRequest unmodified = new MockHttpServletRequest();
+        unmodified.addHeader("If-Unmodified-Since",
+                "Sunday, 06-Nov-94 08:49:36 GMT");
+        Assert.assertEquals(WebdavStatus.SC_PRECONDITION_FAILED,
+                new Preconditions(unmodified, false).evaluate(so, ETAG));
+
+        MockHttpServletRequest invalid = new MockHttpServletRequest();
+        invalid.addHeader("If-Unmodified-Since", "yesterday");
+        Assert.assertFalse(new Preconditions(invalid, false).isPresent());
+    }
+}
@@ -16,6 +16,10 @@ public class TestingOutputStream extends ServletOutputStream {
         baos.write(i);
     }
 
+    public byte[] toByteArray() {
+        return baos.toByteArray();
+    }
+
     public String toString() {
         return baos.toString();
     }
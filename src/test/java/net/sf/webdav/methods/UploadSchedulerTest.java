@@ -0,0 +1,68 @@
+package net.sf.webdav.methods;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class UploadSchedulerTest {
+
+    @Test
+    public void testFullQueueIsRejected() {
+        UploadScheduler scheduler = new UploadScheduler(1, 0, 1000, 0);
+        assertTrue(scheduler.admit());
+        assertFalse(scheduler.admit());
+        scheduler.release();
+        assertTrue(scheduler.admit());
+        assertEquals(1, scheduler.getRejectedCount());
+    }
+
+    @Test
+    public void testQueuedUploadTimesOut() {
+        UploadScheduler scheduler = new UploadScheduler(1, 1, 50, 0);
+        assertTrue(scheduler.admit());
+        long start = System.currentTimeMillis();
+        assertFalse(scheduler.admit());
+        assertTrue(System.currentTimeMillis() - start >= 40);
+        assertEquals(1, scheduler.getRetryAfter());
+    }
+
+    @Test
+    public void testQueuedUploadGetsReleasedSlot() throws Exception {
+        final UploadScheduler scheduler = new UploadScheduler(1, 1, 5000, 0);
+        assertTrue(scheduler.admit());
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // release anyway
+                }
+                scheduler.release();
+            }
+        }.start();
+        assertTrue(scheduler.admit());
+    }
+
+    @Test
+    public void testUploadIsThrottled() throws Exception {
+        UploadScheduler scheduler = new UploadScheduler(0, 0, 0, 10000);
+        InputStream in = scheduler.throttle(null, new ByteArrayInputStream(
+                new byte[15000]));
+        byte[] buffer = new byte[1000];
+        long start = System.currentTimeMillis();
+        int total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+        }
+        // a second of burst, the rest at 10000 bytes/s
+        assertEquals(15000, total);
+        assertTrue(System.currentTimeMillis() - start >= 400);
+    }
+}